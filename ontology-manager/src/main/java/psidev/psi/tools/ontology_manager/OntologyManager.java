@@ -2,7 +2,11 @@ package psidev.psi.tools.ontology_manager;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.impl.LazyOntologyAccess;
+import psidev.psi.tools.ontology_manager.impl.ReadOnlyOntologyAccess;
+import psidev.psi.tools.ontology_manager.impl.local.AbstractLocalOntology;
 import psidev.psi.tools.ontology_manager.impl.local.LocalOntology;
+import psidev.psi.tools.ontology_manager.impl.local.MappedLocalOntology;
 import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
 import psidev.psi.tools.ontology_manager.impl.ols.OlsOntology;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
@@ -10,6 +14,7 @@ import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,6 +37,7 @@ public class OntologyManager extends OntologyManagerTemplate<OntologyTermI, Onto
     static {
         keyword2class.put( "ols", OlsOntology.class );
         keyword2class.put( "file", LocalOntology.class );
+        keyword2class.put( "mapped", MappedLocalOntology.class );
     }
 
     ////////////////////
@@ -56,6 +62,24 @@ public class OntologyManager extends OntologyManagerTemplate<OntologyTermI, Onto
         super(configFile);
     }
 
+    @Override
+    protected OntologyAccess createLazyOntologyAccess( OntologyAccess ontologyAccess, String ontologyId, String ontologyName,
+                                                       String ontologyVersion, String format, URI uri,
+                                                       OntologyManagerContext context ) {
+        return new LazyOntologyAccess( ontologyAccess, ontologyId, ontologyName, ontologyVersion, format, uri, context );
+    }
+
+    /**
+     * Local ontologies are not modified once loaded and can be shared.
+     */
+    @Override
+    protected OntologyAccess createReadOnlyOntologyAccess( OntologyAccess ontologyAccess ) {
+        if ( ontologyAccess instanceof AbstractLocalOntology ) {
+            return new ReadOnlyOntologyAccess( ontologyAccess );
+        }
+        return null;
+    }
+
     @Override
     protected OntologyAccess findOntologyAccess(String sourceURI, String ontologyId, String ontologyName, String ontologyVersion, String format, String loaderClass) throws ClassNotFoundException {
         Class loader;
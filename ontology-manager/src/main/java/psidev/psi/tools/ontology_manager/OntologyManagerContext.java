@@ -20,6 +20,13 @@ public class OntologyManagerContext {
 
     private boolean storeOntologiesLocally;
 
+    private boolean parallelOboParsing;
+
+    private int loadingParallelism;
+
+    private boolean lazyLoading;
+
+    private boolean shareOntologies;
 
     private static ThreadLocal<OntologyManagerContext> instance =
             new ThreadLocal<OntologyManagerContext>() {
@@ -37,15 +44,47 @@ public class OntologyManagerContext {
         instance.remove();
     }
 
+    /**
+     * Sets the context of the current thread, typically to a copy of the context of the thread that handed it some
+     * work.
+     *
+     * @param context the context to use in the current thread.
+     * @see #copy()
+     */
+    public static void setInstance( OntologyManagerContext context ) {
+        if ( context == null ) {
+            throw new IllegalArgumentException( "You must give a non null context, use removeInstance() to reset it." );
+        }
+        instance.set( context );
+    }
+
     private OntologyManagerContext() {
         // initialize here default configuration
         storeOntologiesLocally = false;
+        parallelOboParsing = true;
+        loadingParallelism = Runtime.getRuntime().availableProcessors();
+        lazyLoading = false;
+        shareOntologies = false;
         ontologyDirectory = new File( System.getProperty( "java.io.tmpdir" ) );
         if ( log.isDebugEnabled() ) {
             log.debug( "Default directory for storing ontologies set to " + ontologyDirectory.getAbsolutePath() );
         }
     }
 
+    /**
+     * @return a new context with the same settings, to be carried into another thread.
+     */
+    public OntologyManagerContext copy() {
+        final OntologyManagerContext copy = new OntologyManagerContext();
+        copy.ontologyDirectory = ontologyDirectory;
+        copy.storeOntologiesLocally = storeOntologiesLocally;
+        copy.parallelOboParsing = parallelOboParsing;
+        copy.loadingParallelism = loadingParallelism;
+        copy.lazyLoading = lazyLoading;
+        copy.shareOntologies = shareOntologies;
+        return copy;
+    }
+
     ///////////////////////////
     // Getters and Setters
 
@@ -57,6 +96,59 @@ public class OntologyManagerContext {
         this.storeOntologiesLocally = storeOntologiesLocally;
     }
 
+    /**
+     * @return true if local OBO files are split in chunks parsed in parallel.
+     */
+    public boolean isParallelOboParsing() {
+        return parallelOboParsing;
+    }
+
+    /**
+     * @param parallelOboParsing false to parse local OBO files with a single thread.
+     */
+    public void setParallelOboParsing( boolean parallelOboParsing ) {
+        this.parallelOboParsing = parallelOboParsing;
+    }
+
+    /**
+     * @return the maximum number of ontologies loaded at the same time by an ontology manager.
+     */
+    public int getLoadingParallelism() {
+        return loadingParallelism;
+    }
+
+    /**
+     * @param loadingParallelism the maximum number of ontologies loaded at the same time, 1 to load them one by one.
+     */
+    public void setLoadingParallelism( int loadingParallelism ) {
+        if ( loadingParallelism < 1 ) {
+            throw new IllegalArgumentException( "The loading parallelism must be at least 1: " + loadingParallelism );
+        }
+        this.loadingParallelism = loadingParallelism;
+    }
+
+    /**
+     * @return true if the ontologies are only loaded when they are first queried, unless their CvSource says otherwise.
+     */
+    public boolean isLazyLoading() {
+        return lazyLoading;
+    }
+
+    public void setLazyLoading( boolean lazyLoading ) {
+        this.lazyLoading = lazyLoading;
+    }
+
+    /**
+     * @return true if the ontology managers take the ontologies they can share from the SharedOntologyRegistry.
+     */
+    public boolean isShareOntologies() {
+        return shareOntologies;
+    }
+
+    public void setShareOntologies( boolean shareOntologies ) {
+        this.shareOntologies = shareOntologies;
+    }
+
     public File getOntologyDirectory() {
         return ontologyDirectory;
     }
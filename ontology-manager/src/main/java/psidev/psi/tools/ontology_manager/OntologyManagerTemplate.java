@@ -10,14 +10,16 @@ import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyAccessTemplate;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Abstract ontologyManager
@@ -27,15 +29,37 @@ import java.util.Set;
  * @since <pre>01/11/11</pre>
  */
 
-public abstract class OntologyManagerTemplate<T extends OntologyTermI, A extends OntologyAccessTemplate<T>> {
+public abstract class OntologyManagerTemplate<T extends OntologyTermI, A extends OntologyAccessTemplate<T>> implements Closeable {
 
     public static final Log log = LogFactory.getLog(OntologyManager.class);
 
     /**
      * The Map that holds the Ontologies.
      * The key is the ontology ID and the value is a ontology inplementing the OntologyAccess interface.
+     * The Map is replaced rather than modified once published, so that it can be read while ontologies are refreshed.
      */
-    protected Map<String, A> ontologies;
+    protected volatile Map<String, A> ontologies;
+
+    /**
+     * Keys of the ontologies acquired from the SharedOntologyRegistry, by ontology ID.
+     */
+    private final Map<String, SharedOntologyRegistry.Key> sharedOntologies = new HashMap<String, SharedOntologyRegistry.Key>();
+
+    /**
+     * Sources of the ontologies loaded from a config file, by ontology ID, so that they can be reloaded once changed.
+     */
+    private final Map<String, CvSource> ontologySources = new HashMap<String, CvSource>();
+
+    /**
+     * Incremented whenever an ontology is added, replaced or refreshed, so that data derived from the ontologies can
+     * tell when to be resolved again. Only changed while holding the lock of this manager.
+     */
+    private volatile long generation = 0;
+
+    /**
+     * Reloads the changed ontologies in the background, null if not started.
+     */
+    private ScheduledExecutorService refresher;
 
     public static final String CLASSPATH_PREFIX = "classpath:";
 
@@ -73,13 +97,91 @@ public abstract class OntologyManagerTemplate<T extends OntologyTermI, A extends
      * @param ontologyID the ID under which the ontology will be accessible (e.g. 'GO' for "Gene Ontology")
      * @param ontology   the ontology to manage.
      * @return the previous value associated with the specified ontologyID, or null if there was no mapping for the specified ontologyID.
+     *         It is closed, or released if it was shared, but can still be queried.
      * @see java.util.HashMap#put(Object, Object)
      */
-    public A putOntology( String ontologyID, A ontology ) {
+    public synchronized A putOntology( String ontologyID, A ontology ) {
         if ( ontologies.containsKey( ontologyID ) ) {
             if ( log.isWarnEnabled() )log.warn( "Ontology with the ID '" + ontologyID + "' already exists. Overwriting!" );
         }
-        return ontologies.put( ontologyID, ontology );
+        ontologySources.remove( ontologyID );
+        final Map<String, A> updated = new HashMap<String, A>( ontologies );
+        final A previous = updated.put( ontologyID, ontology );
+        ontologies = updated;
+        generation++;
+        if ( previous != ontology || sharedOntologies.containsKey( ontologyID ) ) {
+            disposeOntology( ontologyID, previous );
+        }
+        return previous;
+    }
+
+    /**
+     * Stops refreshing the ontologies, closes the ontologies of this manager, releases the shared ontologies used by
+     * this manager and forgets all the ontologies.
+     */
+    public synchronized void close() {
+        stopRefreshing();
+        // the shared ontologies are closed by the registry once nobody uses them anymore
+        for ( Map.Entry<String, A> entry : ontologies.entrySet() ) {
+            if ( !sharedOntologies.containsKey( entry.getKey() ) ) {
+                closeOntology( entry.getValue() );
+            }
+        }
+        for ( SharedOntologyRegistry.Key key : sharedOntologies.values() ) {
+            SharedOntologyRegistry.getInstance().release( key );
+        }
+        sharedOntologies.clear();
+        ontologySources.clear();
+        ontologies = new HashMap<String, A>();
+        generation++;
+    }
+
+    /**
+     * Closes an ontology that holds resources, such as the file storing the results of the OLS queries, so that
+     * another instance of it can use them. Failures are only logged.
+     *
+     * @param ontology an OntologyAccess, closed if it is Closeable.
+     */
+    static void closeOntology( Object ontology ) {
+        if ( ontology instanceof Closeable ) {
+            try {
+                ( ( Closeable ) ontology ).close();
+            } catch ( IOException e ) {
+                log.warn( "Could not close ontology " + ontology, e );
+            }
+        }
+    }
+
+    /**
+     * Lets go of an ontology this manager does not use anymore. A shared ontology is released to the registry, which
+     * closes it once no manager uses it anymore, the others are closed.
+     *
+     * @param ontologyID the ID the ontology was managed under.
+     * @param previous   the ontology, may be null.
+     */
+    private void disposeOntology( String ontologyID, A previous ) {
+        if ( sharedOntologies.containsKey( ontologyID ) ) {
+            releaseSharedOntology( ontologyID );
+        } else if ( previous != null ) {
+            closeOntology( previous );
+        }
+    }
+
+    private void releaseSharedOntology( String ontologyID ) {
+        final SharedOntologyRegistry.Key key = sharedOntologies.remove( ontologyID );
+        if ( key != null ) {
+            SharedOntologyRegistry.getInstance().release( key );
+        }
+    }
+
+    /**
+     * Tells whether the ontologies changed since data was derived from them: the generation is incremented whenever
+     * an ontology is added, replaced, refreshed or dropped.
+     *
+     * @return the current generation of the ontologies of this manager.
+     */
+    public long getGeneration() {
+        return generation;
     }
 
     /**
@@ -120,9 +222,20 @@ public abstract class OntologyManagerTemplate<T extends OntologyTermI, A extends
 
     /**
      * Method to load the ontologies from the configuration file.
+     * <p/>
+     * The ontologies are loaded concurrently, up to OntologyManagerContext.getLoadingParallelism() at a time, with the
+     * settings of the OntologyManagerContext of the calling thread. They are added to the manager only if they could
+     * all be loaded.
+     * <p/>
+     * An ontology whose CvSource is lazy, or that does not say and OntologyManagerContext.isLazyLoading() is true, is
+     * only loaded when it is first queried. See createLazyOntologyAccess.
+     * <p/>
+     * If OntologyManagerContext.isShareOntologies() is true, the ontologies that can be shared are taken from the
+     * SharedOntologyRegistry, being loaded only if no other manager uses them yet. They are read-only and are shared
+     * even if their CvSource is lazy. See createReadOnlyOntologyAccess.
      *
      * @param configFile a InputStream of the config file that lists the ontologies to manage.
-     * @throws OntologyLoaderException if loading failed.
+     * @throws OntologyLoaderException if loading failed, naming every ontology source that could not be loaded.
      */
     public void loadOntologies( InputStream configFile ) throws OntologyLoaderException {
 
@@ -135,57 +248,370 @@ public abstract class OntologyManagerTemplate<T extends OntologyTermI, A extends
         }
 
         if ( cvSourceList != null ) {
-            for ( CvSource cvSource : cvSourceList.getCvSource() ) {
+            final OntologyManagerContext context = OntologyManagerContext.getInstance();
+            final List<CvSource> sources = cvSourceList.getCvSource();
+            final List<Callable<A>> tasks = new ArrayList<Callable<A>>( sources.size() );
+            final Map<String, SharedOntologyRegistry.Key> acquired = new ConcurrentHashMap<String, SharedOntologyRegistry.Key>();
+            for ( CvSource cvSource : sources ) {
+                tasks.add( createLoadingTask( cvSource, context.copy(), acquired, true ) );
+            }
+
+            final Map<String, A> loaded;
+            try {
+                loaded = loadConcurrently( sources, tasks, context.getLoadingParallelism() );
+            } catch ( OntologyLoaderException e ) {
+                for ( SharedOntologyRegistry.Key key : acquired.values() ) {
+                    SharedOntologyRegistry.getInstance().release( key );
+                }
+                throw e;
+            }
 
-                String sourceUri = cvSource.getUri();
-                final String id = cvSource.getIdentifier();
-                final String name = cvSource.getName();
-                final String version = cvSource.getVersion();
-                final String format = cvSource.getFormat();
-                final String loaderClass = cvSource.getSource();
+            // the ontologies are only published once they are all loaded
+            synchronized ( this ) {
+                for ( Map.Entry<String, A> entry : loaded.entrySet() ) {
+                    final A previous = ontologies.get( entry.getKey() );
+                    if ( previous != entry.getValue() || sharedOntologies.containsKey( entry.getKey() ) ) {
+                        disposeOntology( entry.getKey(), previous );
+                    }
+                }
+                final Map<String, A> updated = new HashMap<String, A>( ontologies );
+                updated.putAll( loaded );
+                ontologies = updated;
+                generation++;
+                sharedOntologies.putAll( acquired );
 
-                URI uri;
+                // shared ontologies are read-only, they are not refreshed
+                for ( CvSource cvSource : sources ) {
+                    if ( acquired.containsKey( cvSource.getIdentifier() ) ) {
+                        ontologySources.remove( cvSource.getIdentifier() );
+                    } else {
+                        ontologySources.put( cvSource.getIdentifier(), cvSource );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reloads the ontologies loaded from a config file whose source changed since they were loaded, as told by
+     * OntologyAccess.isOntologyUpToDate(). A reloaded ontology replaces the previous one at once: the callers that got
+     * the previous OntologyAccess keep using it until they are done with it. Data derived from the previous ontology, such
+     * as the values resolved by the validator rules, has to be resolved again: the generation of the ontologies tells
+     * when, see getGeneration().
+     *
+     * @return the IDs of the reloaded ontologies.
+     * @throws OntologyLoaderException naming every ontology that could not be checked or reloaded, the others being
+     *                                 refreshed anyway.
+     */
+    public Set<String> refreshOntologies() throws OntologyLoaderException {
+        return refreshOntologies( OntologyManagerContext.getInstance() );
+    }
+
+    private Set<String> refreshOntologies( OntologyManagerContext context ) throws OntologyLoaderException {
+        final Map<String, CvSource> sources;
+        synchronized ( this ) {
+            sources = new LinkedHashMap<String, CvSource>( ontologySources );
+        }
+
+        final Set<String> refreshed = new LinkedHashSet<String>();
+        StringBuilder failedSources = null;
+        Throwable firstFailure = null;
+        for ( Map.Entry<String, CvSource> entry : sources.entrySet() ) {
+            final String id = entry.getKey();
+            final A current = ontologies.get( id );
+            if ( current == null ) {
+                continue;
+            }
+
+            try {
+                if ( current.isOntologyUpToDate() ) {
+                    continue;
+                }
+                if ( log.isInfoEnabled() ) log.info( "Ontology " + id + " changed, reloading it" );
+
+                // the new version is loaded right away and never shared, the previous one is only let go of once
+                // replaced, so that it is left untouched if the new version cannot be loaded
+                final OntologyManagerContext reloadContext = context.copy();
+                reloadContext.setShareOntologies( false );
+                final A reloaded = createLoadingTask( entry.getValue(), reloadContext, null, false ).call();
+
+                boolean swapped = false;
+                synchronized ( this ) {
+                    // unless the ontology was replaced in the meantime
+                    if ( ontologies.get( id ) == current && ontologySources.get( id ) == entry.getValue() ) {
+                        final Map<String, A> updated = new HashMap<String, A>( ontologies );
+                        updated.put( id, reloaded );
+                        ontologies = updated;
+                        generation++;
+                        refreshed.add( id );
+                        swapped = true;
+                        // it can still be queried by those using it
+                        disposeOntology( id, current );
+                    }
+                }
+                if ( !swapped ) {
+                    closeOntology( reloaded );
+                }
+            } catch ( Exception e ) {
+                log.error( "Failed refreshing ontology " + id, e );
+                if ( failedSources == null ) {
+                    failedSources = new StringBuilder();
+                    firstFailure = e;
+                } else {
+                    failedSources.append( ", " );
+                    firstFailure.addSuppressed( e );
+                }
+                failedSources.append( id ).append( ": " ).append( e.getMessage() );
+            }
+        }
+
+        if ( failedSources != null ) {
+            throw new OntologyLoaderException( "Failed refreshing ontology source(s): " + failedSources, firstFailure );
+        }
+        return refreshed;
+    }
+
+    /**
+     * Starts checking the ontologies for updates in a background thread, reloading them off the request path.
+     * See refreshOntologies(). The settings of the calling thread are used to reload the ontologies.
+     *
+     * @param period the delay between the end of a check and the start of the next one.
+     * @param unit   the unit of period.
+     */
+    public synchronized void startRefreshing( long period, TimeUnit unit ) {
+        if ( period <= 0 ) {
+            throw new IllegalArgumentException( "The refresh period must be positive: " + period );
+        }
+        stopRefreshing();
+
+        final OntologyManagerContext context = OntologyManagerContext.getInstance().copy();
+        refresher = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                final Thread thread = new Thread( r, "ontology-refresher" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        refresher.scheduleWithFixedDelay( new Runnable() {
+            public void run() {
+                OntologyManagerContext.setInstance( context );
+                try {
+                    final Set<String> refreshed = refreshOntologies( context );
+                    if ( !refreshed.isEmpty() && log.isInfoEnabled() ) {
+                        log.info( "Refreshed ontologies: " + refreshed );
+                    }
+                } catch ( OntologyLoaderException e ) {
+                    // logged already, the next check will try again
+                } catch ( RuntimeException e ) {
+                    log.error( "Failed refreshing the ontologies", e );
+                } finally {
+                    OntologyManagerContext.removeInstance();
+                }
+            }
+        }, period, period, unit );
+    }
+
+    /**
+     * Stops checking the ontologies for updates, a check in progress is interrupted.
+     */
+    public synchronized void stopRefreshing() {
+        if ( refresher != null ) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * Creates the task loading an ontology source in a worker thread.
+     *
+     * @param cvSource the ontology source.
+     * @param context  the settings of the calling thread, carried into the worker thread.
+     * @param acquired collects the keys of the ontologies acquired from the SharedOntologyRegistry, null if ontologies
+     *                 are not shared.
+     * @param allowLazy false if the ontology has to be loaded by the task even though it is configured to be lazy.
+     * @return the task, giving the loaded OntologyAccess.
+     * @throws OntologyLoaderException if the source refers to a missing classpath resource.
+     */
+    private Callable<A> createLoadingTask( final CvSource cvSource, final OntologyManagerContext context,
+                                           final Map<String, SharedOntologyRegistry.Key> acquired,
+                                           final boolean allowLazy ) throws OntologyLoaderException {
+        String sourceUri = cvSource.getUri();
+        final String id = cvSource.getIdentifier();
+        final String name = cvSource.getName();
+        final String version = cvSource.getVersion();
+        final String format = cvSource.getFormat();
+        final String loaderClass = cvSource.getSource();
+
+        final URI uri;
+        try {
+
+            if ( sourceUri != null && sourceUri.toLowerCase().startsWith( CLASSPATH_PREFIX ) ) {
+                sourceUri = sourceUri.substring( CLASSPATH_PREFIX.length() );
+                if ( log.isDebugEnabled() ) {
+                    log.debug( "Loading ontology from classpath: " + sourceUri );
+                }
+                final URL url = OntologyManager.class.getClassLoader().getResource( sourceUri );
+                if ( url == null ) {
+                    throw new OntologyLoaderException( "Unable to load from classpath: " + sourceUri );
+                }
+                uri = url.toURI();
+                if ( log.isDebugEnabled() ) {
+                    log.debug( "URI=" + uri.toASCIIString() );
+                }
+
+            } else {
+                uri = new URI( sourceUri );
+            }
+
+        } catch ( URISyntaxException e ) {
+            throw new IllegalArgumentException( "The specified uri '" + sourceUri + "' " +
+                    "for ontology '" + id + "' has an invalid syntax.", e );
+        }
+
+        final String resolvedUri = sourceUri;
+        final boolean lazy = allowLazy && ( cvSource.isLazy() != null ? cvSource.isLazy() : context.isLazyLoading() );
+        return new Callable<A>() {
+            public A call() throws Exception {
+                OntologyManagerContext.setInstance( context );
                 try {
+                    final A oa = findOntologyAccess( resolvedUri, id, name, version, format, loaderClass );
+                    oa.setOntologyDirectory( context.getOntologyDirectory() );
 
-                    if ( sourceUri != null && sourceUri.toLowerCase().startsWith( CLASSPATH_PREFIX ) ) {
-                        sourceUri = sourceUri.substring( CLASSPATH_PREFIX.length() );
-                        if ( log.isDebugEnabled() ) {
-                            log.debug( "Loading ontology from classpath: " + sourceUri );
+                    final A readOnly = context.isShareOntologies() && acquired != null ? createReadOnlyOntologyAccess( oa ) : null;
+                    if ( readOnly != null ) {
+                        final SharedOntologyRegistry.Key key = SharedOntologyRegistry.createKey( oa.getClass(), uri, format, version );
+                        final A shared = SharedOntologyRegistry.getInstance().acquire( key, new Callable<A>() {
+                            public A call() throws Exception {
+                                if ( log.isInfoEnabled() ) {
+                                    log.info( "Loading shared ontology: name=" + name + ", ID= " + id + ", format=" + format
+                                            + ", version=" + version + ", uri=" + uri + " using source: " + loaderClass );
+                                }
+                                oa.loadOntology( id, name, version, format, uri );
+                                return readOnly;
+                            }
+                        } );
+                        final SharedOntologyRegistry.Key previous = acquired.put( id, key );
+                        if ( previous != null ) {
+                            // the same ID is configured twice, only the last one is kept
+                            SharedOntologyRegistry.getInstance().release( previous );
                         }
-                        final URL url = OntologyManager.class.getClassLoader().getResource( sourceUri );
-                        if ( url == null ) {
-                            throw new OntologyLoaderException( "Unable to load from classpath: " + sourceUri );
+                        return shared;
+                    }
+
+                    if ( lazy ) {
+                        final A lazyAccess = createLazyOntologyAccess( oa, id, name, version, format, uri, context.copy() );
+                        if ( lazyAccess != null ) {
+                            if ( log.isInfoEnabled() ) {
+                                log.info( "Ontology " + id + " will be loaded on first use from " + uri );
+                            }
+                            return lazyAccess;
                         }
-                        uri = url.toURI();
-                        if ( log.isDebugEnabled() ) {
-                            log.debug( "URI=" + uri.toASCIIString() );
+                        if ( log.isWarnEnabled() ) {
+                            log.warn( "Lazy loading is not supported by " + getClass().getName() + ", loading " + id + " now" );
                         }
-
-                    } else {
-                        uri = new URI( sourceUri );
                     }
 
-                } catch ( URISyntaxException e ) {
-                    throw new IllegalArgumentException( "The specified uri '" + sourceUri + "' " +
-                            "for ontology '" + id + "' has an invalid syntax.", e );
+                    if ( log.isInfoEnabled() ) {
+                        log.info( "Loading ontology: name=" + name + ", ID= " + id + ", format=" + format
+                                + ", version=" + version + ", uri=" + uri + " using source: " + loaderClass );
+                    }
+                    oa.loadOntology( id, name, version, format, uri );
+                    return oa;
+                } finally {
+                    OntologyManagerContext.removeInstance();
                 }
+            }
+        };
+    }
 
-                if ( log.isInfoEnabled() ) {
-                    log.info( "Loading ontology: name=" + name + ", ID= " + id + ", format=" + format
-                            + ", version=" + version + ", uri=" + uri + " using source: " + loaderClass );
-                }
+    /**
+     * Runs the loading tasks on a bounded pool of threads.
+     *
+     * @param sources     the ontology sources.
+     * @param tasks       the task loading each source.
+     * @param parallelism the maximum number of sources loaded at the same time.
+     * @return the loaded ontologies by ID, in the order of the sources.
+     * @throws OntologyLoaderException naming every source that could not be loaded.
+     */
+    private Map<String, A> loadConcurrently( List<CvSource> sources, List<Callable<A>> tasks, int parallelism ) throws OntologyLoaderException {
+        final Map<String, A> loaded = new LinkedHashMap<String, A>();
+        if ( tasks.isEmpty() ) {
+            return loaded;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( Math.min( parallelism, tasks.size() ), new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                final Thread thread = new Thread( r, "ontology-loader-" + threadCount.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
 
-                A oa;
+        try {
+            final List<Future<A>> futures = new ArrayList<Future<A>>( tasks.size() );
+            for ( Callable<A> task : tasks ) {
+                futures.add( executor.submit( task ) );
+            }
+
+            StringBuilder failedSources = null;
+            Throwable firstFailure = null;
+            for ( int i = 0; i < futures.size(); i++ ) {
+                final CvSource cvSource = sources.get( i );
                 try {
-                    oa = findOntologyAccess(sourceUri, id, name, version, format, loaderClass);
-                    oa.setOntologyDirectory( OntologyManagerContext.getInstance().getOntologyDirectory() );
-                    oa.loadOntology( id, name, version, format, uri );
-                    ontologies.put( id, oa );
-                } catch ( Exception e ) {
-                    throw new OntologyLoaderException( "Failed loading ontology source: " + loaderClass, e );
+                    loaded.put( cvSource.getIdentifier(), futures.get( i ).get() );
+                } catch ( ExecutionException e ) {
+                    final Throwable cause = e.getCause();
+                    log.error( "Failed loading ontology " + cvSource.getIdentifier() + " using source: " + cvSource.getSource(), cause );
+                    if ( failedSources == null ) {
+                        failedSources = new StringBuilder();
+                        firstFailure = cause;
+                    } else {
+                        failedSources.append( ", " );
+                        firstFailure.addSuppressed( cause );
+                    }
+                    failedSources.append( cvSource.getIdentifier() ).append( " (" ).append( cvSource.getSource() )
+                            .append( "): " ).append( cause.getMessage() );
                 }
             }
+
+            if ( failedSources != null ) {
+                throw new OntologyLoaderException( "Failed loading ontology source(s): " + failedSources, firstFailure );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new OntologyLoaderException( "Interrupted while loading the ontologies", e );
+        } finally {
+            executor.shutdownNow();
         }
+        return loaded;
+    }
+
+    /**
+     * Wraps an OntologyAccess that is not loaded yet into one loading it when it is first queried.
+     *
+     * @param ontologyAccess the OntologyAccess, not loaded yet.
+     * @param ontologyId     the ID of the ontology.
+     * @param ontologyName   the name of the ontology.
+     * @param ontologyVersion the version of the ontology.
+     * @param format         the format of the ontology.
+     * @param uri            where the ontology is loaded from.
+     * @param context        the settings to load the ontology with.
+     * @return the lazy OntologyAccess, or null if lazy loading is not supported, the ontology being then loaded right away.
+     */
+    protected A createLazyOntologyAccess( A ontologyAccess, String ontologyId, String ontologyName, String ontologyVersion,
+                                          String format, URI uri, OntologyManagerContext context ) {
+        return null;
+    }
+
+    /**
+     * Wraps an OntologyAccess so that it can be shared by several managers once loaded.
+     *
+     * @param ontologyAccess the OntologyAccess, not loaded yet.
+     * @return the read-only OntologyAccess, or null if this kind of OntologyAccess cannot be shared.
+     */
+    protected A createReadOnlyOntologyAccess( A ontologyAccess ) {
+        return null;
     }
 
     protected abstract A findOntologyAccess(String sourceURI, String ontologyId, String ontologyName, String ontologyVersion, String format, String loaderClass) throws ClassNotFoundException;
@@ -0,0 +1,244 @@
+package psidev.psi.tools.ontology_manager;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process wide registry of the ontologies shared by the ontology managers.
+ * <p/>
+ * An ontology is registered under a Key made of the class of the OntologyAccess, the URI, format and version of the
+ * source and, for local files and jar resources, the MD5 signature of their content. The first manager acquiring a key
+ * loads the ontology, managers acquiring it meanwhile wait for that load, and the following ones get the same instance.
+ * Each acquisition must be matched by a release, the ontology is dropped from the registry once nobody uses it anymore.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class SharedOntologyRegistry {
+
+    public static final Log log = LogFactory.getLog( SharedOntologyRegistry.class );
+
+    private static final SharedOntologyRegistry instance = new SharedOntologyRegistry();
+
+    public static SharedOntologyRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Identifies the content of an ontology source.
+     */
+    public static final class Key {
+
+        private final String accessClass;
+        private final String uri;
+        private final String format;
+        private final String version;
+        private final String md5Signature;
+
+        private Key( String accessClass, String uri, String format, String version, String md5Signature ) {
+            this.accessClass = accessClass;
+            this.uri = uri;
+            this.format = format;
+            this.version = version;
+            this.md5Signature = md5Signature;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( this == o ) return true;
+            if ( !( o instanceof Key ) ) return false;
+            final Key key = ( Key ) o;
+            return accessClass.equals( key.accessClass ) && uri.equals( key.uri ) && equals( format, key.format )
+                   && equals( version, key.version ) && equals( md5Signature, key.md5Signature );
+        }
+
+        private static boolean equals( String s1, String s2 ) {
+            return s1 == null ? s2 == null : s1.equals( s2 );
+        }
+
+        @Override
+        public int hashCode() {
+            int result = accessClass.hashCode();
+            result = 31 * result + uri.hashCode();
+            result = 31 * result + ( md5Signature != null ? md5Signature.hashCode() : 0 );
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return accessClass + "[uri=" + uri + ", format=" + format + ", version=" + version + ", md5=" + md5Signature + "]";
+        }
+    }
+
+    /**
+     * A registered ontology and the number of its users.
+     */
+    private static class Entry {
+        private final FutureTask<Object> loading;
+        private int references = 0;
+
+        private Entry( FutureTask<Object> loading ) {
+            this.loading = loading;
+        }
+    }
+
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+    /**
+     * Creates the key of an ontology source, reading local files and jar resources to compute their MD5 signature.
+     *
+     * @param accessClass the class of the OntologyAccess loading the source.
+     * @param uri         where the ontology is loaded from.
+     * @param format      the format of the ontology.
+     * @param version     the version of the ontology.
+     * @return the key.
+     * @throws OntologyLoaderException if the local file or jar resource cannot be read.
+     */
+    public static Key createKey( Class accessClass, URI uri, String format, String version ) throws OntologyLoaderException {
+        if ( accessClass == null ) {
+            throw new IllegalArgumentException( "You must give a non null accessClass" );
+        }
+        if ( uri == null ) {
+            throw new IllegalArgumentException( "You must give a non null uri" );
+        }
+
+        String md5Signature = null;
+        final String scheme = uri.getScheme();
+        if ( "file".equalsIgnoreCase( scheme ) || "jar".equalsIgnoreCase( scheme ) ) {
+            md5Signature = computeMD5Signature( uri );
+        }
+        return new Key( accessClass.getName(), uri.toString(), format, version, md5Signature );
+    }
+
+    private static String computeMD5Signature( URI uri ) throws OntologyLoaderException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance( "MD5" );
+            final InputStream is = uri.toURL().openStream();
+            try {
+                final byte[] buffer = new byte[65536];
+                int read;
+                while ( ( read = is.read( buffer ) ) != -1 ) {
+                    digest.update( buffer, 0, read );
+                }
+            } finally {
+                is.close();
+            }
+            return new BigInteger( 1, digest.digest() ).toString( 16 );
+        } catch ( IOException e ) {
+            throw new OntologyLoaderException( "Unable to process file for MD5: " + uri, e );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new OntologyLoaderException( "Unable to compute the MD5 signature of " + uri, e );
+        }
+    }
+
+    /**
+     * Gives the ontology registered under the given key, loading it if needed. The caller has to release the key once
+     * it does not use the ontology anymore.
+     *
+     * @param key    the key of the ontology.
+     * @param loader loads the ontology if it is not registered yet, the ontology it gives must not be modified afterwards.
+     * @return the shared ontology.
+     * @throws OntologyLoaderException if the ontology could not be loaded, the key does not need to be released then.
+     */
+    @SuppressWarnings( "unchecked" )
+    public <A> A acquire( Key key, final Callable<A> loader ) throws OntologyLoaderException {
+        final Entry entry;
+        synchronized ( this ) {
+            Entry existing = entries.get( key );
+            if ( existing == null ) {
+                existing = new Entry( new FutureTask<Object>( new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return loader.call();
+                    }
+                } ) );
+                entries.put( key, existing );
+            }
+            existing.references++;
+            entry = existing;
+        }
+
+        // the first caller loads the ontology, the others wait for it
+        entry.loading.run();
+        try {
+            final A ontology = ( A ) entry.loading.get();
+            if ( log.isDebugEnabled() ) {
+                log.debug( "Acquired shared ontology " + key + ", " + entry.references + " reference(s)" );
+            }
+            return ontology;
+        } catch ( ExecutionException e ) {
+            discard( key, entry );
+            throw new OntologyLoaderException( "Failed loading shared ontology " + key, e.getCause() );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            discard( key, entry );
+            throw new OntologyLoaderException( "Interrupted while waiting for shared ontology " + key, e );
+        }
+    }
+
+    /**
+     * Releases an ontology acquired earlier, it is dropped from the registry once it is not used anymore.
+     *
+     * @param key the key of the ontology.
+     */
+    public synchronized void release( Key key ) {
+        final Entry entry = entries.get( key );
+        if ( entry == null ) {
+            throw new IllegalStateException( "No shared ontology is registered for " + key );
+        }
+        release( key, entry );
+    }
+
+    private synchronized void release( Key key, Entry entry ) {
+        entry.references--;
+        if ( entry.references <= 0 && entries.get( key ) == entry ) {
+            entries.remove( key );
+            if ( log.isInfoEnabled() ) log.info( "Released shared ontology " + key );
+            try {
+                OntologyManagerTemplate.closeOntology( entry.loading.get() );
+            } catch ( ExecutionException e ) {
+                // never loaded, nothing to close
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gives up an ontology that could not be loaded, the next caller acquiring its key will try to load it again.
+     */
+    private synchronized void discard( Key key, Entry entry ) {
+        entry.references--;
+        if ( entries.get( key ) == entry && entry.loading.isDone() ) {
+            entries.remove( key );
+        }
+    }
+
+    /**
+     * @param key the key of an ontology.
+     * @return the number of users of that ontology, 0 if it is not registered.
+     */
+    public synchronized int getReferenceCount( Key key ) {
+        final Entry entry = entries.get( key );
+        return entry == null ? 0 : entry.references;
+    }
+
+    /**
+     * @return the number of ontologies registered.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
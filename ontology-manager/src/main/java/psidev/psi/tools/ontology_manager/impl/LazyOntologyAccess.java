@@ -0,0 +1,21 @@
+package psidev.psi.tools.ontology_manager.impl;
+
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.net.URI;
+
+/**
+ * OntologyAccess loading its ontology when it is first queried.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class LazyOntologyAccess extends LazyOntologyAccessTemplate<OntologyTermI, OntologyAccess> implements OntologyAccess {
+
+    public LazyOntologyAccess( OntologyAccess ontologyAccess, String ontologyID, String name, String version,
+                               String format, URI uri, OntologyManagerContext context ) {
+        super( ontologyAccess, ontologyID, name, version, format, uri, context );
+    }
+}
@@ -0,0 +1,219 @@
+package psidev.psi.tools.ontology_manager.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccessTemplate;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * OntologyAccess loading its ontology when it is first queried.
+ * <p/>
+ * The ontology is loaded by the wrapped OntologyAccess, once, with the OntologyManagerContext of the thread that
+ * configured the manager. Threads querying the ontology while it is being loaded wait for that load. If the loading
+ * fails, every query throws an IllegalStateException caused by the OntologyLoaderException.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class LazyOntologyAccessTemplate<T extends OntologyTermI, A extends OntologyAccessTemplate<T>> implements OntologyAccessTemplate<T>, Closeable {
+
+    public static final Log log = LogFactory.getLog( LazyOntologyAccessTemplate.class );
+
+    private final A ontologyAccess;
+
+    private final String ontologyID;
+    private final String name;
+    private final String version;
+    private final String format;
+    private final URI uri;
+
+    private final OntologyManagerContext context;
+
+    private volatile boolean loaded = false;
+
+    private OntologyLoaderException failure;
+
+    /**
+     * @param ontologyAccess the OntologyAccess to be loaded, not loaded yet.
+     * @param ontologyID     the ID of the ontology.
+     * @param name           the name of the ontology.
+     * @param version        the version of the ontology.
+     * @param format         the format of the ontology.
+     * @param uri            where the ontology is loaded from.
+     * @param context        the settings to load the ontology with.
+     */
+    public LazyOntologyAccessTemplate( A ontologyAccess, String ontologyID, String name, String version, String format,
+                                       URI uri, OntologyManagerContext context ) {
+        if ( ontologyAccess == null ) {
+            throw new IllegalArgumentException( "You must give a non null ontologyAccess" );
+        }
+        if ( context == null ) {
+            throw new IllegalArgumentException( "You must give a non null context" );
+        }
+        this.ontologyAccess = ontologyAccess;
+        this.ontologyID = ontologyID;
+        this.name = name;
+        this.version = version;
+        this.format = format;
+        this.uri = uri;
+        this.context = context;
+    }
+
+    /**
+     * @return true if the ontology has been loaded, or could not be.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the wrapped OntologyAccess, loaded.
+     * @throws IllegalStateException if the ontology could not be loaded.
+     */
+    public A getOntologyAccess() {
+        if ( !loaded ) {
+            synchronized ( this ) {
+                if ( !loaded ) {
+                    load();
+                    loaded = true;
+                }
+            }
+        }
+        if ( failure != null ) {
+            throw new IllegalStateException( "The ontology " + ontologyID + " could not be loaded from " + uri, failure );
+        }
+        return ontologyAccess;
+    }
+
+    /**
+     * Closes the wrapped OntologyAccess if it has been loaded and can be closed, it is never loaded by this method.
+     */
+    public void close() throws IOException {
+        synchronized ( this ) {
+            if ( loaded && failure == null && ontologyAccess instanceof Closeable ) {
+                ( ( Closeable ) ontologyAccess ).close();
+            }
+        }
+    }
+
+    private void load() {
+        if ( log.isInfoEnabled() ) {
+            log.info( "Loading ontology on first use: name=" + name + ", ID= " + ontologyID + ", format=" + format
+                      + ", version=" + version + ", uri=" + uri );
+        }
+
+        final OntologyManagerContext callerContext = OntologyManagerContext.getInstance();
+        OntologyManagerContext.setInstance( context );
+        try {
+            ontologyAccess.loadOntology( ontologyID, name, version, format, uri );
+        } catch ( OntologyLoaderException e ) {
+            log.error( "Failed loading ontology " + ontologyID + " from " + uri, e );
+            failure = e;
+        } catch ( RuntimeException e ) {
+            log.error( "Failed loading ontology " + ontologyID + " from " + uri, e );
+            failure = new OntologyLoaderException( "Failed loading ontology " + ontologyID, e );
+        } finally {
+            OntologyManagerContext.setInstance( callerContext );
+        }
+    }
+
+    ////////////////////////////
+    // OntologyAccessTemplate
+
+    /**
+     * Loads the given ontology right away in the wrapped OntologyAccess.
+     */
+    public void loadOntology( String ontologyID, String name, String version, String format, URI uri ) throws OntologyLoaderException {
+        synchronized ( this ) {
+            ontologyAccess.loadOntology( ontologyID, name, version, format, uri );
+            failure = null;
+            loaded = true;
+        }
+    }
+
+    public void setOntologyDirectory( File directory ) {
+        ontologyAccess.setOntologyDirectory( directory );
+    }
+
+    public Set<T> getValidTerms( String accession, boolean allowChildren, boolean useTerm ) {
+        return getOntologyAccess().getValidTerms( accession, allowChildren, useTerm );
+    }
+
+    public T getTermForAccession( String accession ) {
+        return getOntologyAccess().getTermForAccession( accession );
+    }
+
+    public boolean isObsolete( T term ) {
+        return getOntologyAccess().isObsolete( term );
+    }
+
+    @Override
+    public Set<T> filterObsoleteTerms( Collection<T> terms ) {
+        return getOntologyAccess().filterObsoleteTerms( terms );
+    }
+
+    @Override
+    public void prefetch( Collection<String> accessions, boolean allowChildren ) {
+        getOntologyAccess().prefetch( accessions, allowChildren );
+    }
+
+    @Override
+    public boolean isTermNameIndexed() {
+        return getOntologyAccess().isTermNameIndexed();
+    }
+
+    @Override
+    public Set<T> getTermsForName( String name ) {
+        return getOntologyAccess().getTermsForName( name );
+    }
+
+    public Set<T> getDirectParents( T term ) {
+        return getOntologyAccess().getDirectParents( term );
+    }
+
+    public Set<T> getDirectChildren( T term ) {
+        return getOntologyAccess().getDirectChildren( term );
+    }
+
+    public Set<T> getAllParents( T term ) {
+        return getOntologyAccess().getAllParents( term );
+    }
+
+    public Set<T> getAllChildren( T term ) {
+        return getOntologyAccess().getAllChildren( term );
+    }
+
+    @Override
+    public boolean isDescendantOf( T child, T ancestor ) {
+        return getOntologyAccess().isDescendantOf( child, ancestor );
+    }
+
+    @Override
+    public int getDescendantCount( T term ) {
+        return getOntologyAccess().getDescendantCount( term );
+    }
+
+    /**
+     * An ontology that has not been loaded yet cannot be out of date.
+     */
+    public boolean isOntologyUpToDate() throws OntologyLoaderException {
+        return !loaded || getOntologyAccess().isOntologyUpToDate();
+    }
+
+    public boolean isUseTermSynonyms() {
+        return ontologyAccess.isUseTermSynonyms();
+    }
+
+    public void setUseTermSynonyms( boolean useTermSynonyms ) {
+        ontologyAccess.setUseTermSynonyms( useTermSynonyms );
+    }
+}
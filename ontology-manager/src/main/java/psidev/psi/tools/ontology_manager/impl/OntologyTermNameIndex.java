@@ -0,0 +1,80 @@
+package psidev.psi.tools.ontology_manager.impl;
+
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.util.*;
+
+/**
+ * Index of a set of terms by preferred name and synonym, built once the terms are loaded so that a name can be resolved
+ * with a hash lookup rather than by collecting the names of all the terms.
+ * <p/>
+ * Names are matched exactly, as the validator compares them. Most names belong to a single term, which is then stored
+ * without any wrapping collection.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OntologyTermNameIndex<T extends OntologyTermI> {
+
+    /**
+     * Term, or List of terms, for a given name.
+     */
+    private final Map<String, Object> name2terms;
+
+    /**
+     * @param terms the terms to index, not to be modified afterwards.
+     */
+    public OntologyTermNameIndex( Collection<T> terms ) {
+        name2terms = new HashMap<String, Object>( terms.size() * 2 );
+        for ( T term : terms ) {
+            add( term.getPreferredName(), term );
+            for ( String synonym : term.getNameSynonyms() ) {
+                add( synonym, term );
+            }
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void add( String name, T term ) {
+        if ( name == null ) {
+            return;
+        }
+        final Object existing = name2terms.get( name );
+        if ( existing == null ) {
+            name2terms.put( name, term );
+        } else if ( existing instanceof List ) {
+            final List<T> list = ( List<T> ) existing;
+            if ( !list.contains( term ) ) {
+                list.add( term );
+            }
+        } else if ( !existing.equals( term ) ) {
+            final List<T> list = new ArrayList<T>( 2 );
+            list.add( ( T ) existing );
+            list.add( term );
+            name2terms.put( name, list );
+        }
+    }
+
+    /**
+     * @param name a preferred name or synonym.
+     * @return a non null, unmodifiable set of the terms having that name or synonym.
+     */
+    @SuppressWarnings( "unchecked" )
+    public Set<T> getTerms( String name ) {
+        final Object terms = name2terms.get( name );
+        if ( terms == null ) {
+            return Collections.emptySet();
+        }
+        if ( terms instanceof List ) {
+            return Collections.unmodifiableSet( new LinkedHashSet<T>( ( List<T> ) terms ) );
+        }
+        return Collections.singleton( ( T ) terms );
+    }
+
+    /**
+     * @return the number of distinct names indexed.
+     */
+    public int size() {
+        return name2terms.size();
+    }
+}
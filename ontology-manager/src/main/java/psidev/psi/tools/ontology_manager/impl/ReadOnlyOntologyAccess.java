@@ -0,0 +1,17 @@
+package psidev.psi.tools.ontology_manager.impl;
+
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+/**
+ * OntologyAccess giving read-only access to a loaded ontology.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class ReadOnlyOntologyAccess extends ReadOnlyOntologyAccessTemplate<OntologyTermI, OntologyAccess> implements OntologyAccess {
+
+    public ReadOnlyOntologyAccess( OntologyAccess ontologyAccess ) {
+        super( ontologyAccess );
+    }
+}
@@ -0,0 +1,142 @@
+package psidev.psi.tools.ontology_manager.impl;
+
+import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccessTemplate;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * OntologyAccess giving read-only access to a loaded ontology, so that it can be shared by several ontology managers.
+ * The ontology cannot be loaded again and its settings cannot be changed.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class ReadOnlyOntologyAccessTemplate<T extends OntologyTermI, A extends OntologyAccessTemplate<T>> implements OntologyAccessTemplate<T>, Closeable {
+
+    private final A ontologyAccess;
+
+    /**
+     * @param ontologyAccess a loaded OntologyAccess.
+     */
+    public ReadOnlyOntologyAccessTemplate( A ontologyAccess ) {
+        if ( ontologyAccess == null ) {
+            throw new IllegalArgumentException( "You must give a non null ontologyAccess" );
+        }
+        this.ontologyAccess = ontologyAccess;
+    }
+
+    /**
+     * @return the wrapped OntologyAccess, not to be modified.
+     */
+    public A getOntologyAccess() {
+        return ontologyAccess;
+    }
+
+    /**
+     * Closes the wrapped OntologyAccess if it can be closed. Only the SharedOntologyRegistry closes the shared
+     * ontologies, once nobody uses them anymore.
+     */
+    public void close() throws IOException {
+        if ( ontologyAccess instanceof Closeable ) {
+            ( ( Closeable ) ontologyAccess ).close();
+        }
+    }
+
+    ////////////////////////////
+    // OntologyAccessTemplate
+
+    /**
+     * @throws UnsupportedOperationException always, the ontology is already loaded.
+     */
+    public void loadOntology( String ontologyID, String name, String version, String format, URI uri ) throws OntologyLoaderException {
+        throw new UnsupportedOperationException( "This ontology is shared and read-only, it cannot be loaded again" );
+    }
+
+    /**
+     * Ignored, the ontology is already loaded.
+     */
+    public void setOntologyDirectory( File directory ) {
+    }
+
+    public Set<T> getValidTerms( String accession, boolean allowChildren, boolean useTerm ) {
+        return ontologyAccess.getValidTerms( accession, allowChildren, useTerm );
+    }
+
+    public T getTermForAccession( String accession ) {
+        return ontologyAccess.getTermForAccession( accession );
+    }
+
+    public boolean isObsolete( T term ) {
+        return ontologyAccess.isObsolete( term );
+    }
+
+    @Override
+    public Set<T> filterObsoleteTerms( Collection<T> terms ) {
+        return ontologyAccess.filterObsoleteTerms( terms );
+    }
+
+    @Override
+    public void prefetch( Collection<String> accessions, boolean allowChildren ) {
+        ontologyAccess.prefetch( accessions, allowChildren );
+    }
+
+    @Override
+    public boolean isTermNameIndexed() {
+        return ontologyAccess.isTermNameIndexed();
+    }
+
+    @Override
+    public Set<T> getTermsForName( String name ) {
+        return ontologyAccess.getTermsForName( name );
+    }
+
+    public Set<T> getDirectParents( T term ) {
+        return ontologyAccess.getDirectParents( term );
+    }
+
+    public Set<T> getDirectChildren( T term ) {
+        return ontologyAccess.getDirectChildren( term );
+    }
+
+    public Set<T> getAllParents( T term ) {
+        return ontologyAccess.getAllParents( term );
+    }
+
+    public Set<T> getAllChildren( T term ) {
+        return ontologyAccess.getAllChildren( term );
+    }
+
+    @Override
+    public boolean isDescendantOf( T child, T ancestor ) {
+        return ontologyAccess.isDescendantOf( child, ancestor );
+    }
+
+    @Override
+    public int getDescendantCount( T term ) {
+        return ontologyAccess.getDescendantCount( term );
+    }
+
+    public boolean isOntologyUpToDate() throws OntologyLoaderException {
+        return ontologyAccess.isOntologyUpToDate();
+    }
+
+    public boolean isUseTermSynonyms() {
+        return ontologyAccess.isUseTermSynonyms();
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the setting would change, the ontology being shared.
+     */
+    public void setUseTermSynonyms( boolean useTermSynonyms ) {
+        if ( useTermSynonyms != ontologyAccess.isUseTermSynonyms() ) {
+            throw new UnsupportedOperationException( "This ontology is shared and read-only, its synonym handling cannot be changed" );
+        }
+    }
+}
@@ -3,6 +3,7 @@ package psidev.psi.tools.ontology_manager.impl.local;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.impl.OntologyTermNameIndex;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyAccessTemplate;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 
@@ -16,6 +17,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -38,6 +40,11 @@ public abstract class AbstractLocalOntology<T extends OntologyTermI, A extends O
 
     protected A ontology;
 
+    /**
+     * Index of the terms of the ontology by name and synonym, built once the ontology is loaded.
+     */
+    private volatile OntologyTermNameIndex<T> nameIndex;
+
     protected final String DEFAULT_ONTOLOGY_DIRECTORY = ".downloaded-ontologies";
 
     protected File ontologyDirectory = null;
@@ -50,6 +57,25 @@ public abstract class AbstractLocalOntology<T extends OntologyTermI, A extends O
 
     protected URL fileUrl;
 
+    /**
+     * Local file the ontology was loaded from, null if it was downloaded or read from a jar.
+     */
+    private File localFile;
+
+    private long localFileLastModified;
+
+    private long localFileLength;
+
+    /**
+     * True if the ontology was read from a jar, which does not change while the application runs.
+     */
+    private boolean loadedFromJar;
+
+    /**
+     * Version of the ontology loaded from fileUrl, as given by the server, null if unknown.
+     */
+    protected RemoteOntologyVersion remoteVersion;
+
     public AbstractLocalOntology() {
         log.info( "Creating new LocalOntology..." );
         ontology = null;
@@ -85,9 +111,14 @@ public abstract class AbstractLocalOntology<T extends OntologyTermI, A extends O
                     if ( !file.exists() ) {
                         throw new IllegalArgumentException("Could not find the file for URI: " + uri + " - Perhaps the syntax of the URI is wrong!");
                     }
+                    // recorded before parsing, so that a change made meanwhile is seen by the next check
+                    this.localFile = file;
+                    this.localFileLastModified = file.lastModified();
+                    this.localFileLength = file.length();
                     ontology = loader.parseOboFile(file);
                 } else if (uri.getScheme().equalsIgnoreCase("jar")){
                     ontology = loader.parseOboFileFromJar(uri.toString());
+                    this.loadedFromJar = true;
                 } else {
                     URL url;
                     try {
@@ -96,12 +127,6 @@ public abstract class AbstractLocalOntology<T extends OntologyTermI, A extends O
                         throw new IllegalArgumentException( "The given CvSource doesn't have a valid URI: " + uri );
                     }
 
-                    // Compute the MD5 signature of the file to load
-                    this.md5Signature = computeMD5SignatureFor(url);
-
-                    // Get the size of the file to load
-                    this.contentSize = getSizeOfFile(url);
-
                     // We need to store the url to know if an update has been done later
                     this.fileUrl = url;
 
@@ -114,12 +139,29 @@ public abstract class AbstractLocalOntology<T extends OntologyTermI, A extends O
                     } catch ( OntologyLoaderException e ) {
                         throw new OntologyLoaderException( "OboFile parser failed with Exception: ", e );
                     }
+
+                    this.remoteVersion = loader.getRemoteVersion();
+                    if ( remoteVersion != null && remoteVersion.hasValidators() ) {
+                        // updates are checked with conditional requests, the file does not need to be downloaded again
+                        this.md5Signature = null;
+                        this.contentSize = -1;
+                    } else {
+                        // Compute the MD5 signature of the file to load
+                        this.md5Signature = computeMD5SignatureFor(url);
+
+                        // Get the size of the file to load
+                        this.contentSize = getSizeOfFile(url);
+                    }
                 }
             }
         } else {
             throw new OntologyLoaderException( "Unsupported ontology format: " + format );
         }
 
+        // from now on the ontology is only read, possibly by many threads
+        ontology.freeze();
+        nameIndex = new OntologyTermNameIndex<T>( ontology.getOntologyTerms() );
+
         if ( log.isInfoEnabled() ) {
             log.info( "Successfully created LocalOntology from values: ontology="
                     + ontologyID + " name=" + name + " version=" + version + " format=" + format + " location=" + uri );
@@ -155,6 +197,30 @@ public abstract class AbstractLocalOntology<T extends OntologyTermI, A extends O
         return ontology.isObsoleteTerm( term );
     }
 
+    @Override
+    public Set<T> filterObsoleteTerms( Collection<T> terms ) {
+        return ontology.filterObsoleteTerms( terms );
+    }
+
+    @Override
+    public boolean isTermNameIndexed() {
+        return ontology != null;
+    }
+
+    @Override
+    public Set<T> getTermsForName( String name ) {
+        OntologyTermNameIndex<T> index = nameIndex;
+        if ( index == null ) {
+            if ( ontology == null ) {
+                throw new IllegalStateException( "The ontology has not been loaded" );
+            }
+            // the ontology was given by a sub class rather than loaded
+            index = new OntologyTermNameIndex<T>( ontology.getOntologyTerms() );
+            nameIndex = index;
+        }
+        return index.getTerms( name );
+    }
+
     public Set<T> getDirectParents( T term ) {
         return ontology.getDirectParents( term );
     }
@@ -171,13 +237,53 @@ public abstract class AbstractLocalOntology<T extends OntologyTermI, A extends O
         return ontology.getAllChildren( term );
     }
 
+    @Override
+    public boolean isDescendantOf( T child, T ancestor ) {
+        return ontology.isDescendantOf( child, ancestor );
+    }
+
+    /**
+     * The children are indexed in memory, counting them does not copy them.
+     */
+    @Override
+    public int getDescendantCount( T term ) {
+        return term == null ? 0 : ontology.getAllChildren( term ).size();
+    }
+
     /**
-     * Check if the ontology is up to date
-     * @return true if the md5 signature is still the same and/or if the size of the file is still the same
+     * @param term the term of interest.
+     * @return the number of links on the shortest path from a root to that term, -1 if it cannot be reached.
+     */
+    public int getDepth( T term ) {
+        return ontology.getDepth( term );
+    }
+
+    /**
+     * Check if the ontology is up to date. Ontologies downloaded from a server giving an ETag or a Last-Modified date are
+     * checked with a conditional request, without downloading them again. Local files are checked on their date of last
+     * modification and their length, ontologies read from a jar are always up to date.
+     * @return true if the server tells that the ontology did not change, or else if the md5 signature is still the same
+     * and/or if the size of the file is still the same
      * @throws OntologyLoaderException
      */
     public boolean isOntologyUpToDate() throws OntologyLoaderException {
 
+        if ( loadedFromJar ) {
+            return true;
+        }
+
+        if ( localFile != null ) {
+            return localFile.lastModified() == localFileLastModified && localFile.length() == localFileLength;
+        }
+
+        if ( this.fileUrl != null && remoteVersion != null && remoteVersion.hasValidators() ) {
+            try {
+                return remoteVersion.isUpToDate( fileUrl );
+            } catch ( IOException e ) {
+                throw new OntologyLoaderException( "Unable to check whether " + fileUrl + " changed", e );
+            }
+        }
+
         if (this.fileUrl != null){
             if (md5Signature != null){
                 boolean isMd5UpToDate = checkUpToDateMd5Signature();
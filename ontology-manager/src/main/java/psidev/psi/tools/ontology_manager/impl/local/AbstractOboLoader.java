@@ -12,6 +12,8 @@ import uk.ac.ebi.ols.model.interfaces.TermSynonym;
 import java.io.*;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
@@ -36,6 +38,16 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
 
     protected static final String ONTOLOGY_REGISTRY_NAME = "ontology.registry.map";
 
+    /**
+     * Guards the registry file, which loaders running in parallel read and update.
+     */
+    private static final Object REGISTRY_LOCK = new Object();
+
+    /**
+     * Version of the last ontology loaded from an URL, null if the server did not give one.
+     */
+    private RemoteOntologyVersion remoteVersion;
+
     public AbstractOboLoader( File ontologyDirectory ) {
     }
 
@@ -50,6 +62,104 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
     protected abstract O createNewOntology();
     protected abstract T createNewOntologyTerm(Term t);
 
+    /**
+     * Creates a term from what an ontology snapshot keeps of it, that is its accession and its name, the synonyms
+     * being added afterwards. Only called if isSnapshotSupported() is true.
+     *
+     * @param accession the accession of the term.
+     * @param name      the name of the term.
+     * @return a new term.
+     */
+    protected T createNewOntologyTerm( String accession, String name ) {
+        throw new UnsupportedOperationException( getClass().getName() + " does not support ontology snapshots" );
+    }
+
+    /**
+     * Loaders whose terms hold more than an accession, a name and synonyms cannot be restored from a snapshot.
+     *
+     * @return true if createNewOntologyTerm( String, String ) is implemented.
+     */
+    protected boolean isSnapshotSupported() {
+        return false;
+    }
+
+    /**
+     * The StreamingOboParser reads OBO files in a single pass, without building the ols-core representation of the
+     * ontology. Its terms are created by createNewOntologyTerm( String, String ). Large files are parsed in parallel
+     * unless OntologyManagerContext.isParallelOboParsing() is false.
+     *
+     * @return true if OBO files are read by the StreamingOboParser rather than by the ols-core parser.
+     */
+    protected boolean isStreamingParserEnabled() {
+        return false;
+    }
+
+    /**
+     * Builds the ontology from an OBO file read by the StreamingOboParser, all at once through an OntologyBuilder.
+     *
+     * @param in       the content of the OBO file, closed once read.
+     * @param location where the file comes from, for error messages.
+     * @return the ontology.
+     */
+    private O parseStream( InputStream in, String location ) {
+        final OntologyBuilder<T> ontologyBuilder = new OntologyBuilder<T>();
+        try {
+            try {
+                final StreamingOboParser.Builder builder = new StreamingOboParser.Builder() {
+                    public void addTerm( String id, String name, List<String> synonyms, boolean obsolete ) {
+                        final T term = createNewOntologyTerm( id, name );
+                        term.getNameSynonyms().addAll( synonyms );
+                        ontologyBuilder.addTerm( term );
+                        if ( obsolete ) {
+                            ontologyBuilder.addObsoleteTerm( term );
+                        }
+                    }
+
+                    public void addLink( String parentId, String childId ) {
+                        ontologyBuilder.addLink( parentId, childId );
+                    }
+                };
+
+                if ( OntologyManagerContext.getInstance().isParallelOboParsing() ) {
+                    new StreamingOboParser().parseInParallel( in, builder, StreamingOboParser.DEFAULT_CHUNK_SIZE );
+                } else {
+                    new StreamingOboParser().parse( in, builder );
+                }
+            } finally {
+                in.close();
+            }
+        } catch ( IOException e ) {
+            throw new IllegalArgumentException( location + " could not be read.", e );
+        }
+        return ontologyBuilder.build( createNewOntology() );
+    }
+
+    /**
+     * Snapshots are kept in the ontology directory, next to the downloaded ontologies, when the OntologyManagerContext
+     * is configured to store ontologies locally.
+     *
+     * @param file the OBO file to load.
+     * @return the snapshot of that file, null if snapshots are not used.
+     */
+    private OntologySnapshot getSnapshot( File file ) {
+        final OntologyManagerContext context = OntologyManagerContext.getInstance();
+        if ( !isSnapshotSupported() || !context.isStoreOntologiesLocally() ) {
+            return null;
+        }
+
+        final File directory = context.getOntologyDirectory();
+        if ( directory == null || !directory.isDirectory() || !directory.canWrite() ) {
+            return null;
+        }
+
+        try {
+            return new OntologySnapshot( directory, file, this );
+        } catch ( IOException e ) {
+            log.warn( "Could not compute the signature of " + file.getAbsolutePath() + ", no snapshot will be used", e );
+            return null;
+        }
+    }
+
 
     protected O buildOntology() {
 
@@ -75,6 +185,7 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
             }
         }
         buildTermRelationships(ontology);
+        ontology.buildIndex();
 
         return ontology;
     }
@@ -96,7 +207,8 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
     }
 
     /**
-     * Parse the given OBO file and build a representation of the DAG into an IntactOntology.
+     * Parse the given OBO file and build a representation of the DAG into an IntactOntology. If ontologies are stored
+     * locally, a snapshot of the ontology is saved and reused as long as the file does not change.
      *
      * @param file the input file. It has to exist and to be readable, otherwise it will break.
      * @return a non null IntactOntology.
@@ -111,13 +223,35 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
             throw new IllegalArgumentException( file.getAbsolutePath() + " could not be read." );
         }
 
-        //setup vars and parse file
-        configure(file.getAbsolutePath());
+        final OntologySnapshot snapshot = getSnapshot( file );
+        if ( snapshot != null ) {
+            final O ontology = snapshot.read( this );
+            if ( ontology != null ) {
+                return ontology;
+            }
+        }
 
-        //process into relations
-        process();
+        final O ontology;
+        if ( isStreamingParserEnabled() ) {
+            try {
+                ontology = parseStream( new FileInputStream( file ), file.getAbsolutePath() );
+            } catch ( FileNotFoundException e ) {
+                throw new IllegalArgumentException( file.getAbsolutePath() + " could not be read.", e );
+            }
+        } else {
+            //setup vars and parse file
+            configure(file.getAbsolutePath());
 
-        return buildOntology();
+            //process into relations
+            process();
+
+            ontology = buildOntology();
+        }
+
+        if ( snapshot != null ) {
+            snapshot.write( ontology );
+        }
+        return ontology;
     }
 
     /**
@@ -133,6 +267,14 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
             throw new IllegalArgumentException("Resource URI for OBOO file cannot be null");
         }
 
+        if ( isStreamingParserEnabled() ) {
+            try {
+                return parseStream( new URL( jarURI ).openStream(), jarURI );
+            } catch ( IOException e ) {
+                throw new IllegalArgumentException( jarURI + " could not be read.", e );
+            }
+        }
+
         //setup vars and parse file
         configure(jarURI);
 
@@ -161,6 +303,69 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
         }
     }
 
+    /**
+     * @param registryFile the registry file, possibly empty or not existing.
+     * @return the map of the URLs to the files they were stored in, null if the registry is empty.
+     */
+    private static Map readRegistry( File registryFile ) throws IOException, ClassNotFoundException {
+        synchronized ( REGISTRY_LOCK ) {
+            if ( registryFile.length() == 0 ) {
+                return null;
+            }
+            final ObjectInputStream ois = new ObjectInputStream( new FileInputStream( registryFile ) );
+            try {
+                return ( Map ) ois.readObject();
+            } finally {
+                ois.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the registry again and stores or removes the file of the given URL, so that the entries added meanwhile by
+     * other loaders are kept. The registry is replaced atomically and is never seen half written.
+     *
+     * @param url  the URL of interest.
+     * @param path the file the URL is stored in, null to remove the URL from the registry.
+     */
+    private void updateRegistry( URL url, String path ) throws OntologyLoaderException, IOException {
+        synchronized ( REGISTRY_LOCK ) {
+            final File registryFile = getRegistryFile();
+
+            Map registryMap = null;
+            try {
+                registryMap = readRegistry( registryFile );
+            } catch ( IOException e ) {
+                log.warn( "Could not read the registry file, it is written again", e );
+            } catch ( ClassNotFoundException e ) {
+                log.warn( "Could not read the registry file, it is written again", e );
+            }
+            if ( registryMap == null ) {
+                registryMap = new HashMap();
+            }
+
+            if ( path == null ) {
+                registryMap.remove( url );
+            } else {
+                registryMap.put( url, path );
+            }
+
+            final File tmp = File.createTempFile( ONTOLOGY_REGISTRY_NAME, ".tmp", registryFile.getAbsoluteFile().getParentFile() );
+            try {
+                final ObjectOutputStream oos = new ObjectOutputStream( new FileOutputStream( tmp ) );
+                try {
+                    oos.writeObject( registryMap );
+                } finally {
+                    oos.close();
+                }
+                Files.move( tmp.toPath(), registryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            } catch ( IOException e ) {
+                tmp.delete();
+                throw e;
+            }
+        }
+    }
+
     /**
      * Load an OBO file from an URL.
      *
@@ -179,12 +384,12 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
         if ( url == null ) {
             throw new IllegalArgumentException( "Please give a non null URL." );
         }
+        remoteVersion = null;
 
 
         File ontologyFile = null;
         File ontologyDirectory = OntologyManagerContext.getInstance().getOntologyDirectory();
         boolean isKeepDownloadedOntologiesOnDisk = OntologyManagerContext.getInstance().isStoreOntologiesLocally();
-        Map registryMap = null;
 
         if( isKeepDownloadedOntologiesOnDisk ) {
 
@@ -220,8 +425,7 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
                 try {
                     if ( registryFile.length() > 0 ) {
                         // the file has some content
-                        ObjectInputStream ois = new ObjectInputStream( new FileInputStream( registryFile ) );
-                        registryMap = ( Map ) ois.readObject();
+                        final Map registryMap = readRegistry( registryFile );
 
                         if ( registryMap != null ) {
                             if ( registryMap.containsKey( url ) ) {
@@ -229,9 +433,20 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
 
                                 if ( ontologyFile.exists() && ontologyFile.canRead() ) {
 
-                                    // Cool, find it ! use it instead of the provided URL
-                                    if ( log.isInfoEnabled() )
+                                    // Cool, find it ! use it instead of the provided URL, unless it is known to have changed
+                                    remoteVersion = RemoteOntologyVersion.load( ontologyFile );
+                                    if ( isOutdated( url, ontologyFile, remoteVersion ) ) {
+                                        if ( log.isInfoEnabled() )
+                                            log.info( "Discarding outdated cache: " + ontologyFile.getAbsolutePath() );
+                                        if ( !ontologyFile.delete() ) {
+                                            log.warn( "Could not delete " + ontologyFile.getAbsolutePath() );
+                                        }
+                                        RemoteOntologyVersion.delete( ontologyFile );
+                                        ontologyFile = null;
+                                        remoteVersion = null;
+                                    } else if ( log.isInfoEnabled() ) {
                                         log.info( "Reuse existing cache: " + ontologyFile.getAbsolutePath() );
+                                    }
 
                                 } else {
 
@@ -239,15 +454,8 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
                                         log.info( "Could not find " + ontologyFile.getAbsolutePath() );
 
                                     // cleanup map
-                                    registryMap.remove( url );
-
-                                    // save map
                                     log.info( "Saving registry file..." );
-                                    File f = getRegistryFile();
-                                    ObjectOutputStream oos = new ObjectOutputStream( new FileOutputStream( f ) );
-                                    oos.writeObject( registryMap );
-                                    oos.flush();
-                                    oos.close();
+                                    updateRegistry( url, null );
                                 }
                             }
                         } else {
@@ -276,11 +484,12 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
                 if ( log.isInfoEnabled() ) log.info( "Loading URL: " + url );
 
                 URLConnection con = url.openConnection();
+                InputStream is = con.getInputStream();
                 int size = con.getContentLength();        // -1 if not stat available
 
                 if ( log.isInfoEnabled() ) log.info( "size = " + size );
 
-                InputStream is = url.openStream();
+                remoteVersion = RemoteOntologyVersion.fromConnection( con );
 
                 // Create a temp file and write URL content in it.
                 if ( !ontologyDirectory.exists() ) {
@@ -332,20 +541,13 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
                 out.close();
 
                 if ( isKeepDownloadedOntologiesOnDisk ) {
-                    // if the user has requested for the ontology file to be kept, store file reference in the registry
-                    if ( registryMap == null ) {
-                        registryMap = new HashMap();
+                    if ( remoteVersion.hasValidators() ) {
+                        remoteVersion.store( ontologyFile );
                     }
 
-                    registryMap.put( url, ontologyFile.getAbsolutePath() );
-
-                    // serialize the map
+                    // if the user has requested for the ontology file to be kept, store file reference in the registry
                     if ( log.isInfoEnabled() ) log.info( "Serializing Map" );
-                    File f = getRegistryFile();
-                    ObjectOutputStream oos = new ObjectOutputStream( new FileOutputStream( f ) );
-                    oos.writeObject( registryMap );
-                    oos.flush();
-                    oos.close();
+                    updateRegistry( url, ontologyFile.getAbsolutePath() );
                 }
             }
 
@@ -360,4 +562,30 @@ public abstract class AbstractOboLoader<T extends OntologyTermI, O extends Ontol
             throw new OntologyLoaderException( "Error while loading URL (" + url + ")", e );
         }
     }
+
+    /**
+     * @param url          where the ontology is downloaded from.
+     * @param ontologyFile the ontology stored the last time it was downloaded.
+     * @param version      the version of the stored ontology, may be null.
+     * @return true if the server tells that the ontology changed since it was stored, false if it did not change, or if
+     *         that cannot be told, in which case the stored ontology is used as before.
+     */
+    private boolean isOutdated( URL url, File ontologyFile, RemoteOntologyVersion version ) {
+        if ( version == null || !version.hasValidators() ) {
+            return false;
+        }
+        try {
+            return !version.isUpToDate( url );
+        } catch ( IOException e ) {
+            log.warn( "Could not check whether " + url + " changed, using the stored " + ontologyFile.getAbsolutePath(), e );
+            return false;
+        }
+    }
+
+    /**
+     * @return the version of the last ontology loaded from an URL, as given by the server, or null if it is not known.
+     */
+    public RemoteOntologyVersion getRemoteVersion() {
+        return remoteVersion;
+    }
 }
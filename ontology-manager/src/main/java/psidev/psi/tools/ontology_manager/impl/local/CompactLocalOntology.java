@@ -0,0 +1,19 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import java.io.File;
+
+/**
+ * Access to a local ontology in the form of an OBO file, its hierarchy being kept in arrays of integers. This uses
+ * much less memory than LocalOntology for large ontologies.
+ *
+ * @version $Id$
+ * @see CompactOntologyTemplate
+ * @since 2.0.0
+ */
+public class CompactLocalOntology extends LocalOntology {
+
+    @Override
+    protected OboLoader createNewOBOLoader( File ontologyDirectory ) throws OntologyLoaderException {
+        return new CompactOboLoader( ontologyDirectory );
+    }
+}
@@ -0,0 +1,21 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import java.io.File;
+
+/**
+ * OboLoader building a CompactOntology.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class CompactOboLoader extends OboLoader {
+
+    public CompactOboLoader( File ontologyDirectory ) {
+        super( ontologyDirectory );
+    }
+
+    @Override
+    protected Ontology createNewOntology() {
+        return new CompactOntology();
+    }
+}
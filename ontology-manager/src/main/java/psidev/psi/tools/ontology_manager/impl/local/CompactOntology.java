@@ -0,0 +1,13 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+/**
+ * Ontology of OntologyTermI keeping its hierarchy in arrays of integers.
+ *
+ * @version $Id$
+ * @see CompactOntologyTemplate
+ * @since 2.0.0
+ */
+public class CompactOntology extends CompactOntologyTemplate<OntologyTermI> implements Ontology {
+}
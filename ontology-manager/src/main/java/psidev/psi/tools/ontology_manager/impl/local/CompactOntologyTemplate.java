@@ -0,0 +1,277 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Implementation of OntologyTemplate keeping the hierarchy in arrays of integers rather than in maps of sets.
+ * <p/>
+ * Each accession is given a dense integer id when its term is added. Links are buffered as pairs of ids while the
+ * ontology is loaded and are then turned, once and for all, into an OntologyClosureIndex in which both the children
+ * and the parents are stored as offsets and targets arrays. The sets of terms given by this class are views on these
+ * arrays, terms are only looked up when the sets are iterated.
+ * <p/>
+ * Only the hierarchy is compact: the term objects given to addTerm are kept as they are, one per accession, so the
+ * memory saved is the one of the sets of parents and children, not the one of the terms themselves.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public abstract class CompactOntologyTemplate<T extends OntologyTermI> implements OntologyTemplate<T> {
+
+    public static final Log log = LogFactory.getLog( CompactOntologyTemplate.class );
+
+    ///////////////////////////////
+    // Instance variables
+
+    /**
+     * Term for a given id.
+     */
+    private final List<T> terms = new ArrayList<T>( 1024 );
+
+    /**
+     * Id for a given accession.
+     */
+    private final Map<String, Integer> accession2id = new HashMap<String, Integer>( 2048 );
+
+    private final BitSet obsoleteIds = new BitSet();
+
+    /**
+     * Links added since the index was last built, as a sequence of parent id, child id pairs.
+     */
+    private int[] links = new int[1024];
+    private int linkCount = 0;
+
+    private volatile OntologyClosureIndex<T> index = null;
+
+    private volatile boolean frozen = false;
+
+    private final ToIntFunction<Object> idOf = new ToIntFunction<Object>() {
+        public int applyAsInt( Object o ) {
+            if ( !( o instanceof OntologyTermI ) ) {
+                return -1;
+            }
+            final Integer id = accession2id.get( ( ( OntologyTermI ) o ).getTermAccession() );
+            return id != null && terms.get( id ).equals( o ) ? id : -1;
+        }
+    };
+
+    ///////////////////////////
+    // Loading
+
+    public void addTerm( T term ) {
+        checkNotFrozen();
+        final String accession = term.getTermAccession();
+        final Integer id = accession2id.get( accession );
+        if ( id != null ) {
+            final T old = terms.get( id );
+            if ( log.isWarnEnabled() ) {
+                log.warn( "2 Objects have the same ID (" + accession + "), the old one is being replaced. old: "
+                          + old.getPreferredName() + " new: " + term.getPreferredName() );
+            }
+            terms.set( id, term );
+        } else {
+            accession2id.put( accession, terms.size() );
+            terms.add( term );
+        }
+        invalidateIndex();
+    }
+
+    public void addObsoleteTerm( T term ) {
+        if ( term == null ) {
+            throw new IllegalArgumentException( "You must give a non null term" );
+        }
+        checkNotFrozen();
+        final Integer id = accession2id.get( term.getTermAccession() );
+        if ( id == null ) {
+            throw new IllegalArgumentException( "The obsolete term " + term.getTermAccession() + " has to be added first" );
+        }
+        obsoleteIds.set( id );
+    }
+
+    /**
+     * Create a relationship parent to child between two terms.
+     *
+     * @param parentId The parent term.
+     * @param childId  The child term.
+     */
+    public void addLink( String parentId, String childId ) {
+        checkNotFrozen();
+        final Integer child = accession2id.get( childId );
+        final Integer parent = accession2id.get( parentId );
+
+        if ( child == null ) {
+            throw new NullPointerException( "You must give a non null child" );
+        }
+
+        if ( parent == null ) {
+            throw new NullPointerException( "You must give a non null parent" );
+        }
+
+        invalidateIndex();
+        if ( linkCount + 2 > links.length ) {
+            links = Arrays.copyOf( links, Math.max( 1024, links.length * 2 ) );
+        }
+        links[linkCount++] = parent;
+        links[linkCount++] = child;
+    }
+
+    /**
+     * Takes the terms and links of the builder as they are, the index being built from its buffer of links.
+     */
+    @Override
+    public synchronized void load( OntologyBuilder<T> builder ) {
+        checkNotFrozen();
+        if ( !terms.isEmpty() ) {
+            OntologyTemplate.super.load( builder );
+            return;
+        }
+        terms.addAll( builder.getTerms() );
+        accession2id.putAll( builder.getAccessionIds() );
+        obsoleteIds.or( builder.getObsoleteIds() );
+        index = builder.createIndex( Collections.unmodifiableList( terms ), idOf );
+        links = new int[0];
+        linkCount = 0;
+    }
+
+    /**
+     * Turns the links loaded so far into the index, the buffer of links is released.
+     */
+    public void buildIndex() {
+        getIndex();
+    }
+
+    /**
+     * Builds the index, which is never dropped afterwards since the ontology cannot be modified anymore.
+     */
+    public void freeze() {
+        getIndex();
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if ( frozen ) {
+            throw new UnsupportedOperationException( "A frozen ontology cannot be modified" );
+        }
+    }
+
+    /**
+     * Drops the index after a change of the ontology, its links are brought back in the buffer.
+     */
+    private void invalidateIndex() {
+        final OntologyClosureIndex<T> current = index;
+        if ( current != null ) {
+            links = current.getLinks();
+            linkCount = links.length;
+            index = null;
+        }
+    }
+
+    private OntologyClosureIndex<T> getIndex() {
+        OntologyClosureIndex<T> current = index;
+        if ( current == null ) {
+            synchronized ( this ) {
+                current = index;
+                if ( current == null ) {
+                    current = createIndex();
+                    index = current;
+                    links = new int[0];
+                    linkCount = 0;
+                }
+            }
+        }
+        return current;
+    }
+
+    private OntologyClosureIndex<T> createIndex() {
+        final OntologyClosureIndex<T> index =
+                OntologyClosureIndex.fromLinks( Collections.unmodifiableList( terms ), idOf, links, linkCount );
+        if ( log.isDebugEnabled() ) {
+            log.debug( "Indexed " + index.size() + " terms and " + index.getLinkCount() + " links" );
+        }
+        return index;
+    }
+
+    ///////////////////////////
+    // Queries
+
+    public boolean hasTerms() {
+        return !terms.isEmpty();
+    }
+
+    public T search( String id ) {
+        final Integer i = accession2id.get( id );
+        return i == null ? null : terms.get( i );
+    }
+
+    public Collection<T> getRoots() {
+        return getIndex().getRoots();
+    }
+
+    @Override
+    public Collection<T> getLeaves() {
+        return getIndex().getLeaves();
+    }
+
+    public Collection<T> getOntologyTerms() {
+        return Collections.unmodifiableCollection( terms );
+    }
+
+    public Collection<T> getObsoleteTerms() {
+        List<T> obsoleteTerms = new ArrayList<T>( obsoleteIds.cardinality() );
+        for ( int i = obsoleteIds.nextSetBit( 0 ); i >= 0; i = obsoleteIds.nextSetBit( i + 1 ) ) {
+            obsoleteTerms.add( terms.get( i ) );
+        }
+        return Collections.unmodifiableCollection( obsoleteTerms );
+    }
+
+    public boolean isObsoleteTerm( T term ) {
+        final int id = idOf.applyAsInt( term );
+        return id >= 0 && obsoleteIds.get( id );
+    }
+
+    @Override
+    public Set<T> filterObsoleteTerms( Collection<T> terms ) {
+        final Set<T> filtered = new LinkedHashSet<T>( terms.size() * 4 / 3 + 1 );
+        final boolean anyObsolete = !obsoleteIds.isEmpty();
+        for ( T term : terms ) {
+            if ( !anyObsolete || !isObsoleteTerm( term ) ) {
+                filtered.add( term );
+            }
+        }
+        return filtered;
+    }
+
+    public Set<T> getDirectParents( T term ) {
+        return getIndex().getParents( term );
+    }
+
+    public Set<T> getDirectChildren( T term ) {
+        return getIndex().getChildren( term );
+    }
+
+    public Set<T> getAllParents( T term ) {
+        return getIndex().getAncestors( term );
+    }
+
+    public Set<T> getAllChildren( T term ) {
+        return getIndex().getDescendants( term );
+    }
+
+    @Override
+    public boolean isDescendantOf( T child, T ancestor ) {
+        return getIndex().isDescendantOf( child, ancestor );
+    }
+
+    public int getDepth( T term ) {
+        return getIndex().getDepth( term );
+    }
+}
@@ -0,0 +1,19 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import java.io.File;
+
+/**
+ * Access to a local ontology in the form of an OBO file, the ontology being kept in a memory-mapped file rather than on
+ * the heap. Meant for very large ontologies, it can be selected with the 'mapped' keyword.
+ *
+ * @version $Id$
+ * @see MappedOntology
+ * @since 2.0.0
+ */
+public class MappedLocalOntology extends LocalOntology {
+
+    @Override
+    protected OboLoader createNewOBOLoader( File ontologyDirectory ) throws OntologyLoaderException {
+        return new MappedOboLoader( ontologyDirectory );
+    }
+}
@@ -0,0 +1,96 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * OboLoader giving a MappedOntology.
+ * <p/>
+ * The OBO file is parsed once into a CompactOntology, which is then written in the ontology directory under the MD5
+ * signature of the OBO file. Later loads of the same file, in this process or in another one, map that file directly.
+ * <p/>
+ * When the OntologyManagerContext is not configured to store ontologies locally, the ontology is written to a temporary
+ * file instead, which is deleted as soon as it is mapped, or when the JVM exits if the system does not allow deleting
+ * a mapped file.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class MappedOboLoader extends OboLoader {
+
+    private static final String SUFFIX = ".mapped-ontology";
+
+    public MappedOboLoader( File ontologyDirectory ) {
+        super( ontologyDirectory );
+    }
+
+    @Override
+    protected Ontology createNewOntology() {
+        // the parsed ontology is only kept until the mapped file is written
+        return new CompactOntology();
+    }
+
+    @Override
+    protected boolean isSnapshotSupported() {
+        // the mapped file already plays that role
+        return false;
+    }
+
+    @Override
+    public Ontology parseOboFile( File file ) {
+        final OntologyManagerContext context = OntologyManagerContext.getInstance();
+        if ( !context.isStoreOntologiesLocally() ) {
+            return parseOboFileToTemporaryFile( file );
+        }
+
+        final File directory = context.getOntologyDirectory();
+        if ( directory == null || !directory.isDirectory() || !directory.canWrite() ) {
+            log.warn( "No writable ontology directory, " + file.getName() + " is loaded on the heap" );
+            return super.parseOboFile( file );
+        }
+
+        final File mappedFile;
+        try {
+            mappedFile = new File( directory, OntologySnapshot.computeMD5Signature( file ) + SUFFIX );
+        } catch ( IOException e ) {
+            throw new IllegalArgumentException( file.getAbsolutePath() + " could not be read.", e );
+        }
+
+        if ( mappedFile.exists() ) {
+            try {
+                return new MappedOntology( mappedFile );
+            } catch ( IOException e ) {
+                log.warn( "Could not map " + mappedFile.getAbsolutePath() + ", it is written again", e );
+            }
+        }
+
+        final Ontology ontology = super.parseOboFile( file );
+        try {
+            MappedOntology.write( ontology, mappedFile );
+            return new MappedOntology( mappedFile );
+        } catch ( IOException e ) {
+            log.warn( "Could not write " + mappedFile.getAbsolutePath() + ", " + file.getName() + " is loaded on the heap", e );
+            return ontology;
+        }
+    }
+
+    private Ontology parseOboFileToTemporaryFile( File file ) {
+        final Ontology ontology = super.parseOboFile( file );
+
+        File mappedFile = null;
+        try {
+            mappedFile = File.createTempFile( "ontology", SUFFIX );
+            MappedOntology.write( ontology, mappedFile );
+            return new MappedOntology( mappedFile );
+        } catch ( IOException e ) {
+            log.warn( "Could not write a temporary mapped file, " + file.getName() + " is loaded on the heap", e );
+            return ontology;
+        } finally {
+            if ( mappedFile != null && !mappedFile.delete() ) {
+                mappedFile.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,620 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.impl.OntologyTermImpl;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only ontology stored in a memory-mapped file, so that very large ontologies do not have to be held on the heap.
+ * <p/>
+ * The file holds the terms sorted by accession, the id of a term being its rank, which makes the accession index a
+ * binary search. For each term it keeps the position of its accession, name and synonyms in a block of UTF-8 strings,
+ * its depth and its obsolete flag. The children and the parents are stored as offsets and targets arrays. Terms are
+ * only created when they are returned, sets of terms are views that create them while being iterated.
+ * <p/>
+ * The file is mapped read-only, so that the processes using the same file share its pages. A file cannot be larger
+ * than 2GB.
+ *
+ * @version $Id$
+ * @see MappedOboLoader
+ * @since 2.0.0
+ */
+public class MappedOntology implements Ontology {
+
+    public static final Log log = LogFactory.getLog( MappedOntology.class );
+
+    private static final int MAGIC = 0x4f424f4d; // "OBOM"
+
+    /**
+     * To be incremented whenever the layout of the file changes.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_INTS = 6;
+
+    private static final int RECORD_INTS = 8;
+    private static final int ACCESSION_OFFSET = 0;
+    private static final int ACCESSION_LENGTH = 1;
+    private static final int NAME_OFFSET = 2;
+    private static final int NAME_LENGTH = 3;
+    private static final int FIRST_SYNONYM = 4;
+    private static final int SYNONYM_COUNT = 5;
+    private static final int DEPTH = 6;
+    private static final int FLAGS = 7;
+
+    private static final int OBSOLETE_FLAG = 1;
+
+    private final File file;
+
+    private final int termCount;
+
+    private final IntBuffer records;
+    private final IntBuffer synonyms;
+    private final IntBuffer childOffsets;
+    private final IntBuffer childIds;
+    private final IntBuffer parentOffsets;
+    private final IntBuffer parentIds;
+
+    /**
+     * Block of UTF-8 strings, only read with absolute methods so that it can be shared by several threads.
+     */
+    private final ByteBuffer strings;
+
+    private volatile List<OntologyTermI> roots;
+
+    /**
+     * Maps the given file.
+     *
+     * @param file a file written by write( OntologyTemplate, File ).
+     * @throws IOException if the file cannot be read or is not a valid ontology file.
+     */
+    public MappedOntology( File file ) throws IOException {
+        this.file = file;
+
+        final ByteBuffer buffer;
+        final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+        try {
+            if ( channel.size() > Integer.MAX_VALUE ) {
+                throw new IOException( "Ontology file larger than 2GB: " + file.getAbsolutePath() );
+            }
+            buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        } finally {
+            // the mapping stays valid once the channel is closed
+            channel.close();
+        }
+
+        if ( buffer.capacity() < HEADER_INTS * 4 || buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != FORMAT_VERSION ) {
+            throw new IOException( "Not a valid ontology file: " + file.getAbsolutePath() );
+        }
+        termCount = buffer.getInt( 8 );
+        final int linkCount = buffer.getInt( 12 );
+        final int synonymCount = buffer.getInt( 16 );
+        final int stringsLength = buffer.getInt( 20 );
+
+        final long expectedLength = 4L * ( HEADER_INTS + ( long ) termCount * RECORD_INTS + 2L * synonymCount
+                                           + 2L * ( termCount + 1 ) + 2L * linkCount ) + stringsLength;
+        if ( termCount < 0 || linkCount < 0 || synonymCount < 0 || stringsLength < 0 || expectedLength != buffer.capacity() ) {
+            throw new IOException( "Truncated or corrupted ontology file: " + file.getAbsolutePath() );
+        }
+
+        int position = HEADER_INTS * 4;
+        records = slice( buffer, position, termCount * RECORD_INTS );
+        position += termCount * RECORD_INTS * 4;
+        synonyms = slice( buffer, position, synonymCount * 2 );
+        position += synonymCount * 2 * 4;
+        childOffsets = slice( buffer, position, termCount + 1 );
+        position += ( termCount + 1 ) * 4;
+        childIds = slice( buffer, position, linkCount );
+        position += linkCount * 4;
+        parentOffsets = slice( buffer, position, termCount + 1 );
+        position += ( termCount + 1 ) * 4;
+        parentIds = slice( buffer, position, linkCount );
+        position += linkCount * 4;
+
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position( position );
+        strings = duplicate.slice();
+
+        if ( log.isInfoEnabled() ) {
+            log.info( "Mapped " + termCount + " terms and " + linkCount + " links from " + file.getAbsolutePath() );
+        }
+    }
+
+    private static IntBuffer slice( ByteBuffer buffer, int position, int ints ) {
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position( position );
+        duplicate.limit( position + ints * 4 );
+        return duplicate.slice().asIntBuffer();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    ////////////////////////////
+    // Writing
+
+    /**
+     * Writes the given ontology in a file that can then be mapped. The file is replaced atomically.
+     *
+     * @param ontology the ontology to store.
+     * @param file     the file to write.
+     * @throws IOException if the file could not be written.
+     */
+    public static <T extends OntologyTermI> void write( OntologyTemplate<T> ontology, File file ) throws IOException {
+
+        // terms sorted by accession, the id of a term being its rank
+        final Map<String, T> accession2term = new HashMap<String, T>();
+        for ( T term : ontology.getOntologyTerms() ) {
+            final String accession = term.getTermAccession();
+            if ( !accession2term.containsKey( accession ) ) {
+                accession2term.put( accession, ontology.search( accession ) );
+            }
+        }
+        final byte[][] accessions = new byte[accession2term.size()][];
+        int n = 0;
+        for ( String accession : accession2term.keySet() ) {
+            accessions[n++] = accession.getBytes( StandardCharsets.UTF_8 );
+        }
+        Arrays.sort( accessions, new Comparator<byte[]>() {
+            public int compare( byte[] a, byte[] b ) {
+                return Arrays.compareUnsigned( a, b );
+            }
+        } );
+        final List<T> terms = new ArrayList<T>( n );
+        final Map<String, Integer> accession2id = new HashMap<String, Integer>( n * 2 );
+        for ( int i = 0; i < n; i++ ) {
+            final String accession = new String( accessions[i], StandardCharsets.UTF_8 );
+            accession2id.put( accession, i );
+            terms.add( accession2term.get( accession ) );
+        }
+
+        final ByteArrayOutputStream stringBlock = new ByteArrayOutputStream( n * 64 );
+        final int[] records = new int[n * RECORD_INTS];
+        final List<int[]> synonymRanges = new ArrayList<int[]>();
+        final int[] childOffsets = new int[n + 1];
+        int[] childIds = new int[Math.max( 16, n )];
+        int linkCount = 0;
+        final int[] parentCounts = new int[n + 1];
+
+        for ( int i = 0; i < n; i++ ) {
+            final T term = terms.get( i );
+            final int r = i * RECORD_INTS;
+            records[r + ACCESSION_OFFSET] = stringBlock.size();
+            records[r + ACCESSION_LENGTH] = accessions[i].length;
+            stringBlock.write( accessions[i] );
+
+            final String name = term.getPreferredName();
+            if ( name == null ) {
+                records[r + NAME_OFFSET] = -1;
+            } else {
+                final byte[] bytes = name.getBytes( StandardCharsets.UTF_8 );
+                records[r + NAME_OFFSET] = stringBlock.size();
+                records[r + NAME_LENGTH] = bytes.length;
+                stringBlock.write( bytes );
+            }
+
+            records[r + FIRST_SYNONYM] = synonymRanges.size();
+            final Collection<String> termSynonyms = term.getNameSynonyms();
+            if ( termSynonyms != null ) {
+                for ( String synonym : termSynonyms ) {
+                    final byte[] bytes = synonym.getBytes( StandardCharsets.UTF_8 );
+                    synonymRanges.add( new int[]{stringBlock.size(), bytes.length} );
+                    stringBlock.write( bytes );
+                }
+            }
+            records[r + SYNONYM_COUNT] = synonymRanges.size() - records[r + FIRST_SYNONYM];
+            records[r + DEPTH] = ontology.getDepth( term );
+            records[r + FLAGS] = ontology.isObsoleteTerm( term ) ? OBSOLETE_FLAG : 0;
+
+            childOffsets[i] = linkCount;
+            final int[] children = toSortedIds( ontology.getDirectChildren( term ), accession2id );
+            if ( linkCount + children.length > childIds.length ) {
+                childIds = Arrays.copyOf( childIds, Math.max( childIds.length * 2, linkCount + children.length ) );
+            }
+            for ( int child : children ) {
+                childIds[linkCount++] = child;
+                parentCounts[child + 1]++;
+            }
+        }
+        childOffsets[n] = linkCount;
+
+        // parents, grouped by child
+        for ( int i = 0; i < n; i++ ) {
+            parentCounts[i + 1] += parentCounts[i];
+        }
+        final int[] parentIds = new int[linkCount];
+        final int[] positions = Arrays.copyOf( parentCounts, n );
+        for ( int i = 0; i < n; i++ ) {
+            for ( int c = childOffsets[i]; c < childOffsets[i + 1]; c++ ) {
+                parentIds[positions[childIds[c]]++] = i;
+            }
+        }
+
+        final File tmp = File.createTempFile( file.getName(), ".tmp", file.getAbsoluteFile().getParentFile() );
+        try {
+            final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ), 65536 ) );
+            try {
+                out.writeInt( MAGIC );
+                out.writeInt( FORMAT_VERSION );
+                out.writeInt( n );
+                out.writeInt( linkCount );
+                out.writeInt( synonymRanges.size() );
+                out.writeInt( stringBlock.size() );
+                for ( int value : records ) {
+                    out.writeInt( value );
+                }
+                for ( int[] range : synonymRanges ) {
+                    out.writeInt( range[0] );
+                    out.writeInt( range[1] );
+                }
+                for ( int value : childOffsets ) {
+                    out.writeInt( value );
+                }
+                for ( int c = 0; c < linkCount; c++ ) {
+                    out.writeInt( childIds[c] );
+                }
+                for ( int value : parentCounts ) {
+                    out.writeInt( value );
+                }
+                for ( int value : parentIds ) {
+                    out.writeInt( value );
+                }
+                stringBlock.writeTo( out );
+            } finally {
+                out.close();
+            }
+            Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static <T extends OntologyTermI> int[] toSortedIds( Set<T> terms, Map<String, Integer> accession2id ) {
+        final int[] ids = new int[terms.size()];
+        int i = 0;
+        for ( T term : terms ) {
+            ids[i++] = accession2id.get( term.getTermAccession() );
+        }
+        Arrays.sort( ids );
+        return ids;
+    }
+
+    ////////////////////////////
+    // Ids and terms
+
+    /**
+     * Binary search of the accession among the sorted accessions.
+     *
+     * @return the id of the term with that accession, -1 if there is none.
+     */
+    private int idOf( String accession ) {
+        if ( accession == null ) {
+            return -1;
+        }
+        final byte[] key = accession.getBytes( StandardCharsets.UTF_8 );
+        int low = 0;
+        int high = termCount - 1;
+        while ( low <= high ) {
+            final int middle = ( low + high ) >>> 1;
+            final int comparison = compareAccession( middle, key );
+            if ( comparison < 0 ) {
+                low = middle + 1;
+            } else if ( comparison > 0 ) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int idOf( Object term ) {
+        return term instanceof OntologyTermI ? idOf( ( ( OntologyTermI ) term ).getTermAccession() ) : -1;
+    }
+
+    private int compareAccession( int id, byte[] key ) {
+        final int offset = records.get( id * RECORD_INTS + ACCESSION_OFFSET );
+        final int length = records.get( id * RECORD_INTS + ACCESSION_LENGTH );
+        final int common = Math.min( length, key.length );
+        for ( int i = 0; i < common; i++ ) {
+            final int difference = ( strings.get( offset + i ) & 0xff ) - ( key[i] & 0xff );
+            if ( difference != 0 ) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String readString( int offset, int length ) {
+        if ( offset < 0 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        final ByteBuffer duplicate = strings.duplicate();
+        duplicate.position( offset );
+        duplicate.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private OntologyTermI getTerm( int id ) {
+        final int r = id * RECORD_INTS;
+        final OntologyTermI term = new OntologyTermImpl( readString( records.get( r + ACCESSION_OFFSET ), records.get( r + ACCESSION_LENGTH ) ),
+                                                         readString( records.get( r + NAME_OFFSET ), records.get( r + NAME_LENGTH ) ) );
+        final int firstSynonym = records.get( r + FIRST_SYNONYM );
+        final int synonymCount = records.get( r + SYNONYM_COUNT );
+        for ( int s = firstSynonym; s < firstSynonym + synonymCount; s++ ) {
+            term.getNameSynonyms().add( readString( synonyms.get( s * 2 ), synonyms.get( s * 2 + 1 ) ) );
+        }
+        return term;
+    }
+
+    private boolean isObsolete( int id ) {
+        return ( records.get( id * RECORD_INTS + FLAGS ) & OBSOLETE_FLAG ) != 0;
+    }
+
+    ////////////////////////////
+    // Ontology
+
+    public boolean hasTerms() {
+        return termCount > 0;
+    }
+
+    public OntologyTermI search( String id ) {
+        final int i = idOf( id );
+        return i < 0 ? null : getTerm( i );
+    }
+
+    public Collection<OntologyTermI> getRoots() {
+        if ( roots == null ) {
+            List<OntologyTermI> list = new ArrayList<OntologyTermI>();
+            for ( int i = 0; i < termCount; i++ ) {
+                if ( parentOffsets.get( i ) == parentOffsets.get( i + 1 ) ) {
+                    list.add( getTerm( i ) );
+                }
+            }
+            roots = Collections.unmodifiableList( list );
+        }
+        return roots;
+    }
+
+    public Collection<OntologyTermI> getOntologyTerms() {
+        return new AbstractList<OntologyTermI>() {
+            @Override
+            public OntologyTermI get( int index ) {
+                if ( index < 0 || index >= termCount ) {
+                    throw new IndexOutOfBoundsException( "Index: " + index + ", size: " + termCount );
+                }
+                return getTerm( index );
+            }
+
+            @Override
+            public int size() {
+                return termCount;
+            }
+        };
+    }
+
+    public Collection<OntologyTermI> getObsoleteTerms() {
+        final BitSet obsolete = new BitSet( termCount );
+        for ( int i = 0; i < termCount; i++ ) {
+            if ( isObsolete( i ) ) {
+                obsolete.set( i );
+            }
+        }
+        return new BitSetTermSet( obsolete );
+    }
+
+    public boolean isObsoleteTerm( OntologyTermI term ) {
+        final int id = idOf( term );
+        return id >= 0 && isObsolete( id );
+    }
+
+    public Set<OntologyTermI> getDirectParents( OntologyTermI term ) {
+        final int id = idOf( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        return new IdRangeSet( parentIds, parentOffsets.get( id ), parentOffsets.get( id + 1 ) );
+    }
+
+    public Set<OntologyTermI> getDirectChildren( OntologyTermI term ) {
+        final int id = idOf( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        return new IdRangeSet( childIds, childOffsets.get( id ), childOffsets.get( id + 1 ) );
+    }
+
+    public Set<OntologyTermI> getAllParents( OntologyTermI term ) {
+        final int id = idOf( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        return new BitSetTermSet( traverse( id, parentOffsets, parentIds, -1 ) );
+    }
+
+    public Set<OntologyTermI> getAllChildren( OntologyTermI term ) {
+        final int id = idOf( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        return new BitSetTermSet( traverse( id, childOffsets, childIds, -1 ) );
+    }
+
+    /**
+     * Walks up from the child, as terms usually have much fewer ancestors than descendants.
+     */
+    @Override
+    public boolean isDescendantOf( OntologyTermI child, OntologyTermI ancestor ) {
+        final int childId = idOf( child );
+        final int ancestorId = idOf( ancestor );
+        if ( childId < 0 || ancestorId < 0 ) {
+            return false;
+        }
+        return traverse( childId, parentOffsets, parentIds, ancestorId ).get( ancestorId );
+    }
+
+    public int getDepth( OntologyTermI term ) {
+        final int id = idOf( term );
+        return id < 0 ? -1 : records.get( id * RECORD_INTS + DEPTH );
+    }
+
+    /**
+     * Depth first traversal of the links starting from the given term.
+     *
+     * @param target the traversal stops as soon as that term is reached, -1 to visit all the terms.
+     * @return the terms visited.
+     */
+    private BitSet traverse( int id, IntBuffer offsets, IntBuffer links, int target ) {
+        final BitSet visited = new BitSet();
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = id;
+        while ( top > 0 ) {
+            final int current = stack[--top];
+            for ( int c = offsets.get( current ); c < offsets.get( current + 1 ); c++ ) {
+                final int next = links.get( c );
+                if ( !visited.get( next ) ) {
+                    visited.set( next );
+                    if ( next == target ) {
+                        return visited;
+                    }
+                    if ( top == stack.length ) {
+                        stack = Arrays.copyOf( stack, stack.length * 2 );
+                    }
+                    stack[top++] = next;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * A mapped ontology is read-only from the start.
+     */
+    @Override
+    public boolean isFrozen() {
+        return true;
+    }
+
+    public void addTerm( OntologyTermI term ) {
+        throw new UnsupportedOperationException( "A mapped ontology cannot be modified" );
+    }
+
+    public void addObsoleteTerm( OntologyTermI term ) {
+        throw new UnsupportedOperationException( "A mapped ontology cannot be modified" );
+    }
+
+    public void addLink( String parentId, String childId ) {
+        throw new UnsupportedOperationException( "A mapped ontology cannot be modified" );
+    }
+
+    /**
+     * Unmodifiable set of the terms whose ids are set in a bit set.
+     */
+    private class BitSetTermSet extends AbstractSet<OntologyTermI> {
+
+        private final BitSet bits;
+        private final int size;
+
+        private BitSetTermSet( BitSet bits ) {
+            this.bits = bits;
+            this.size = bits.cardinality();
+        }
+
+        @Override
+        public boolean contains( Object o ) {
+            final int id = idOf( o );
+            return id >= 0 && bits.get( id );
+        }
+
+        @Override
+        public Iterator<OntologyTermI> iterator() {
+            return new Iterator<OntologyTermI>() {
+                private int next = bits.nextSetBit( 0 );
+
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                public OntologyTermI next() {
+                    if ( next < 0 ) {
+                        throw new NoSuchElementException();
+                    }
+                    final OntologyTermI term = getTerm( next );
+                    next = bits.nextSetBit( next + 1 );
+                    return term;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Unmodifiable set of the terms whose ids are stored, sorted, in a range of the mapped file.
+     */
+    private class IdRangeSet extends AbstractSet<OntologyTermI> {
+
+        private final IntBuffer ids;
+        private final int from;
+        private final int to;
+
+        private IdRangeSet( IntBuffer ids, int from, int to ) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean contains( Object o ) {
+            final int id = idOf( o );
+            if ( id >= 0 ) {
+                for ( int i = from; i < to; i++ ) {
+                    if ( ids.get( i ) == id ) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<OntologyTermI> iterator() {
+            return new Iterator<OntologyTermI>() {
+                private int position = from;
+
+                public boolean hasNext() {
+                    return position < to;
+                }
+
+                public OntologyTermI next() {
+                    if ( position >= to ) {
+                        throw new NoSuchElementException();
+                    }
+                    return getTerm( ids.get( position++ ) );
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
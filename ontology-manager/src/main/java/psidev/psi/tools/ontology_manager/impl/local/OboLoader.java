@@ -66,4 +66,19 @@ public class OboLoader extends AbstractOboLoader<OntologyTermI, Ontology> {
     protected OntologyTermI createNewOntologyTerm(Term t) {
         return new OntologyTermImpl(t.getIdentifier(), t.getName());
     }
+
+    @Override
+    protected OntologyTermI createNewOntologyTerm( String accession, String name ) {
+        return new OntologyTermImpl( accession, name );
+    }
+
+    @Override
+    protected boolean isSnapshotSupported() {
+        return true;
+    }
+
+    @Override
+    protected boolean isStreamingParserEnabled() {
+        return true;
+    }
 }
\ No newline at end of file
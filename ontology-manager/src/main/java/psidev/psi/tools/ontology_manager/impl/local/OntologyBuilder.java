@@ -0,0 +1,194 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Gathers the terms and links of an ontology being loaded, so that the ontology can then be built in one go.
+ * <p/>
+ * Terms are given a dense id in the order they are added, a term replacing another one with the same accession keeps
+ * its id. Obsolete terms are kept in a BitSet and links in a buffer of parent id, child id pairs, the duplicated links
+ * being dropped once, when the ontology is built. Implementations of OntologyTemplate can then fill their own
+ * structures and index from these, rather than term by term and link by link.
+ * <p/>
+ * A builder is used for a single ontology and cannot be modified once the ontology is built.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OntologyBuilder<T extends OntologyTermI> {
+
+    public static final Log log = LogFactory.getLog( OntologyBuilder.class );
+
+    private final List<T> terms;
+
+    private final Map<String, Integer> accession2id;
+
+    private final BitSet obsoleteIds = new BitSet();
+
+    /**
+     * Links as a sequence of parent id, child id pairs.
+     */
+    private int[] links;
+    private int linkCount = 0;
+
+    private boolean built = false;
+
+    public OntologyBuilder() {
+        this( 1024 );
+    }
+
+    /**
+     * @param expectedTerms the number of terms expected, used to size the buffers.
+     */
+    public OntologyBuilder( int expectedTerms ) {
+        terms = new ArrayList<T>( expectedTerms );
+        accession2id = new HashMap<String, Integer>( expectedTerms * 4 / 3 + 1 );
+        links = new int[Math.max( 16, expectedTerms * 4 )];
+    }
+
+    ///////////////////////////
+    // Loading
+
+    public void addTerm( T term ) {
+        checkNotBuilt();
+        final String accession = term.getTermAccession();
+        final Integer id = accession2id.putIfAbsent( accession, terms.size() );
+        if ( id == null ) {
+            terms.add( term );
+        } else {
+            if ( log.isWarnEnabled() ) {
+                log.warn( "2 Objects have the same ID (" + accession + "), the old one is being replaced. old: "
+                          + terms.get( id ).getPreferredName() + " new: " + term.getPreferredName() );
+            }
+            terms.set( id, term );
+        }
+    }
+
+    /**
+     * @param term a term that has already been added.
+     */
+    public void addObsoleteTerm( T term ) {
+        checkNotBuilt();
+        if ( term == null ) {
+            throw new IllegalArgumentException( "You must give a non null term" );
+        }
+        final Integer id = accession2id.get( term.getTermAccession() );
+        if ( id == null ) {
+            throw new IllegalArgumentException( "The obsolete term " + term.getTermAccession() + " has to be added first" );
+        }
+        obsoleteIds.set( id );
+    }
+
+    /**
+     * Create a relationship parent to child between two terms that have already been added.
+     *
+     * @param parentId The parent term.
+     * @param childId  The child term.
+     */
+    public void addLink( String parentId, String childId ) {
+        checkNotBuilt();
+        final Integer child = accession2id.get( childId );
+        final Integer parent = accession2id.get( parentId );
+
+        if ( child == null ) {
+            throw new NullPointerException( "You must give a non null child" );
+        }
+
+        if ( parent == null ) {
+            throw new NullPointerException( "You must give a non null parent" );
+        }
+
+        if ( linkCount + 2 > links.length ) {
+            links = Arrays.copyOf( links, links.length * 2 );
+        }
+        links[linkCount++] = parent;
+        links[linkCount++] = child;
+    }
+
+    /**
+     * Loads the terms and links gathered so far into the given ontology, which is then indexed.
+     *
+     * @param ontology an empty ontology.
+     * @return the given ontology.
+     */
+    public <O extends OntologyTemplate<T>> O build( O ontology ) {
+        checkNotBuilt();
+        built = true;
+        ontology.load( this );
+        if ( log.isDebugEnabled() ) {
+            log.debug( "Built ontology of " + terms.size() + " terms, " + obsoleteIds.cardinality() + " obsolete, and "
+                       + linkCount / 2 + " links" );
+        }
+
+        // the ontology has its own copy of the links
+        links = null;
+        linkCount = 0;
+        return ontology;
+    }
+
+    private void checkNotBuilt() {
+        if ( built ) {
+            throw new IllegalStateException( "The ontology has already been built" );
+        }
+    }
+
+    ///////////////////////////
+    // Access for the ontologies
+
+    /**
+     * @return the number of distinct terms added.
+     */
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * @return the terms, indexed by id.
+     */
+    List<T> getTerms() {
+        return Collections.unmodifiableList( terms );
+    }
+
+    /**
+     * @return the id of each accession.
+     */
+    Map<String, Integer> getAccessionIds() {
+        return Collections.unmodifiableMap( accession2id );
+    }
+
+    /**
+     * @return the ids of the obsolete terms.
+     */
+    BitSet getObsoleteIds() {
+        return ( BitSet ) obsoleteIds.clone();
+    }
+
+    /**
+     * @return the links as parent id, child id pairs, possibly duplicated, up to getLinkCount().
+     */
+    int[] getLinks() {
+        return links;
+    }
+
+    /**
+     * @return the number of ints used in getLinks(), twice the number of links.
+     */
+    int getLinkCount() {
+        return linkCount;
+    }
+
+    /**
+     * Creates the index of the links gathered by this builder.
+     *
+     * @param idOf gives the id of a term of the ontology being built, -1 for any other object.
+     * @return the index, with the roots and depths computed.
+     */
+    OntologyClosureIndex<T> createIndex( List<T> terms, ToIntFunction<Object> idOf ) {
+        return OntologyClosureIndex.fromLinks( terms, idOf, links, linkCount );
+    }
+}
@@ -0,0 +1,445 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToIntFunction;
+
+/**
+ * Index of the transitive closure of the parent to child relationship of an ontology that is not modified anymore.
+ * <p/>
+ * Terms are given a dense integer id and both the children and the parents are stored as arrays of ids (the children
+ * of the term i being childIds[ childOffsets[i] ] to childIds[ childOffsets[i+1] - 1 ]). The descendants and the
+ * ancestors of a term are computed the first time they are requested and kept as sorted arrays of ids, so that the
+ * memory used grows with the size of the closures rather than with the number of terms. Whether a term descends from
+ * another one is looked up in the ancestors of the former, which are few. The traversals are iterative and never
+ * visit a term twice, so cycles found in a malformed ontology do not bring them down.
+ * <p/>
+ * The sets of terms given by this index are unmodifiable views on these arrays, no term is copied.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OntologyClosureIndex<T extends OntologyTermI> {
+
+    /**
+     * Term for a given id.
+     */
+    private final List<T> terms;
+
+    /**
+     * Id for a given term, -1 if the object is not a term of the ontology.
+     */
+    private final ToIntFunction<Object> idOf;
+
+    private final int[] childOffsets;
+    private final int[] childIds;
+
+    /**
+     * Parents of the term with id i, stored the same way as the children.
+     */
+    private final int[] parentOffsets;
+    private final int[] parentIds;
+
+    /**
+     * Length of the shortest path from a root to the term with id i, -1 if the term cannot be reached from a root.
+     */
+    private final int[] depths;
+
+    private final List<T> roots;
+
+    /**
+     * Sorted ids of the descendants and of the ancestors of the term with id i, null until they are requested.
+     */
+    private final AtomicReferenceArray<int[]> descendantIds;
+    private final AtomicReferenceArray<int[]> ancestorIds;
+
+    /**
+     * Index the relationship given as a map of term to direct children.
+     *
+     * @param terms    all the terms of the ontology.
+     * @param children the direct children of each term.
+     */
+    public static <T extends OntologyTermI> OntologyClosureIndex<T> build( Collection<T> terms,
+                                                                          Map<T, Set<T>> children ) {
+        final List<T> termList = new ArrayList<T>( terms.size() );
+        final Map<T, Integer> term2id = new HashMap<T, Integer>( terms.size() * 2 );
+        for ( T term : terms ) {
+            if ( !term2id.containsKey( term ) ) {
+                term2id.put( term, termList.size() );
+                termList.add( term );
+            }
+        }
+
+        final int size = termList.size();
+        final int[] offsets = new int[size + 1];
+        int[] links = new int[16];
+        int linkCount = 0;
+        for ( int i = 0; i < size; i++ ) {
+            offsets[i] = linkCount;
+            Set<T> directChildren = children.get( termList.get( i ) );
+            if ( directChildren != null ) {
+                for ( T child : directChildren ) {
+                    // a child is always a term of the ontology, see OntologyTemplateImpl.addLink()
+                    Integer childId = term2id.get( child );
+                    if ( childId != null ) {
+                        if ( linkCount == links.length ) {
+                            links = Arrays.copyOf( links, links.length * 2 );
+                        }
+                        links[linkCount++] = childId;
+                    }
+                }
+            }
+        }
+        offsets[size] = linkCount;
+
+        return new OntologyClosureIndex<T>( termList, new ToIntFunction<Object>() {
+            public int applyAsInt( Object term ) {
+                Integer id = term2id.get( term );
+                return id == null ? -1 : id;
+            }
+        }, offsets, Arrays.copyOf( links, linkCount ) );
+    }
+
+    /**
+     * Index the relationship given as a sequence of parent id, child id pairs.
+     *
+     * @param terms     the terms of the ontology, indexed by id.
+     * @param idOf      gives the id of a term, -1 if the given object is not a term of the ontology.
+     * @param links     parent id, child id pairs.
+     * @param linkCount the number of ints used in links, twice the number of links.
+     */
+    static <T extends OntologyTermI> OntologyClosureIndex<T> fromLinks( List<T> terms, ToIntFunction<Object> idOf,
+                                                                       int[] links, int linkCount ) {
+        final int size = terms.size();
+
+        // counting sort of the links by parent
+        final int[] offsets = new int[size + 1];
+        for ( int i = 0; i < linkCount; i += 2 ) {
+            offsets[links[i] + 1]++;
+        }
+        for ( int i = 0; i < size; i++ ) {
+            offsets[i + 1] += offsets[i];
+        }
+        final int[] childIds = new int[linkCount / 2];
+        final int[] positions = Arrays.copyOf( offsets, size );
+        for ( int i = 0; i < linkCount; i += 2 ) {
+            childIds[positions[links[i]]++] = links[i + 1];
+        }
+
+        return new OntologyClosureIndex<T>( terms, idOf, offsets, childIds );
+    }
+
+    /**
+     * @param terms        the terms of the ontology, indexed by id.
+     * @param idOf         gives the id of a term, -1 if the given object is not a term of the ontology.
+     * @param childOffsets the children of the term i are found in childIds from childOffsets[i] (inclusive) to
+     *                     childOffsets[i+1] (exclusive). The array has one more element than there are terms.
+     * @param childIds     the ids of the children, duplicated links are ignored.
+     */
+    public OntologyClosureIndex( List<T> terms, ToIntFunction<Object> idOf, int[] childOffsets, int[] childIds ) {
+        if ( childOffsets.length != terms.size() + 1 ) {
+            throw new IllegalArgumentException( "Expected " + ( terms.size() + 1 ) + " offsets, found " + childOffsets.length );
+        }
+        this.terms = terms;
+        this.idOf = idOf;
+
+        final int size = terms.size();
+
+        // sort the children of each term and drop the duplicated links
+        this.childOffsets = new int[size + 1];
+        int linkCount = 0;
+        for ( int i = 0; i < size; i++ ) {
+            final int from = childOffsets[i];
+            final int to = childOffsets[i + 1];
+            this.childOffsets[i] = linkCount;
+            Arrays.sort( childIds, from, to );
+            for ( int c = from; c < to; c++ ) {
+                if ( c == from || childIds[c] != childIds[c - 1] ) {
+                    childIds[linkCount++] = childIds[c];
+                }
+            }
+        }
+        this.childOffsets[size] = linkCount;
+        this.childIds = linkCount == childIds.length ? childIds : Arrays.copyOf( childIds, linkCount );
+
+        // the parents are the same links, grouped by child
+        parentOffsets = new int[size + 1];
+        for ( int c = 0; c < linkCount; c++ ) {
+            parentOffsets[this.childIds[c] + 1]++;
+        }
+        for ( int i = 0; i < size; i++ ) {
+            parentOffsets[i + 1] += parentOffsets[i];
+        }
+        parentIds = new int[linkCount];
+        int[] positions = Arrays.copyOf( parentOffsets, size );
+        for ( int i = 0; i < size; i++ ) {
+            for ( int c = this.childOffsets[i]; c < this.childOffsets[i + 1]; c++ ) {
+                parentIds[positions[this.childIds[c]]++] = i;
+            }
+        }
+
+        List<T> roots = new ArrayList<T>();
+        for ( int i = 0; i < size; i++ ) {
+            if ( parentOffsets[i] == parentOffsets[i + 1] ) {
+                roots.add( terms.get( i ) );
+            }
+        }
+        this.roots = Collections.unmodifiableList( roots );
+
+        depths = computeDepths();
+
+        descendantIds = new AtomicReferenceArray<int[]>( size );
+        ancestorIds = new AtomicReferenceArray<int[]>( size );
+    }
+
+    /**
+     * Breadth first traversal starting from all the roots at once, so each term gets the length of its shortest path
+     * from a root.
+     */
+    private int[] computeDepths() {
+        final int size = terms.size();
+        final int[] depths = new int[size];
+        Arrays.fill( depths, -1 );
+
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for ( int i = 0; i < size; i++ ) {
+            if ( parentOffsets[i] == parentOffsets[i + 1] ) {
+                depths[i] = 0;
+                queue[tail++] = i;
+            }
+        }
+        while ( head < tail ) {
+            final int current = queue[head++];
+            for ( int c = childOffsets[current]; c < childOffsets[current + 1]; c++ ) {
+                final int child = childIds[c];
+                if ( depths[child] == -1 ) {
+                    depths[child] = depths[current] + 1;
+                    queue[tail++] = child;
+                }
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * @return the number of terms indexed.
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * @return the number of parent to child links indexed.
+     */
+    public int getLinkCount() {
+        return childIds.length;
+    }
+
+    /**
+     * @return the terms that do not have any parent.
+     */
+    public List<T> getRoots() {
+        return roots;
+    }
+
+    /**
+     * @return a new, unmodifiable list of the terms that do not have any child.
+     */
+    public List<T> getLeaves() {
+        final List<T> leaves = new ArrayList<T>();
+        for ( int i = 0; i < terms.size(); i++ ) {
+            if ( childOffsets[i] == childOffsets[i + 1] ) {
+                leaves.add( terms.get( i ) );
+            }
+        }
+        return Collections.unmodifiableList( leaves );
+    }
+
+    /**
+     * @param term the term of interest.
+     * @return a non null, unmodifiable set of the direct children of the given term.
+     */
+    public Set<T> getChildren( T term ) {
+        final int id = idOf.applyAsInt( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        return new IdRangeSet( childIds, childOffsets[id], childOffsets[id + 1] );
+    }
+
+    /**
+     * @param term the term of interest.
+     * @return a non null, unmodifiable set of the direct parents of the given term.
+     */
+    public Set<T> getParents( T term ) {
+        final int id = idOf.applyAsInt( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        return new IdRangeSet( parentIds, parentOffsets[id], parentOffsets[id + 1] );
+    }
+
+    /**
+     * Answers the question: is the child term a descendant of the ancestor term ?
+     *
+     * @param child    the potential descendant.
+     * @param ancestor the potential ancestor.
+     * @return true if child can be reached from ancestor by following parent to child links.
+     */
+    public boolean isDescendantOf( T child, T ancestor ) {
+        final int childId = idOf.applyAsInt( child );
+        final int ancestorId = idOf.applyAsInt( ancestor );
+        if ( childId < 0 || ancestorId < 0 ) {
+            return false;
+        }
+        // the ancestors of a term are far fewer than the descendants of most of its ancestors
+        return Arrays.binarySearch( getClosure( childId, ancestorIds, parentOffsets, parentIds ), ancestorId ) >= 0;
+    }
+
+    /**
+     * @param term the term of interest.
+     * @return a non null, unmodifiable set of all the descendants of the given term.
+     */
+    public Set<T> getDescendants( T term ) {
+        final int id = idOf.applyAsInt( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        final int[] ids = getClosure( id, descendantIds, childOffsets, childIds );
+        return new IdRangeSet( ids, 0, ids.length );
+    }
+
+    /**
+     * @param term the term of interest.
+     * @return a non null, unmodifiable set of all the ancestors of the given term.
+     */
+    public Set<T> getAncestors( T term ) {
+        final int id = idOf.applyAsInt( term );
+        if ( id < 0 ) {
+            return Collections.emptySet();
+        }
+        final int[] ids = getClosure( id, ancestorIds, parentOffsets, parentIds );
+        return new IdRangeSet( ids, 0, ids.length );
+    }
+
+    /**
+     * @param term the term of interest.
+     * @return the number of links on the shortest path from a root of the ontology to that term, 0 for a root and -1
+     *         if the term is unknown or cannot be reached from any root (i.e. it belongs to a cycle).
+     */
+    public int getDepth( T term ) {
+        final int id = idOf.applyAsInt( term );
+        return id < 0 ? -1 : depths[id];
+    }
+
+    /**
+     * @return the links of the index as a sequence of parent id, child id pairs.
+     */
+    int[] getLinks() {
+        int[] links = new int[childIds.length * 2];
+        int position = 0;
+        for ( int i = 0; i < terms.size(); i++ ) {
+            for ( int c = childOffsets[i]; c < childOffsets[i + 1]; c++ ) {
+                links[position++] = i;
+                links[position++] = childIds[c];
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Depth first traversal of the links starting from the given term, a bit set keeping track of the terms already
+     * visited. Terms whose closure is already known are not traversed again, their closure is merged instead.
+     *
+     * @return the sorted ids of the terms reached from the given one, kept for the next calls.
+     */
+    private int[] getClosure( int id, AtomicReferenceArray<int[]> closures, int[] offsets, int[] links ) {
+        int[] closure = closures.get( id );
+        if ( closure == null ) {
+            final BitSet visited = new BitSet();
+
+            int[] stack = new int[16];
+            int top = 0;
+            stack[top++] = id;
+            while ( top > 0 ) {
+                final int current = stack[--top];
+                for ( int c = offsets[current]; c < offsets[current + 1]; c++ ) {
+                    final int next = links[c];
+                    if ( !visited.get( next ) ) {
+                        visited.set( next );
+                        final int[] known = closures.get( next );
+                        if ( known != null ) {
+                            for ( int k : known ) {
+                                visited.set( k );
+                            }
+                        } else {
+                            if ( top == stack.length ) {
+                                stack = Arrays.copyOf( stack, stack.length * 2 );
+                            }
+                            stack[top++] = next;
+                        }
+                    }
+                }
+            }
+
+            closure = new int[visited.cardinality()];
+            int position = 0;
+            for ( int i = visited.nextSetBit( 0 ); i >= 0; i = visited.nextSetBit( i + 1 ) ) {
+                closure[position++] = i;
+            }
+            if ( !closures.compareAndSet( id, null, closure ) ) {
+                closure = closures.get( id );
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Unmodifiable set of the terms whose ids are stored, sorted, in a range of an array.
+     */
+    private class IdRangeSet extends AbstractSet<T> {
+
+        private final int[] ids;
+        private final int from;
+        private final int to;
+
+        private IdRangeSet( int[] ids, int from, int to ) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean contains( Object o ) {
+            final int id = idOf.applyAsInt( o );
+            return id >= 0 && Arrays.binarySearch( ids, from, to, id ) >= 0;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int position = from;
+
+                public boolean hasNext() {
+                    return position < to;
+                }
+
+                public T next() {
+                    if ( position >= to ) {
+                        throw new NoSuchElementException();
+                    }
+                    return terms.get( ids[position++] );
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
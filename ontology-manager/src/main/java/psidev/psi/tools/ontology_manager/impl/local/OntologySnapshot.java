@@ -0,0 +1,228 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary snapshot of an ontology loaded from an OBO file, so that the file does not need to be parsed again.
+ * <p/>
+ * A snapshot keeps the accession, name, synonyms and obsolete flag of every term, and the parent to child links as
+ * pairs of term indexes. It is stored in the ontology directory under the MD5 signature of the OBO file and the name of
+ * the loader, and it is only used if its header matches that signature, the snapshot format and the loader that wrote
+ * it. A snapshot that
+ * is stale or cannot be read is ignored and the OBO file is parsed as usual.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+class OntologySnapshot {
+
+    public static final Log log = LogFactory.getLog( OntologySnapshot.class );
+
+    private static final int MAGIC = 0x4f424f53; // "OBOS"
+
+    /**
+     * To be incremented whenever the layout of the snapshot changes.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SUFFIX = ".snapshot";
+
+    private final File file;
+
+    private final String md5;
+
+    private final String loaderName;
+
+    /**
+     * @param directory the directory where snapshots are stored.
+     * @param oboFile   the OBO file the snapshot stands for.
+     * @param loader    the loader reading that file.
+     * @throws IOException if the OBO file could not be read.
+     */
+    OntologySnapshot( File directory, File oboFile, AbstractOboLoader loader ) throws IOException {
+        this.md5 = computeMD5Signature( oboFile );
+        this.loaderName = loader.getClass().getName();
+        this.file = new File( directory, md5 + "." + loader.getClass().getSimpleName() + SUFFIX );
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Builds the ontology from the snapshot.
+     *
+     * @param loader the loader creating the ontology and its terms.
+     * @return the ontology, or null if there is no valid snapshot.
+     */
+    <T extends OntologyTermI, O extends OntologyTemplate<T>> O read( AbstractOboLoader<T, O> loader ) {
+        if ( !file.exists() ) {
+            return null;
+        }
+
+        try {
+            final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 65536 ) );
+            try {
+                if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                     || !loaderName.equals( readString( in ) ) || !md5.equals( readString( in ) ) ) {
+                    if ( log.isInfoEnabled() ) log.info( "Ignoring stale ontology snapshot: " + file.getAbsolutePath() );
+                    return null;
+                }
+
+                final int termCount = in.readInt();
+                final OntologyBuilder<T> builder = new OntologyBuilder<T>( termCount );
+                final String[] accessions = new String[termCount];
+                for ( int i = 0; i < termCount; i++ ) {
+                    accessions[i] = readString( in );
+                    final T term = loader.createNewOntologyTerm( accessions[i], readString( in ) );
+                    final int synonymCount = in.readInt();
+                    for ( int s = 0; s < synonymCount; s++ ) {
+                        term.getNameSynonyms().add( readString( in ) );
+                    }
+                    builder.addTerm( term );
+                    if ( in.readBoolean() ) {
+                        builder.addObsoleteTerm( term );
+                    }
+                }
+
+                final int linkCount = in.readInt();
+                for ( int i = 0; i < linkCount; i++ ) {
+                    final String parent = accessions[in.readInt()];
+                    final String child = accessions[in.readInt()];
+                    builder.addLink( parent, child );
+                }
+
+                if ( in.readInt() != MAGIC ) {
+                    throw new IOException( "Missing end of snapshot" );
+                }
+                final O ontology = builder.build( loader.createNewOntology() );
+
+                if ( log.isInfoEnabled() ) log.info( "Loaded ontology snapshot: " + file.getAbsolutePath() );
+                return ontology;
+            } finally {
+                in.close();
+            }
+        } catch ( Exception e ) {
+            log.warn( "Could not read the ontology snapshot " + file.getAbsolutePath() + ", the OBO file will be parsed", e );
+            return null;
+        }
+    }
+
+    /**
+     * Stores the ontology, the snapshot being replaced atomically so that a concurrent reader never sees it partially
+     * written. Failures are only logged.
+     *
+     * @param ontology the ontology parsed from the OBO file.
+     */
+    <T extends OntologyTermI> void write( OntologyTemplate<T> ontology ) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile( md5, SUFFIX + ".tmp", file.getParentFile() );
+            final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ), 65536 ) );
+            try {
+                out.writeInt( MAGIC );
+                out.writeInt( FORMAT_VERSION );
+                writeString( out, loaderName );
+                writeString( out, md5 );
+
+                // a term replaced by another one with the same accession is only stored once
+                final Map<String, Integer> accession2index = new HashMap<String, Integer>();
+                final List<T> terms = new ArrayList<T>();
+                for ( T term : ontology.getOntologyTerms() ) {
+                    final String accession = term.getTermAccession();
+                    if ( !accession2index.containsKey( accession ) ) {
+                        accession2index.put( accession, terms.size() );
+                        terms.add( ontology.search( accession ) );
+                    }
+                }
+
+                out.writeInt( terms.size() );
+                int linkCount = 0;
+                for ( T term : terms ) {
+                    writeString( out, term.getTermAccession() );
+                    writeString( out, term.getPreferredName() );
+                    final Collection<String> synonyms = term.getNameSynonyms();
+                    out.writeInt( synonyms == null ? 0 : synonyms.size() );
+                    if ( synonyms != null ) {
+                        for ( String synonym : synonyms ) {
+                            writeString( out, synonym );
+                        }
+                    }
+                    out.writeBoolean( ontology.isObsoleteTerm( term ) );
+                    linkCount += ontology.getDirectChildren( term ).size();
+                }
+
+                out.writeInt( linkCount );
+                for ( int i = 0; i < terms.size(); i++ ) {
+                    for ( T child : ontology.getDirectChildren( terms.get( i ) ) ) {
+                        out.writeInt( i );
+                        out.writeInt( accession2index.get( child.getTermAccession() ) );
+                    }
+                }
+                out.writeInt( MAGIC );
+            } finally {
+                out.close();
+            }
+
+            Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            if ( log.isInfoEnabled() ) log.info( "Saved ontology snapshot: " + file.getAbsolutePath() );
+        } catch ( IOException e ) {
+            log.warn( "Could not save the ontology snapshot " + file.getAbsolutePath(), e );
+            if ( tmp != null ) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static void writeString( DataOutputStream out, String s ) throws IOException {
+        if ( s == null ) {
+            out.writeInt( -1 );
+        } else {
+            final byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+    }
+
+    private static String readString( DataInputStream in ) throws IOException {
+        final int length = in.readInt();
+        if ( length < 0 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    static String computeMD5Signature( File file ) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "MD5" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IOException( "Unable to compute the MD5 signature of " + file.getAbsolutePath(), e );
+        }
+
+        final InputStream is = new DigestInputStream( new FileInputStream( file ), digest );
+        try {
+            final byte[] buffer = new byte[65536];
+            while ( is.read( buffer ) != -1 ) {
+                // the digest is updated while reading
+            }
+        } finally {
+            is.close();
+        }
+        return new BigInteger( 1, digest.digest() ).toString( 16 );
+    }
+}
@@ -2,8 +2,7 @@ package psidev.psi.tools.ontology_manager.impl.local;
 
 import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 
-import java.util.Collection;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Template for Ontology.
@@ -29,6 +28,20 @@ public interface OntologyTemplate<T extends OntologyTermI> {
 
     boolean isObsoleteTerm( T term );
 
+    /**
+     * @param terms the terms of interest.
+     * @return a new set of the given terms that are not obsolete, in the order of the given collection.
+     */
+    default Set<T> filterObsoleteTerms( Collection<T> terms ) {
+        final Set<T> filtered = new LinkedHashSet<T>( terms.size() * 4 / 3 + 1 );
+        for ( T term : terms ) {
+            if ( !isObsoleteTerm( term ) ) {
+                filtered.add( term );
+            }
+        }
+        return filtered;
+    }
+
     Set<T> getDirectParents( T term );
 
     Set<T> getDirectChildren( T term );
@@ -37,6 +50,84 @@ public interface OntologyTemplate<T extends OntologyTermI> {
 
     Set<T> getAllChildren( T term );
 
+    /**
+     * Answers the question: is child a descendant of ancestor ? Implementations should answer it without building
+     * the set of all the children of ancestor.
+     *
+     * @param child    the potential descendant.
+     * @param ancestor the potential ancestor.
+     * @return true if child is one of the children, direct or not, of ancestor.
+     */
+    default boolean isDescendantOf( T child, T ancestor ) {
+        return getAllChildren( ancestor ).contains( child );
+    }
+
+    /**
+     * @param term the term of interest.
+     * @return the number of links on the shortest path from a root to that term, 0 for a root and -1 if the term is
+     *         unknown or cannot be reached from a root.
+     */
+    int getDepth( T term );
+
+    /**
+     * Called once all the terms and links have been added, so that the hierarchy can be indexed upfront rather than on
+     * the first query.
+     */
+    default void buildIndex() {
+    }
+
+    /**
+     * Called once the ontology is loaded: from then on it cannot be modified anymore, the add methods throwing an
+     * UnsupportedOperationException, and it can be read by many threads without any synchronization, provided it has
+     * been safely published to them.
+     */
+    default void freeze() {
+        buildIndex();
+    }
+
+    /**
+     * @return true if the ontology cannot be modified anymore.
+     */
+    default boolean isFrozen() {
+        return false;
+    }
+
+    /**
+     * @return the terms having no children.
+     */
+    default Collection<T> getLeaves() {
+        final List<T> leaves = new ArrayList<T>();
+        for ( T term : getOntologyTerms() ) {
+            if ( getDirectChildren( term ).isEmpty() ) {
+                leaves.add( term );
+            }
+        }
+        return Collections.unmodifiableList( leaves );
+    }
+
+    /**
+     * Loads all the terms and links gathered by the builder at once, then indexes the ontology. Implementations should
+     * fill their structures straight from the builder rather than adding the terms and links one by one, which is what
+     * this default does.
+     *
+     * @param builder the terms and links of the ontology, which has to be empty.
+     */
+    default void load( OntologyBuilder<T> builder ) {
+        final List<T> terms = builder.getTerms();
+        for ( T term : terms ) {
+            addTerm( term );
+        }
+        final BitSet obsoleteIds = builder.getObsoleteIds();
+        for ( int i = obsoleteIds.nextSetBit( 0 ); i >= 0; i = obsoleteIds.nextSetBit( i + 1 ) ) {
+            addObsoleteTerm( terms.get( i ) );
+        }
+        final int[] links = builder.getLinks();
+        for ( int i = 0; i < builder.getLinkCount(); i += 2 ) {
+            addLink( terms.get( links[i] ).getTermAccession(), terms.get( links[i + 1] ).getTermAccession() );
+        }
+        buildIndex();
+    }
+
     public void addTerm( T term );
     public void addObsoleteTerm( T term );
     public void addLink( String parentId, String childId );
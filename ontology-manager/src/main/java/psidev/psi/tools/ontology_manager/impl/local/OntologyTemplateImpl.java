@@ -5,6 +5,7 @@ import org.apache.commons.logging.LogFactory;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 /**
  * Implementation of OntologyTemplate
@@ -35,12 +36,12 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
     /**
      * Represent the relationship: child -> parents.
      */
-    protected final Map<T, Set<T>> parents = new HashMap<>();
+    protected Map<T, Set<T>> parents = new HashMap<>();
 
     /**
      * Represent the relationship: parent -> children.
      */
-    protected final Map<T, Set<T>> children = new HashMap<>();
+    protected Map<T, Set<T>> children = new HashMap<>();
 
     /**
      * Mapping of all OboTerm by their ID.
@@ -53,9 +54,22 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
     protected Collection<T> roots = null;
 
     /**
-     * List of all obsolete term found while loading the ontology.
+     * Collection of leaf terms of that ontology, terms having no child. Only kept once the ontology is loaded from a
+     * builder or frozen.
      */
-    protected Collection<T> obsoleteTerms = new ArrayList<>();
+    protected Collection<T> leaves = null;
+
+    /**
+     * Set of all obsolete term found while loading the ontology, in the order they were found.
+     */
+    protected Collection<T> obsoleteTerms = new LinkedHashSet<>();
+
+    /**
+     * Transitive closure of the parent to child relationship, built when first needed once the ontology is loaded.
+     */
+    private volatile OntologyClosureIndex<T> closureIndex = null;
+
+    private volatile boolean frozen = false;
 
     /////////////////////////////
     // Public methods
@@ -66,6 +80,7 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
      * @param term the OntologyTerm to add in that Ontology.
      */
     public void addTerm( T term ) {
+        checkNotFrozen();
 
         ontologyTerms.add( term );
         String id = term.getTermAccession();
@@ -79,6 +94,7 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
         id2ontologyTerm.put( id, term );
 
         flushRootsCache();
+        closureIndex = null;
     }
 
     /**
@@ -88,6 +104,7 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
      * @param childId  The child term.
      */
     public void addLink( String parentId, String childId ) {
+        checkNotFrozen();
 
         T child = id2ontologyTerm.get( childId );
         T parent = id2ontologyTerm.get( parentId );
@@ -112,6 +129,109 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
         parents.get( child ).add( parent );
 
         flushRootsCache();
+        closureIndex = null;
+    }
+
+    /**
+     * Fills the structures of the ontology straight from the builder, without looking the terms up by accession: the
+     * closure index is built from its buffer of links, which also gives the roots and the leaves.
+     */
+    @Override
+    public synchronized void load( OntologyBuilder<T> builder ) {
+        checkNotFrozen();
+        if ( !ontologyTerms.isEmpty() ) {
+            OntologyTemplate.super.load( builder );
+            return;
+        }
+
+        final List<T> terms = builder.getTerms();
+        final Map<String, Integer> accession2id = builder.getAccessionIds();
+        ontologyTerms.addAll( terms );
+        id2ontologyTerm = new HashMap<>( terms.size() * 4 / 3 + 1 );
+        for ( T term : terms ) {
+            id2ontologyTerm.put( term.getTermAccession(), term );
+        }
+        final BitSet obsoleteIds = builder.getObsoleteIds();
+        obsoleteTerms = new LinkedHashSet<>( obsoleteIds.cardinality() * 4 / 3 + 1 );
+        for ( int i = obsoleteIds.nextSetBit( 0 ); i >= 0; i = obsoleteIds.nextSetBit( i + 1 ) ) {
+            obsoleteTerms.add( terms.get( i ) );
+        }
+
+        final OntologyClosureIndex<T> index = builder.createIndex( terms, new ToIntFunction<Object>() {
+            public int applyAsInt( Object o ) {
+                if ( !( o instanceof OntologyTermI ) ) {
+                    return -1;
+                }
+                final Integer id = accession2id.get( ( ( OntologyTermI ) o ).getTermAccession() );
+                return id != null && terms.get( id ).equals( o ) ? id : -1;
+            }
+        } );
+        final int[] links = builder.getLinks();
+        children = new HashMap<>( terms.size() * 4 / 3 + 1 );
+        parents = new HashMap<>( terms.size() * 4 / 3 + 1 );
+        for ( int i = 0; i < builder.getLinkCount(); i += 2 ) {
+            final T parent = terms.get( links[i] );
+            final T child = terms.get( links[i + 1] );
+            Set<T> directChildren = children.get( parent );
+            if ( directChildren == null ) {
+                directChildren = new HashSet<>();
+                children.put( parent, directChildren );
+            }
+            directChildren.add( child );
+            Set<T> directParents = parents.get( child );
+            if ( directParents == null ) {
+                directParents = new HashSet<>();
+                parents.put( child, directParents );
+            }
+            directParents.add( parent );
+        }
+        roots = new HashSet<>( index.getRoots() );
+        leaves = index.getLeaves();
+        closureIndex = index;
+    }
+
+    /**
+     * Turns all the structures of the ontology into unmodifiable collections and computes the roots, the leaves and the
+     * closure index, so that the ontology can be read concurrently without any locking. The add methods throw an
+     * UnsupportedOperationException from then on.
+     */
+    public synchronized void freeze() {
+        if ( frozen ) {
+            return;
+        }
+        final OntologyClosureIndex<T> index = getClosureIndex();
+
+        parents = freeze( parents );
+        children = freeze( children );
+        ontologyTerms = Collections.unmodifiableList( new ArrayList<>( ontologyTerms ) );
+        id2ontologyTerm = Collections.unmodifiableMap( id2ontologyTerm );
+        obsoleteTerms = Collections.unmodifiableSet( new LinkedHashSet<>( obsoleteTerms ) );
+        roots = Collections.unmodifiableList( new ArrayList<>( index.getRoots() ) );
+        leaves = index.getLeaves();
+
+        frozen = true;
+        if ( log.isDebugEnabled() ) {
+            log.debug( "Frozen ontology of " + id2ontologyTerm.size() + " terms, " + roots.size() + " root(s) and "
+                       + leaves.size() + " leaves" );
+        }
+    }
+
+    private static <T> Map<T, Set<T>> freeze( Map<T, Set<T>> relationship ) {
+        final Map<T, Set<T>> frozen = new HashMap<>( relationship.size() * 4 / 3 + 1 );
+        for ( Map.Entry<T, Set<T>> entry : relationship.entrySet() ) {
+            frozen.put( entry.getKey(), Collections.unmodifiableSet( entry.getValue() ) );
+        }
+        return Collections.unmodifiableMap( frozen );
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if ( frozen ) {
+            throw new UnsupportedOperationException( "A frozen ontology cannot be modified" );
+        }
     }
 
     /**
@@ -124,6 +244,7 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
             roots.clear();
             roots = null;
         }
+        leaves = null;
     }
 
     /**
@@ -179,6 +300,15 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
         return roots;
     }
 
+    @Override
+    public Collection<T> getLeaves() {
+        final Collection<T> cached = leaves;
+        if ( cached != null ) {
+            return cached;
+        }
+        return getClosureIndex().getLeaves();
+    }
+
     /**
      * Get all OboTerm.
      *
@@ -192,6 +322,7 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
         if ( term == null ) {
             throw new IllegalArgumentException( "You must give a non null term" );
         }
+        checkNotFrozen();
         if ( log.isDebugEnabled() ) {
             log.debug( "Adding obsolete term: " + term.getTermAccession() + " " + term.getPreferredName() );
         }
@@ -202,6 +333,14 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
         return obsoleteTerms.contains( term );
     }
 
+    @Override
+    public Set<T> filterObsoleteTerms( Collection<T> terms ) {
+        if ( obsoleteTerms.isEmpty() ) {
+            return new LinkedHashSet<>( terms );
+        }
+        return OntologyTemplate.super.filterObsoleteTerms( terms );
+    }
+
     /**
      * Go through the list of all CV Term and select those that are obsolete.
      *
@@ -229,43 +368,58 @@ public abstract class OntologyTemplateImpl<T extends OntologyTermI> implements O
         }
     }
 
+    /**
+     * Gives all the ancestors of the given term.
+     *
+     * @param term the term for which we want all parents.
+     * @return a non null, unmodifiable set of terms.
+     */
     public Set<T> getAllParents( T term ) {
-        Set<T> parents = new HashSet<>();
-        getAllParents( term, parents );
-        return parents;
+        return getClosureIndex().getAncestors( term );
     }
 
     protected void getAllParents( T term, Set<T> parents ) {
-        final Collection<T> directParents = getDirectParents( term );
-        parents.addAll( directParents );
-        for ( T parent : directParents ) {
-            getAllParents( parent, parents );
-        }
+        parents.addAll( getAllParents( term ) );
     }
 
+    public int getDepth( T term ) {
+        return getClosureIndex().getDepth( term );
+    }
+
+    @Override
+    public void buildIndex() {
+        getClosureIndex();
+    }
+
+    /**
+     * Gives all the descendants of the given term.
+     *
+     * @param term the term for which we want all children.
+     * @return a non null, unmodifiable set of terms.
+     */
     public Set<T> getAllChildren( T term ) {
-        Set<T> children = new HashSet<>();
-        getAllChildren( term, children );
-        return children;
+        return getClosureIndex().getDescendants( term );
     }
 
-    protected void getAllChildren( T term, Set<T> children ) {
-         getAllChildren( "", term, children, new HashSet(512) );
+    @Override
+    public boolean isDescendantOf( T child, T ancestor ) {
+        return getClosureIndex().isDescendantOf( child, ancestor );
     }
 
-    protected void getAllChildren( String prefix, T term, Set<T> children, Set<String> traversedChildren ) {
-        if( traversedChildren.contains( term.getTermAccession() ) ) {
-//            System.out.println( prefix.replaceAll( " ", "#" )+" > "+ term.getTermAccession() +" / "+ term.getPreferredName() +" )" );
-            return;
-        } else {
-//            System.out.println( prefix +" > "+ term.getTermAccession() +" / "+ term.getPreferredName() +" )" );
-        }
-        final Collection<T> directChildren = getDirectChildren( term );
-        traversedChildren.add( term.getTermAccession() );
-        children.addAll( directChildren );
-        for ( T child : directChildren ) {
-            getAllChildren( prefix+"     ", child, children, traversedChildren );
+    /**
+     * @return the index of the parent to child relationship, built if the ontology changed since the last call.
+     */
+    protected OntologyClosureIndex<T> getClosureIndex() {
+        OntologyClosureIndex<T> index = closureIndex;
+        if ( index == null ) {
+            index = OntologyClosureIndex.build( id2ontologyTerm.values(), children );
+            closureIndex = index;
         }
+        return index;
+    }
+
+    protected void getAllChildren( T term, Set<T> children ) {
+        children.addAll( getAllChildren( term ) );
     }
 
     /////////////////////////////////
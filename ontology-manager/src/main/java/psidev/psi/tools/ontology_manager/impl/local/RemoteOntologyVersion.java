@@ -0,0 +1,213 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Properties;
+
+/**
+ * Version of an ontology downloaded over HTTP, as given by the ETag, Last-Modified and Content-Length headers of the
+ * response. It tells whether the remote ontology changed with a conditional HEAD request, rather than by downloading it
+ * again to compare its content.
+ * <p/>
+ * When downloaded ontologies are stored locally, the version is kept next to the stored file.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class RemoteOntologyVersion {
+
+    public static final Log log = LogFactory.getLog( RemoteOntologyVersion.class );
+
+    /**
+     * Suffix of the file keeping the version of a stored ontology.
+     */
+    public static final String FILE_SUFFIX = ".version";
+
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private final String etag;
+
+    private final String lastModified;
+
+    private final long contentLength;
+
+    public RemoteOntologyVersion( String etag, String lastModified, long contentLength ) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * @param connection a connection whose response has been received.
+     * @return the version given by the headers of the response.
+     */
+    public static RemoteOntologyVersion fromConnection( URLConnection connection ) {
+        return new RemoteOntologyVersion( connection.getHeaderField( ETAG ),
+                                          connection.getHeaderField( LAST_MODIFIED ),
+                                          connection.getContentLengthLong() );
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the length of the ontology, -1 if unknown.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return true if the server gave an ETag or a Last-Modified date, so that the version can be checked without
+     *         downloading the ontology.
+     */
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Asks the server whether the ontology changed since this version, with a HEAD request carrying the If-None-Match
+     * and If-Modified-Since headers. The ontology itself is never downloaded.
+     *
+     * @param url where the ontology is downloaded from.
+     * @return true if the server answered 304 (Not Modified) or gave the same validators.
+     * @throws IOException if the server could not be reached or gave an unexpected answer.
+     */
+    public boolean isUpToDate( URL url ) throws IOException {
+        if ( !hasValidators() ) {
+            return false;
+        }
+
+        final URLConnection connection = url.openConnection();
+        if ( !( connection instanceof HttpURLConnection ) ) {
+            throw new IOException( "Only HTTP ontologies can be checked with a conditional request: " + url );
+        }
+
+        final HttpURLConnection http = ( HttpURLConnection ) connection;
+        try {
+            http.setRequestMethod( "HEAD" );
+            http.setUseCaches( false );
+            if ( etag != null ) {
+                http.setRequestProperty( "If-None-Match", etag );
+            }
+            if ( lastModified != null ) {
+                http.setRequestProperty( "If-Modified-Since", lastModified );
+            }
+
+            final int status = http.getResponseCode();
+            if ( log.isDebugEnabled() ) {
+                log.debug( "Conditional request on " + url + " answered " + status );
+            }
+            if ( status == HttpURLConnection.HTTP_NOT_MODIFIED ) {
+                return true;
+            }
+            if ( status >= 200 && status < 300 ) {
+                // servers may ignore the conditions on a HEAD request, compare the validators then
+                return isSameVersion( fromConnection( http ) );
+            }
+            throw new IOException( "Unexpected answer " + status + " to the conditional request on " + url );
+        } finally {
+            http.disconnect();
+        }
+    }
+
+    private boolean isSameVersion( RemoteOntologyVersion current ) {
+        if ( etag != null && current.etag != null ) {
+            return etag.equals( current.etag );
+        }
+        if ( lastModified != null && current.lastModified != null ) {
+            return lastModified.equals( current.lastModified )
+                   && ( contentLength < 0 || current.contentLength < 0 || contentLength == current.contentLength );
+        }
+        return false;
+    }
+
+    ////////////////////////////
+    // Storage
+
+    private static File getVersionFile( File ontologyFile ) {
+        return new File( ontologyFile.getPath() + FILE_SUFFIX );
+    }
+
+    /**
+     * Keeps this version next to the file the ontology was stored in.
+     *
+     * @param ontologyFile the stored ontology.
+     * @throws IOException if the version could not be written.
+     */
+    public void store( File ontologyFile ) throws IOException {
+        final Properties properties = new Properties();
+        if ( etag != null ) {
+            properties.setProperty( ETAG, etag );
+        }
+        if ( lastModified != null ) {
+            properties.setProperty( LAST_MODIFIED, lastModified );
+        }
+        properties.setProperty( CONTENT_LENGTH, String.valueOf( contentLength ) );
+
+        final OutputStream out = new FileOutputStream( getVersionFile( ontologyFile ) );
+        try {
+            properties.store( out, "Version of " + ontologyFile.getName() );
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param ontologyFile a stored ontology.
+     * @return the version kept next to the stored ontology, null if there is none or it could not be read.
+     */
+    public static RemoteOntologyVersion load( File ontologyFile ) {
+        final File file = getVersionFile( ontologyFile );
+        if ( !file.canRead() ) {
+            return null;
+        }
+
+        final Properties properties = new Properties();
+        try {
+            final InputStream in = new FileInputStream( file );
+            try {
+                properties.load( in );
+            } finally {
+                in.close();
+            }
+            return new RemoteOntologyVersion( properties.getProperty( ETAG ), properties.getProperty( LAST_MODIFIED ),
+                                              Long.parseLong( properties.getProperty( CONTENT_LENGTH, "-1" ) ) );
+        } catch ( IOException e ) {
+            log.warn( "Could not read the version of the stored ontology " + ontologyFile.getAbsolutePath(), e );
+            return null;
+        } catch ( NumberFormatException e ) {
+            log.warn( "Could not read the version of the stored ontology " + ontologyFile.getAbsolutePath(), e );
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the version kept next to a stored ontology.
+     *
+     * @param ontologyFile a stored ontology.
+     */
+    public static void delete( File ontologyFile ) {
+        final File file = getVersionFile( ontologyFile );
+        if ( file.exists() && !file.delete() ) {
+            log.warn( "Could not delete " + file.getAbsolutePath() );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteOntologyVersion{etag=" + etag + ", lastModified=" + lastModified + ", contentLength=" + contentLength + "}";
+    }
+}
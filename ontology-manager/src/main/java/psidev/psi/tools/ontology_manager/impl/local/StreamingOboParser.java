@@ -0,0 +1,484 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Single pass parser of OBO 1.2 and 1.4 files.
+ * <p/>
+ * The file is read as bytes through a buffer and split in lines without creating any string, tags are compared as
+ * bytes and only the values needed to build the ontology (id, name, synonyms, obsolete flag, is_a and relationship
+ * targets) are decoded. Each term is given to the Builder as soon as its stanza ends, the links are given once all the
+ * terms are known, so that links to terms that are not defined in the file can be ignored.
+ * <p/>
+ * Only [Term] stanzas are read. Escaped characters are decoded and unquoted values lose their trailing comment.
+ * <p/>
+ * Large files can also be parsed in parallel: the file is then split in chunks starting on a stanza, the chunks are
+ * parsed on a ForkJoinPool and their terms and links are given to the Builder, from the calling thread and in the order
+ * of the file, once all the chunks are parsed.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class StreamingOboParser {
+
+    /**
+     * Receives what is found in the OBO file.
+     */
+    public interface Builder {
+
+        /**
+         * @param id        accession of the term.
+         * @param name      name of the term, may be null.
+         * @param synonyms  synonyms of the term, in the order of the file.
+         * @param obsolete  true if the term is obsolete.
+         */
+        void addTerm( String id, String name, List<String> synonyms, boolean obsolete );
+
+        /**
+         * Called once all the terms have been added, for links between two terms of the file only.
+         *
+         * @param parentId accession of the parent term.
+         * @param childId  accession of the child term.
+         */
+        void addLink( String parentId, String childId );
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default size of the chunks parsed in parallel.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final byte[] TERM_STANZA = bytes( "[Term]" );
+    private static final byte[] ID = bytes( "id" );
+    private static final byte[] NAME = bytes( "name" );
+    private static final byte[] IS_OBSOLETE = bytes( "is_obsolete" );
+    private static final byte[] IS_A = bytes( "is_a" );
+    private static final byte[] RELATIONSHIP = bytes( "relationship" );
+    private static final byte[] SYNONYM = bytes( "synonym" );
+    private static final byte[] SYNONYM_SUFFIX = bytes( "_synonym" );
+    private static final byte[] TRUE = bytes( "true" );
+
+    private static byte[] bytes( String s ) {
+        return s.getBytes( StandardCharsets.US_ASCII );
+    }
+
+    ////////////////////////
+    // State of the parse
+
+    private Builder builder;
+
+    private boolean inTerm;
+    private String id;
+    private String name;
+    private List<String> synonyms = new ArrayList<String>();
+    private boolean obsolete;
+
+    private final Set<String> ids = new HashSet<String>();
+
+    /**
+     * Links found so far, as child id, parent id pairs.
+     */
+    private final List<String> links = new ArrayList<String>();
+
+    /**
+     * Work area used to decode escaped values.
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Parses the given stream, which is not closed.
+     *
+     * @param in      an OBO file.
+     * @param builder receives the terms and the links.
+     * @throws IOException if the stream cannot be read.
+     */
+    public void parse( InputStream in, Builder builder ) throws IOException {
+        this.builder = builder;
+        inTerm = false;
+        id = null;
+        ids.clear();
+        links.clear();
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int start = 0;
+        int end = 0;
+        int scan = 0;
+        boolean eof = false;
+
+        while ( true ) {
+            // look for the end of the current line
+            int newline = -1;
+            for ( int i = scan; i < end; i++ ) {
+                if ( buffer[i] == '\n' ) {
+                    newline = i;
+                    break;
+                }
+            }
+
+            if ( newline >= 0 ) {
+                processLine( buffer, start, newline );
+                start = newline + 1;
+                scan = start;
+            } else if ( eof ) {
+                if ( start < end ) {
+                    processLine( buffer, start, end );
+                }
+                break;
+            } else {
+                // keep the beginning of the line and read some more
+                if ( start > 0 ) {
+                    System.arraycopy( buffer, start, buffer, 0, end - start );
+                    end -= start;
+                    start = 0;
+                } else if ( end == buffer.length ) {
+                    buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+                }
+                scan = end;
+                final int read = in.read( buffer, end, buffer.length - end );
+                if ( read < 0 ) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            }
+        }
+        endStanza();
+
+        addLinks( builder, links, ids );
+        links.clear();
+        ids.clear();
+        this.builder = null;
+    }
+
+    /**
+     * Parses the given stream, which is not closed, splitting it in chunks of about chunkSize bytes that are parsed on
+     * the common ForkJoinPool. The Builder is only called from the calling thread, once all the chunks are parsed.
+     *
+     * @param in        an OBO file.
+     * @param builder   receives the terms and the links.
+     * @param chunkSize the size above which the file is split, a chunk always ends at the beginning of a stanza.
+     * @throws IOException if the stream cannot be read.
+     */
+    public void parseInParallel( InputStream in, Builder builder, int chunkSize ) throws IOException {
+        if ( chunkSize < 1 ) {
+            throw new IllegalArgumentException( "The chunk size must be positive: " + chunkSize );
+        }
+        final byte[] data = readFully( in );
+
+        final List<ForkJoinTask<Chunk>> tasks = new ArrayList<ForkJoinTask<Chunk>>();
+        int from = 0;
+        while ( from < data.length ) {
+            final int to = nextStanza( data, Math.min( ( long ) from + chunkSize, data.length ) );
+            final int start = from;
+            tasks.add( ForkJoinPool.commonPool().submit( new Callable<Chunk>() {
+                public Chunk call() {
+                    return parseChunk( data, start, to );
+                }
+            } ) );
+            from = to;
+        }
+
+        // the terms of every chunk have to be known before any link is kept
+        final Set<String> allIds = new HashSet<String>();
+        final List<Chunk> chunks = new ArrayList<Chunk>( tasks.size() );
+        for ( ForkJoinTask<Chunk> task : tasks ) {
+            final Chunk chunk = task.join();
+            chunks.add( chunk );
+            for ( TermRecord term : chunk.terms ) {
+                allIds.add( term.id );
+                builder.addTerm( term.id, term.name, term.synonyms, term.obsolete );
+            }
+        }
+        for ( Chunk chunk : chunks ) {
+            addLinks( builder, chunk.links, allIds );
+        }
+    }
+
+    /**
+     * Terms and links found in a chunk of the file.
+     */
+    private static class Chunk implements Builder {
+        private final List<TermRecord> terms = new ArrayList<TermRecord>();
+        private List<String> links;
+
+        public void addTerm( String id, String name, List<String> synonyms, boolean obsolete ) {
+            terms.add( new TermRecord( id, name, synonyms, obsolete ) );
+        }
+
+        public void addLink( String parentId, String childId ) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class TermRecord {
+        private final String id;
+        private final String name;
+        private final List<String> synonyms;
+        private final boolean obsolete;
+
+        private TermRecord( String id, String name, List<String> synonyms, boolean obsolete ) {
+            this.id = id;
+            this.name = name;
+            this.synonyms = synonyms;
+            this.obsolete = obsolete;
+        }
+    }
+
+    private static Chunk parseChunk( byte[] data, int from, int to ) {
+        final Chunk chunk = new Chunk();
+        final StreamingOboParser parser = new StreamingOboParser();
+        parser.builder = chunk;
+        int start = from;
+        for ( int i = from; i < to; i++ ) {
+            if ( data[i] == '\n' ) {
+                parser.processLine( data, start, i );
+                start = i + 1;
+            }
+        }
+        if ( start < to ) {
+            parser.processLine( data, start, to );
+        }
+        parser.endStanza();
+        chunk.links = parser.links;
+        return chunk;
+    }
+
+    /**
+     * @return the position of the first line starting with '[' at or after the given position, or the end of the data.
+     */
+    private static int nextStanza( byte[] data, long position ) {
+        int i = ( int ) position;
+        if ( i >= data.length ) {
+            return data.length;
+        }
+        if ( i > 0 && data[i - 1] == '\n' && data[i] == '[' ) {
+            return i;
+        }
+        while ( i < data.length - 1 ) {
+            if ( data[i] == '\n' && data[i + 1] == '[' ) {
+                return i + 1;
+            }
+            i++;
+        }
+        return data.length;
+    }
+
+    private static byte[] readFully( InputStream in ) throws IOException {
+        byte[] data = new byte[BUFFER_SIZE];
+        int length = 0;
+        int read;
+        while ( ( read = in.read( data, length, data.length - length ) ) >= 0 ) {
+            length += read;
+            if ( length == data.length ) {
+                data = Arrays.copyOf( data, data.length * 2 );
+            }
+        }
+        return length == data.length ? data : Arrays.copyOf( data, length );
+    }
+
+    /**
+     * Gives the builder the links between known terms.
+     *
+     * @param links child id, parent id pairs.
+     */
+    private static void addLinks( Builder builder, List<String> links, Set<String> ids ) {
+        for ( int i = 0; i < links.size(); i += 2 ) {
+            final String child = links.get( i );
+            final String parent = links.get( i + 1 );
+            if ( ids.contains( child ) && ids.contains( parent ) ) {
+                builder.addLink( parent, child );
+            }
+        }
+    }
+
+    private void endStanza() {
+        if ( inTerm && id != null ) {
+            ids.add( id );
+            builder.addTerm( id, name, synonyms, obsolete );
+            synonyms = new ArrayList<String>();
+        }
+        id = null;
+        name = null;
+        synonyms.clear();
+        obsolete = false;
+    }
+
+    private void processLine( byte[] line, int from, int to ) {
+        // trim
+        while ( from < to && isWhitespace( line[from] ) ) {
+            from++;
+        }
+        while ( to > from && isWhitespace( line[to - 1] ) ) {
+            to--;
+        }
+        if ( from == to || line[from] == '!' ) {
+            return;
+        }
+
+        if ( line[from] == '[' ) {
+            endStanza();
+            inTerm = equals( line, from, to, TERM_STANZA );
+            return;
+        }
+        if ( !inTerm ) {
+            return;
+        }
+
+        int colon = from;
+        while ( colon < to && line[colon] != ':' ) {
+            colon++;
+        }
+        if ( colon == to ) {
+            return;
+        }
+        int value = colon + 1;
+        while ( value < to && isWhitespace( line[value] ) ) {
+            value++;
+        }
+
+        if ( equals( line, from, colon, ID ) ) {
+            if ( id != null ) {
+                // a second id in the same stanza starts a new term
+                endStanza();
+            }
+            id = decode( line, value, endOfUnquotedValue( line, value, to ) );
+        } else if ( id == null ) {
+            // tags before the id are ignored
+        } else if ( equals( line, from, colon, NAME ) ) {
+            name = decode( line, value, endOfUnquotedValue( line, value, to ) );
+        } else if ( equals( line, from, colon, IS_OBSOLETE ) ) {
+            obsolete = startsWith( line, value, to, TRUE );
+        } else if ( equals( line, from, colon, IS_A ) ) {
+            addLink( line, value, to );
+        } else if ( equals( line, from, colon, RELATIONSHIP ) ) {
+            // relationship: <type> <target>
+            final int type = endOfToken( line, value, to );
+            int target = type;
+            while ( target < to && isWhitespace( line[target] ) ) {
+                target++;
+            }
+            if ( target < to && target > type ) {
+                addLink( line, target, to );
+            }
+        } else if ( equals( line, from, colon, SYNONYM ) || endsWith( line, from, colon, SYNONYM_SUFFIX ) ) {
+            // synonym: "text" SCOPE [xrefs]
+            if ( value < to && line[value] == '"' ) {
+                int close = value + 1;
+                while ( close < to && line[close] != '"' ) {
+                    close += line[close] == '\\' ? 2 : 1;
+                }
+                if ( close < to ) {
+                    synonyms.add( decode( line, value + 1, close ) );
+                }
+            }
+        }
+    }
+
+    private void addLink( byte[] line, int from, int to ) {
+        final int end = endOfToken( line, from, to );
+        if ( end > from ) {
+            links.add( id );
+            links.add( decode( line, from, end ) );
+        }
+    }
+
+    ////////////////////////
+    // Byte level helpers
+
+    private static boolean isWhitespace( byte b ) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean equals( byte[] line, int from, int to, byte[] expected ) {
+        if ( to - from != expected.length ) {
+            return false;
+        }
+        for ( int i = 0; i < expected.length; i++ ) {
+            if ( line[from + i] != expected[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith( byte[] line, int from, int to, byte[] prefix ) {
+        return to - from >= prefix.length && equals( line, from, from + prefix.length, prefix );
+    }
+
+    private static boolean endsWith( byte[] line, int from, int to, byte[] suffix ) {
+        return to - from >= suffix.length && equals( line, to - suffix.length, to, suffix );
+    }
+
+    /**
+     * A token ends with a whitespace, a comment or trailing modifiers.
+     */
+    private static int endOfToken( byte[] line, int from, int to ) {
+        int i = from;
+        while ( i < to && !isWhitespace( line[i] ) && line[i] != '!' && line[i] != '{' ) {
+            i += line[i] == '\\' ? 2 : 1;
+        }
+        return Math.min( i, to );
+    }
+
+    /**
+     * An unquoted value ends with an unescaped comment, the trailing whitespaces being dropped.
+     */
+    private static int endOfUnquotedValue( byte[] line, int from, int to ) {
+        int i = from;
+        while ( i < to && line[i] != '!' ) {
+            i += line[i] == '\\' ? 2 : 1;
+        }
+        i = Math.min( i, to );
+        while ( i > from && isWhitespace( line[i - 1] ) ) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Decodes the UTF-8 bytes of a value, resolving the OBO escape sequences.
+     */
+    private String decode( byte[] line, int from, int to ) {
+        int escape = from;
+        while ( escape < to && line[escape] != '\\' ) {
+            escape++;
+        }
+        if ( escape == to ) {
+            return new String( line, from, to - from, StandardCharsets.UTF_8 );
+        }
+
+        if ( scratch.length < to - from ) {
+            scratch = new byte[( to - from ) * 2];
+        }
+        int length = 0;
+        for ( int i = from; i < to; i++ ) {
+            byte b = line[i];
+            if ( b == '\\' && i + 1 < to ) {
+                b = line[++i];
+                switch ( b ) {
+                    case 'n':
+                        b = '\n';
+                        break;
+                    case 't':
+                        b = '\t';
+                        break;
+                    case 'W':
+                        b = ' ';
+                        break;
+                    default:
+                        // \: \" \\ \! \{ ... stand for the character itself
+                }
+            }
+            scratch[length++] = b;
+        }
+        return new String( scratch, 0, length, StandardCharsets.UTF_8 );
+    }
+}
@@ -1,14 +1,14 @@
 package psidev.psi.tools.ontology_manager.impl.ols;
 
-import com.opensymphony.oscache.base.NeedsRefreshException;
-import com.opensymphony.oscache.general.GeneralCacheAdministrator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
 import psidev.psi.tools.ontology_manager.client.OlsClient;
 import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyAccessTemplate;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -18,6 +18,8 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Abstract ols ontology
@@ -30,15 +32,16 @@ import java.util.*;
  * @since <pre>01/11/11</pre>
  */
 
-public abstract class AbstractOlsOntology<T extends OntologyTermI> implements OntologyAccessTemplate<T>{
+public abstract class AbstractOlsOntology<T extends OntologyTermI> implements OntologyAccessTemplate<T>, Closeable {
     public static final Log log = LogFactory.getLog(OlsOntology.class);
 
-    protected GeneralCacheAdministrator admin; // the cache
+    protected volatile OlsQueryCache cache; // the cache, shared by all the threads
     protected static final String cacheConfig = "olsontology-oscache.properties";
     protected boolean useTermSynonyms = true; // flag whether term synonyms should be recorded
     protected OlsClient olsClient;
     protected String ontologyID;
     protected Set<String> rootAccs;
+    protected File ontologyDirectory; // where the results of the OLS queries are stored, if they are
 
     protected Date lastOntologyUpload;
 
@@ -54,6 +57,24 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
     protected final byte GET_TERM_FOR_ACCESSION = 9;
     protected final byte GET_METADATA_FOR_ACCESSION = 10;
     protected final byte GET_XREF_FOR_ACCESSION = 11;
+    protected final byte GET_SYNONYMS_FOR_ACCESSION = 12;
+
+    /**
+     * Maximum number of OLS queries run at the same time by the batch methods.
+     */
+    protected int queryParallelism = 8;
+
+    /**
+     * Set in the threads running the queries of a batch, so that the batches they start in turn run in those threads
+     * rather than fanning out again.
+     */
+    private static final ThreadLocal<Boolean> inBatch = new ThreadLocal<Boolean>();
+
+    /**
+     * Runs the queries of the batches of all the threads using this ontology, so that they share the query parallelism.
+     * Created on first use, its threads stop once idle.
+     */
+    private ThreadPoolExecutor queryExecutor;
 
     public AbstractOlsOntology() throws OntologyLoaderException {
         log.info( "Creating new OlsOntology..." );
@@ -78,24 +99,91 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
      * This will read the cache configuration file and initialise the cache.
      */
     private void initCache() {
-        log.info( "Setting up cache administrator..." );
-        Properties cacheProps;
+        log.info( "Setting up cache..." );
+        Properties cacheProps = new Properties();
         InputStream is = this.getClass().getClassLoader().getResourceAsStream( cacheConfig );
-        cacheProps = new Properties();
-        try {
-            cacheProps.load( is );
-        } catch ( IOException e ) {
-            log.error( "Failed to load cache configuration properties: " + cacheConfig, e );
+        if ( is != null ) {
+            try {
+                cacheProps.load( is );
+            } catch ( IOException e ) {
+                log.error( "Failed to load cache configuration properties: " + cacheConfig, e );
+            } finally {
+                try {
+                    is.close();
+                } catch ( IOException e ) {
+                    log.error( "Failed to close cache configuration properties: " + cacheConfig, e );
+                }
+            }
         }
         if ( cacheProps.isEmpty() ) {
             log.warn( "Using default cache configuration!" );
-            admin = new GeneralCacheAdministrator();
+            cache = new OlsQueryCache();
         } else {
             log.info( "Using custom cache configuration from file: " + cacheConfig );
-            admin = new GeneralCacheAdministrator( cacheProps );
+            try {
+                cache = OlsQueryCache.fromProperties( cacheProps );
+            } catch ( NumberFormatException e ) {
+                log.error( "Invalid cache configuration in file: " + cacheConfig + ", using default cache configuration.", e );
+                cache = new OlsQueryCache();
+            }
         }
     }
 
+    /**
+     * Bounds the cache of the OLS queries, discarding the queries cached so far.
+     *
+     * @param capacity the maximum number of cached queries, 0 or less for an unbounded cache.
+     * @param expiry   how long a query is cached, 0 or less for ever.
+     * @param unit     the unit of the expiry.
+     */
+    public void setCacheBounds( int capacity, long expiry, TimeUnit unit ) {
+        final OlsQueryCache bounded = new OlsQueryCache( capacity, expiry, unit );
+        bounded.setStore( cache.getStore() );
+        cache = bounded;
+    }
+
+    public int getQueryParallelism() {
+        return queryParallelism;
+    }
+
+    /**
+     * @param queryParallelism maximum number of OLS queries run at the same time by the batch methods, 1 to run them
+     *                         one after the other.
+     */
+    public void setQueryParallelism( int queryParallelism ) {
+        if ( queryParallelism < 1 ) {
+            throw new IllegalArgumentException( "The query parallelism must be at least 1: " + queryParallelism );
+        }
+        synchronized ( this ) {
+            this.queryParallelism = queryParallelism;
+            if ( queryExecutor != null ) {
+                if ( queryParallelism > queryExecutor.getMaximumPoolSize() ) {
+                    queryExecutor.setMaximumPoolSize( queryParallelism );
+                    queryExecutor.setCorePoolSize( queryParallelism );
+                } else {
+                    queryExecutor.setCorePoolSize( queryParallelism );
+                    queryExecutor.setMaximumPoolSize( queryParallelism );
+                }
+            }
+        }
+    }
+
+    private synchronized ExecutorService getQueryExecutor() {
+        if ( queryExecutor == null ) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            queryExecutor = new ThreadPoolExecutor( queryParallelism, queryParallelism, 30, TimeUnit.SECONDS,
+                                                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread( Runnable r ) {
+                    final Thread thread = new Thread( r, "ols-query-" + ontologyID + "-" + threadCount.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+            queryExecutor.allowCoreThreadTimeOut( true );
+        }
+        return queryExecutor;
+    }
+
     /**
      * @return true if synonyms for ontology terms are taken into account, false if not.
      */
@@ -107,13 +195,8 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
      * @param useTermSynonyms flag to toggle handling of ontology term synonyms.
      */
     public void setUseTermSynonyms(boolean useTermSynonyms) {
-        // if we did not record the term synonyms before, but now we are supposed to,
-        // then we have to reset the cache, so all terms get loaded again including synonyms.
-        if (!isUseTermSynonyms() && useTermSynonyms) {
-            admin.destroy();
-            initCache();
-        }
-        // in the other cases (using synonyms or switching off synonyms) we don't need to touch the cache
+        // the synonyms of the terms are only queried when read, so that the cache is still valid either way:
+        // the terms read so far keep their synonyms, the other ones get theirs when needed.
         this.useTermSynonyms = useTermSynonyms;
     }
 
@@ -126,17 +209,75 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         } catch ( RemoteException e ) {
             throw new IllegalStateException( "RemoteException while trying to connect to OLS." );
         }
+        openQueryStore();
         log.info( "Successfully created OlsOntology from values: ontology=" + ontologyID + " name=" + name
                 + " version=" + version + " format=" + format + " location=" + uri );
     }
 
     /**
-     * This method is not applicable for this implementation of the OntologyAccess interface.
-     * @param directory irrelevant.
+     * The results of the OLS queries are stored in this directory when the OntologyManagerContext is configured to
+     * store ontologies locally, so that they do not need to be queried again after a restart.
+     * @param directory where to store the results of the OLS queries.
      */
     public void setOntologyDirectory( File directory ) {
-        // not applicable
-        log.info( "setOntologyDirectory does not have any effect on the OlsOntology." );
+        if ( directory != null ) ontologyDirectory = directory;
+    }
+
+    /**
+     * Stores the results of the OLS queries in the ontology directory, if the OntologyManagerContext is configured to
+     * store ontologies locally. The stored results are used until OLS loads a new version of the ontology.
+     */
+    private void openQueryStore() {
+        closeQueryStore();
+
+        final OntologyManagerContext context = OntologyManagerContext.getInstance();
+        final File directory = ontologyDirectory != null ? ontologyDirectory : context.getOntologyDirectory();
+        if ( !context.isStoreOntologiesLocally() || directory == null ) {
+            return;
+        }
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            log.warn( "Cannot create the ontology directory " + directory.getAbsolutePath() + ", OLS results will not be stored." );
+            return;
+        }
+
+        final String loadDate;
+        try {
+            loadDate = olsClient.getOntologyLoadDate( ontologyID );
+        } catch ( RemoteException e ) {
+            log.warn( "Cannot access the date of the last update of " + ontologyID + ", OLS results will not be stored.", e );
+            return;
+        }
+        if ( loadDate == null ) {
+            return;
+        }
+        cache.setStore( OlsQueryStore.open( directory, this, ontologyID, loadDate ) );
+    }
+
+    /**
+     * Stops storing the results of the OLS queries, releasing the stored results so that another instance of this
+     * ontology can use them, and stops the threads running the batches. The ontology can still be queried, its results
+     * being only kept in memory then.
+     */
+    public void close() {
+        closeQueryStore();
+        synchronized ( this ) {
+            if ( queryExecutor != null ) {
+                queryExecutor.shutdown();
+                queryExecutor = null;
+            }
+        }
+    }
+
+    private void closeQueryStore() {
+        final OlsQueryStore<?> store = cache.getStore();
+        if ( store != null ) {
+            cache.setStore( null );
+            try {
+                store.close();
+            } catch ( IOException e ) {
+                log.warn( "Could not close the OLS results stored in " + store.getFile().getAbsolutePath(), e );
+            }
+        }
     }
 
 
@@ -191,9 +332,7 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         T term;
         if ( termName != null && termName.length() > 0 && !termName.equals( accession ) ) {
             term = createNewOntologyTerm( accession, termName );
-            if (useTermSynonyms) {
-                fetchTermSynonyms( term );
-            }
+            attachTermSynonyms( term );
         } else {
             term = null;
         }
@@ -203,12 +342,19 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
 
     protected abstract T createNewOntologyTerm(String identifier, String name);
 
-    private void fetchTermSynonyms( T term ) {
-        if (term == null) { return; }
-        // create a unique string for this query
-        // generate from from method specific ID, the ontology ID and the input parameter
-        final String myKey = GET_METADATA_FOR_ACCESSION + '_' + ontologyID + '_' + term.getTermAccession();
-        Map metadata = getAllTermSynonyms(term.getTermAccession());
+    /**
+     * Gives the term synonyms that are only queried when first read.
+     *
+     * @param term a term created from the results of an OLS query.
+     */
+    protected void attachTermSynonyms( T term ) {
+        term.setNameSynonyms( new OlsTermSynonyms( this, term.getTermAccession() ) );
+    }
+
+    private Set<String> getTermSynonymsUncached( String termAccession ) {
+        final Set<String> synonyms = new LinkedHashSet<>();
+        final Map metadata = getTermMetadataUncached( termAccession );
+        if (metadata == null) { return synonyms; }
 
         for ( Object k : metadata.keySet() ) {
             final String key = (String) k;
@@ -217,11 +363,32 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
                 Map value = (Map) metadata.get( k );
                 for(Object synonym : value.keySet()){
                     if( synonym != null ) {
-                        term.getNameSynonyms().add((String)synonym);
+                        synonyms.add((String)synonym);
                     }
                 }
             }
         }
+        return synonyms;
+    }
+
+    /**
+     * This method looks up the synonyms of a term.
+     * Note: this method is cached, the synonyms of the OLS terms are read through it when first used.
+     *
+     * @param termAccession the ontology term accession for which to look up the synonyms.
+     * @return the synonyms of the term, empty if OLS could not give them.
+     */
+    public Set<String> getTermSynonyms( String termAccession ) {
+        if (termAccession == null) { return Collections.emptySet(); }
+        // create a unique string for this query
+        // generate from from method specific ID, the ontology ID and the input parameter
+        final String myKey = GET_SYNONYMS_FOR_ACCESSION + '_' + ontologyID + '_' + termAccession;
+
+        return cache.get( myKey, new OlsQueryCache.Query<Set<String>>() {
+            public Set<String> run() {
+                return getTermSynonymsUncached( termAccession );
+            }
+        } );
     }
 
     private Map getTermMetadataUncached(String termAccession){
@@ -247,28 +414,11 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         // create a unique string for this query
         // generate from from method specific ID, the ontology ID and the input parameter
         final String myKey = GET_METADATA_FOR_ACCESSION + '_' + ontologyID + '_' + termAccession;
-        Map metadata;
-
-        try {
-            metadata = (Map) getFromCache(myKey);
-            if ( log.isDebugEnabled() ) log.debug( "Using cached terms for key: " + myKey );
-        } catch (NeedsRefreshException e) {
-            boolean updated = false;
-            // if not found in cache, use uncached method and store result in cache
-            try {
-                metadata = this.getTermMetadataUncached( termAccession );
-                if ( log.isDebugEnabled() ) log.debug( "Storing uncached terms for key: " + myKey );
-                putInCache( myKey, metadata );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Map>() {
+            public Map run() {
+                return getTermMetadataUncached( termAccession );
             }
-        }
-
-        return metadata;
+        } );
     }
 
     public Map getAllTermXrefs( String termAccession ) {
@@ -276,28 +426,11 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         // create a unique string for this query
         // generate from from method specific ID, the ontology ID and the input parameter
         final String myKey = GET_XREF_FOR_ACCESSION + '_' + ontologyID + '_' + termAccession;
-        Map xrefs;
-
-        try {
-            xrefs = (Map) getFromCache(myKey);
-            if ( log.isDebugEnabled() ) log.debug( "Using cached terms for key: " + myKey );
-        } catch (NeedsRefreshException e) {
-            boolean updated = false;
-            // if not found in cache, use uncached method and store result in cache
-            try {
-                xrefs = this.getAllTermXrefsUncached(termAccession);
-                if ( log.isDebugEnabled() ) log.debug( "Storing uncached terms for key: " + myKey );
-                putInCache( myKey, xrefs );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Map>() {
+            public Map run() {
+                return getAllTermXrefsUncached( termAccession );
             }
-        }
-
-        return xrefs;
+        } );
     }
 
     private Map getAllTermXrefsUncached(String termAccession){
@@ -318,35 +451,6 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         return null;
     }
 
-    /**
-     * The method is synchronized to avoid concurrent access/modification when accessing the cache
-     * @param myKey : the key to find in the cache
-     * @return the object associated with this key in the cache.
-     * @throws NeedsRefreshException : the key doesn't exist in the cache or is outdated
-     */
-    private synchronized Object getFromCache( String myKey ) throws NeedsRefreshException {
-        return admin.getFromCache( myKey );
-    }
-
-    /**
-     * The method will put the key associated with an object in the cache of this OlsOntology
-     * The method is synchronized to avoid concurrent access/modification when accessing the cache
-     * @param myKey : the key to put in the cache
-     * @param result : the associated object to put in the cache
-     */
-    private synchronized void putInCache( String myKey, Object result ) {
-        admin.putInCache( myKey, result );
-    }
-
-    /**
-     * Cancel any update for this key in the cache
-     * The method is synchronized to avoid concurrent access/modification when accessing the cache
-     * @param myKey : the key to find in the cache
-     */
-    private synchronized void cancelUpdate(String myKey){
-        admin.cancelUpdate( myKey );
-    }
-
     /**
      * This method is used to create a full OntologyTermI
      * from the given accession via using the OLS service.
@@ -361,27 +465,11 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         // generate from from method specific ID, the ontology ID and the input parameter
         final String myKey = GET_TERM_FOR_ACCESSION + '_' + ontologyID + '_' + accession;
 
-        T result;
-        // try to get the result from the cache
-        try {
-            result = (T) getFromCache(myKey);
-            if ( log.isDebugEnabled() ) log.debug( "Using cached terms for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            // if not found in cache, use uncached method and store result in cache
-            try {
-                result = this.getTermForAccessionUncached( accession );
-                if ( log.isDebugEnabled() ) log.debug( "Storing uncached terms for key: " + myKey );
-                putInCache( myKey, result );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<T>() {
+            public T run() {
+                return getTermForAccessionUncached( accession );
             }
-        }
-        return result;
+        } );
     }
 
     /**
@@ -417,27 +505,11 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         // generate from from method specific ID, the ontology ID and the input parameter
         String myKey = IS_OBSOLETE + '_' + ontologyID + '_' + term.getTermAccession();
 
-        boolean result;
-        // try to get the result from the cache
-        try {
-            result = ( Boolean ) getFromCache( myKey );
-            log.debug( "Using cached terms for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            // if not found in cache, use uncached method and store result in cache
-            try {
-                result = this.isObsoleteUncached( term );
-                log.debug( "Storing uncached terms for key: " + myKey );
-                putInCache( myKey, result );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Boolean>() {
+            public Boolean run() {
+                return isObsoleteUncached( term );
             }
-        }
-        return result;
+        } );
     }
 
     /**
@@ -474,27 +546,11 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         // generate from from method specific ID, the ontology ID and the input parameter
         String myKey = GET_DIRECT_PARENTS + '_' + ontologyID + '_' + term.getTermAccession();
 
-        Set<T> result;
-        // try to get the result from the cache
-        try {
-            result = ( Set<T> ) getFromCache( myKey );
-            log.debug( "Using cached terms for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            // if not found in cache, use uncached method and store result in cache
-            try {
-                result = this.getDirectParentsUncached( term );
-                log.debug( "Storing uncached terms for key: " + myKey );
-                putInCache( myKey, result );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Set<T>>() {
+            public Set<T> run() {
+                return getDirectParentsUncached( term );
             }
-        }
-        return result;
+        } );
     }
 
     /**
@@ -532,6 +588,37 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         }
     }
 
+    /**
+     * Tells if a term is a descendant of another one by walking up from the child through its direct parents, which
+     * usually takes a handful of cached queries, rather than downloading all the children of the ancestor.
+     *
+     * @param child    the potential descendant.
+     * @param ancestor the potential ancestor.
+     * @return true if ancestor can be reached from child by following child to parent links.
+     */
+    @Override
+    public boolean isDescendantOf( T child, T ancestor ) {
+        if ( child == null || ancestor == null ) {
+            return false;
+        }
+        final String ancestorAccession = ancestor.getTermAccession();
+        final Set<String> visited = new HashSet<>();
+        final Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.add( child.getTermAccession() );
+        while ( !toVisit.isEmpty() ) {
+            for ( String parent : getDirectParentsIDs( toVisit.poll() ) ) {
+                if ( ancestorAccession.equals( parent ) ) {
+                    return true;
+                }
+                // a parent reached through several paths is only walked up once, and nothing is above the root terms
+                if ( visited.add( parent ) && !rootAccs.contains( parent ) ) {
+                    toVisit.add( parent );
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Method to retrieve child terms of the specified ontology term.
      * Note: this method is uncached.
@@ -574,33 +661,17 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
      * @param level up to which level in depth to search for children (note: -1 will get ALL children)
      * @return a Set containing the child terms of the specified term or null if the term is invalid.
      */
-    public synchronized Set<T> getChildren( T term, int level ) {
+    public Set<T> getChildren( T term, int level ) {
         if (term == null) { return null; }
         // create a unique string for this query
         // generate from from method specific ID, the ontology ID and the input parameter
         String myKey = GET_CHILDREN + '_' + ontologyID + '_' + term.getTermAccession() + '_' + level;
 
-        Set<T> result;
-        // try to get the result from the cache
-        try {
-            result = ( Set<T> ) admin.getFromCache( myKey );
-            log.debug( "Using cached terms for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            // if not found in cache, use uncached method and store result in cache
-            try {
-                result = this.getChildrenUncached( term, level );
-                log.debug( "Storing uncached terms for key: " + myKey );
-                admin.putInCache( myKey, result );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    admin.cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Set<T>>() {
+            public Set<T> run() {
+                return getChildrenUncached( term, level );
             }
-        }
-        return result;
+        } );
     }
 
     /**
@@ -631,9 +702,7 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
             Object v = results.get( o );
             if ( o instanceof String && v instanceof String ) {
                 final T term = createNewOntologyTerm( ( String ) o, ( String ) v );
-                if (useTermSynonyms) {
-                    fetchTermSynonyms( term );
-                }
+                attachTermSynonyms( term );
                 terms.add( term );
             } else {
                 throw new IllegalStateException( "OLS query returned unexpected result!" +
@@ -645,6 +714,194 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
         return terms;
     }
 
+    ////////////////////////
+    // Batches
+
+    /**
+     * Runs the given queries with at most #getQueryParallelism() of them at the same time, whatever the number of threads
+     * running batches on this ontology: they all share the same threads. The queries started by the given ones run in
+     * the same thread, so that the number of queries sent to OLS at the same time stays bounded.
+     *
+     * @param queries the queries to run.
+     * @return the results of the queries, in the same order.
+     * @throws IllegalStateException if a query failed, the failures of the other queries being suppressed.
+     */
+    protected <R> List<R> runQueries( List<Callable<R>> queries ) {
+        final List<R> results = new ArrayList<R>( queries.size() );
+        if ( queries.size() <= 1 || queryParallelism <= 1 || inBatch.get() != null ) {
+            for ( Callable<R> query : queries ) {
+                try {
+                    results.add( query.call() );
+                } catch ( RuntimeException e ) {
+                    throw e;
+                } catch ( Exception e ) {
+                    throw new IllegalStateException( e );
+                }
+            }
+            return results;
+        }
+
+        final ExecutorService executor = getQueryExecutor();
+        final List<Future<R>> futures = new ArrayList<Future<R>>( queries.size() );
+        try {
+            for ( final Callable<R> query : queries ) {
+                futures.add( executor.submit( new Callable<R>() {
+                    public R call() throws Exception {
+                        inBatch.set( Boolean.TRUE );
+                        try {
+                            return query.call();
+                        } finally {
+                            inBatch.remove();
+                        }
+                    }
+                } ) );
+            }
+
+            RuntimeException failure = null;
+            int failures = 0;
+            for ( Future<R> future : futures ) {
+                try {
+                    results.add( future.get() );
+                } catch ( ExecutionException e ) {
+                    results.add( null );
+                    failures++;
+                    final Throwable cause = e.getCause();
+                    if ( failure == null ) {
+                        failure = cause instanceof RuntimeException ? ( RuntimeException ) cause : new IllegalStateException( cause );
+                    } else {
+                        failure.addSuppressed( cause );
+                    }
+                }
+            }
+            if ( failure != null ) {
+                log.error( "Failed " + failures + " of " + queries.size() + " OLS queries in " + ontologyID );
+                throw failure;
+            }
+            return results;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while querying OLS for " + ontologyID, e );
+        } finally {
+            // the executor is shared, only the queries of this batch that are left are cancelled
+            for ( Future<R> future : futures ) {
+                future.cancel( true );
+            }
+        }
+    }
+
+    /**
+     * Looks up many accessions at once, the queries being run in parallel.
+     *
+     * @param accessions the ontology term accessions to look up.
+     * @return the terms found, by accession, in the order of the given accessions.
+     */
+    public Map<String, T> getTermsForAccessions( Collection<String> accessions ) {
+        final List<String> distinct = new ArrayList<String>( new LinkedHashSet<String>( accessions ) );
+        final List<Callable<T>> queries = new ArrayList<Callable<T>>( distinct.size() );
+        for ( final String accession : distinct ) {
+            queries.add( new Callable<T>() {
+                public T call() {
+                    return getTermForAccession( accession );
+                }
+            } );
+        }
+
+        final List<T> terms = runQueries( queries );
+        final Map<String, T> found = new LinkedHashMap<String, T>( distinct.size() * 4 / 3 + 1 );
+        for ( int i = 0; i < distinct.size(); i++ ) {
+            if ( terms.get( i ) != null ) {
+                found.put( distinct.get( i ), terms.get( i ) );
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Looks up all the children of many terms at once, the queries being run in parallel.
+     *
+     * @param terms the ontology terms to get the child terms for.
+     * @return all the child terms of each given term.
+     */
+    public Map<T, Set<T>> getAllChildrenOf( Collection<T> terms ) {
+        final List<T> distinct = new ArrayList<T>( new LinkedHashSet<T>( terms ) );
+        final List<Callable<Set<T>>> queries = new ArrayList<Callable<Set<T>>>( distinct.size() );
+        for ( final T term : distinct ) {
+            queries.add( new Callable<Set<T>>() {
+                public Set<T> call() {
+                    return getAllChildren( term );
+                }
+            } );
+        }
+
+        final List<Set<T>> children = runQueries( queries );
+        final Map<T, Set<T>> found = new LinkedHashMap<T, Set<T>>( distinct.size() * 4 / 3 + 1 );
+        for ( int i = 0; i < distinct.size(); i++ ) {
+            found.put( distinct.get( i ), children.get( i ) );
+        }
+        return found;
+    }
+
+    /**
+     * Queries the synonyms of many terms at once rather than when each of them is first read, the queries being run in
+     * parallel.
+     *
+     * @param terms the ontology terms whose synonyms are about to be used.
+     */
+    public void fetchTermSynonyms( Collection<T> terms ) {
+        final List<Callable<Void>> queries = new ArrayList<Callable<Void>>( terms.size() );
+        for ( final T term : terms ) {
+            queries.add( new Callable<Void>() {
+                public Void call() {
+                    final Collection<String> synonyms = term.getNameSynonyms();
+                    if ( synonyms instanceof OlsTermSynonyms ) {
+                        ( ( OlsTermSynonyms ) synonyms ).resolve();
+                    } else {
+                        synonyms.addAll( getTermSynonyms( term.getTermAccession() ) );
+                    }
+                    return null;
+                }
+            } );
+        }
+        runQueries( queries );
+    }
+
+    /**
+     * Runs in parallel the queries the validator needs for the given accessions: the terms, whether they are obsolete,
+     * their direct children and, if asked, all their children. The results are then cached.
+     *
+     * @param accessions    the ontology term accessions about to be used.
+     * @param allowChildren whether all the children of the terms are about to be used.
+     */
+    @Override
+    public void prefetch( Collection<String> accessions, boolean allowChildren ) {
+        final Collection<T> terms = getTermsForAccessions( accessions ).values();
+
+        final List<Callable<Object>> queries = new ArrayList<Callable<Object>>( terms.size() * 3 );
+        for ( final T term : terms ) {
+            queries.add( new Callable<Object>() {
+                public Object call() {
+                    return isObsolete( term );
+                }
+            } );
+            queries.add( new Callable<Object>() {
+                public Object call() {
+                    return getDirectChildren( term );
+                }
+            } );
+            if ( allowChildren ) {
+                queries.add( new Callable<Object>() {
+                    public Object call() {
+                        return getAllChildren( term );
+                    }
+                } );
+            }
+        }
+        runQueries( queries );
+        if ( log.isInfoEnabled() ) {
+            log.info( "Prefetched " + terms.size() + " terms of " + ontologyID + ( allowChildren ? " with their children" : "" ) );
+        }
+    }
+
     // This has issues finding all the child terms if the tree changes relationship types -> use getValidIDs2
     @Deprecated
     public Set<String> getValidIDsOld( String id, boolean allowChildren, boolean useTerm ) {
@@ -707,36 +964,16 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
     }
 
     @Deprecated
-    public synchronized Set<String> getValidIDs( String queryTerm, boolean allowChildren, boolean useTerm ) {
-        Set<String> terms; // to store the results
-
+    public Set<String> getValidIDs( String queryTerm, boolean allowChildren, boolean useTerm ) {
         // create unique string for this query
         String queryGroup = "getValidIDs_query";
         String myKey = queryGroup + "_" + ontologyID + "_" + queryTerm + "_" + allowChildren + "_" + useTerm;
 
-        String[] groups = {queryGroup};
-        try {
-            // Get from the cache
-            terms = ( Set<String> ) admin.getFromCache( myKey );
-            log.debug( "Using cached terms for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            try {
-                // result of this query not in cache, get it from the un-cached method
-                //terms = this.getValidIDs2( queryTerm, allowChildren, useTerm );
-                terms = this.getValidIDsOld( queryTerm, allowChildren, useTerm );
-                log.debug( "Storing uncached terms with key: " + myKey );
-                // store in the cache
-                admin.putInCache( myKey, terms, groups );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    admin.cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Set<String>>() {
+            public Set<String> run() {
+                return getValidIDsOld( queryTerm, allowChildren, useTerm );
             }
-        }
-        return terms;
+        } );
     }
 
     @Deprecated
@@ -758,36 +995,16 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
     }
 
     @Deprecated
-    public synchronized boolean isObsoleteID( String id ) {
-        Boolean result;
-
+    public boolean isObsoleteID( String id ) {
         // create unique string for this query
         String queryGroup = "isObsoleteID_query";
         String myKey = queryGroup + "_" + ontologyID + "_" + id;
 
-        String[] groups = {queryGroup};
-        try {
-            // Get from the cache
-            result = ( Boolean ) admin.getFromCache( myKey );
-            log.debug( "Using cached term for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            try {
-                // result of this query not in cache, get it from the un-cached method
-                result = this.isObsoleteIDUncached( id );
-                log.debug( "Storing uncached term with key: " + myKey );
-                // Store in the cache
-                admin.putInCache( myKey, result, groups );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    admin.cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Boolean>() {
+            public Boolean run() {
+                return isObsoleteIDUncached( id );
             }
-        }
-        return result;
+        } );
     }
 
     @Deprecated
@@ -803,36 +1020,16 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
     }
 
     @Deprecated
-    public synchronized String getTermNameByID( String id ) {
-        String result;
-
+    public String getTermNameByID( String id ) {
         // create unique string for this query
         String queryGroup = "getTermNameByID_query";
         String myKey = queryGroup + "_" + ontologyID + "_" + id;
 
-        String[] groups = {queryGroup};
-        try {
-            // Get from the cache
-            result = ( String ) admin.getFromCache( myKey );
-            log.debug( "Using cached term name for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            try {
-                // result of this query not in cache, get it from the un-cached method
-                result = this.getTermNameByIDUncached( id );
-                log.debug( "Storing uncached term name with key: " + myKey );
-                // Store in the cache
-                admin.putInCache( myKey, result, groups );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    admin.cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<String>() {
+            public String run() {
+                return getTermNameByIDUncached( id );
             }
-        }
-        return result;
+        } );
     }
 
     @Deprecated
@@ -847,35 +1044,16 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
     }
 
     @Deprecated
-    public synchronized Set<String> getDirectParentsIDs( String id ) {
-        Set<String> result;
-
+    public Set<String> getDirectParentsIDs( String id ) {
         // create unique string for this query
         String queryGroup = "getDirectParentsIDs_query";
         String myKey = queryGroup + "_" + ontologyID + "_" + id;
 
-        String[] groups = {queryGroup};
-        try {
-            // Get from the cache
-            result = ( Set<String> ) admin.getFromCache( myKey );
-            log.debug( "Using cached terms for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            try {
-                // result of this query not in cache, get it from the un-cached method
-                result = this.getDirectParentsIDsUncached( id );
-                log.debug( "Storing uncached terms with key: " + myKey );
-                // Store in the cache
-                admin.putInCache( myKey, result, groups );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the cached content could not be rebuilt
-                    admin.cancelUpdate( myKey );
-                }
+        return cache.get( myKey, new OlsQueryCache.Query<Set<String>>() {
+            public Set<String> run() {
+                return getDirectParentsIDsUncached( id );
             }
-        }
-        return result;
+        } );
     }
 
     @Deprecated
@@ -903,36 +1081,28 @@ public abstract class AbstractOlsOntology<T extends OntologyTermI> implements On
     }
 
     @Deprecated
-    private synchronized Set<String> getChildTerms( String id ) throws RemoteException {
-        Set<String> result;
-
+    private Set<String> getChildTerms( String id ) throws RemoteException {
         // create unique string for this query
         String queryGroup = "getChildTerms_query";
         String myKey = queryGroup + "_" + ontologyID + "_" + id;
 
-        String[] groups = {queryGroup};
         try {
-            // Get from the cache
-            result = ( Set<String> ) admin.getFromCache( myKey );
-            log.debug( "Using cached terms for key: " + myKey );
-        } catch ( NeedsRefreshException nre ) {
-            boolean updated = false;
-            try {
-                // result of this query not in cache, get it from the un-cached method
-                result = this.getChildTermsUncached( id );
-                log.debug( "Storing uncached terms for key: " + myKey );
-                // Store in the cache
-                admin.putInCache( myKey, result, groups );
-                updated = true;
-            } finally {
-                if ( !updated ) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    admin.cancelUpdate( myKey );
+            return cache.get( myKey, new OlsQueryCache.Query<Set<String>>() {
+                public Set<String> run() {
+                    try {
+                        return getChildTermsUncached( id );
+                    } catch ( RemoteException e ) {
+                        // carried through the cache, so that the threads waiting for this query get it as well
+                        throw new IllegalStateException( "RemoteException while trying to connect to OLS.", e );
+                    }
                 }
+            } );
+        } catch ( IllegalStateException e ) {
+            if ( e.getCause() instanceof RemoteException ) {
+                throw ( RemoteException ) e.getCause();
             }
+            throw e;
         }
-        return result;
     }
 
     /**
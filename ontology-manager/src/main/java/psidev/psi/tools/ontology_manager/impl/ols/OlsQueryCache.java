@@ -0,0 +1,303 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of the results of the OLS queries, keyed by query.
+ * <p/>
+ * Hits only read a concurrent map, so that any number of threads can use the cache at the same time. The first thread
+ * missing a key runs the query while the other threads asking for the same key wait for its result, so that a given
+ * query is sent to OLS only once however many threads need it. No monitor is held while waiting or querying OLS.
+ * <p/>
+ * The cache may be bounded in size, the least recently used entries being evicted once the capacity is exceeded, and in
+ * time, entries being queried again once expired.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OlsQueryCache {
+
+    public static final Log log = LogFactory.getLog( OlsQueryCache.class );
+
+    /**
+     * Property giving the maximum number of entries in the cache, unbounded if not given.
+     */
+    public static final String CAPACITY = "cache.capacity";
+
+    /**
+     * Property giving the number of seconds after which an entry is queried again, never if not given.
+     */
+    public static final String EXPIRY = "cache.expiry";
+
+    /**
+     * A query whose result is to be cached.
+     */
+    public interface Query<V> {
+
+        /**
+         * @return the result of the query, may be null.
+         */
+        V run();
+    }
+
+    private static class Entry {
+        private final CompletableFuture<Object> result = new CompletableFuture<Object>();
+        private volatile long expiresAt;
+        private volatile long lastAccess;
+    }
+
+    /**
+     * An entry that may be evicted, with its last access time read once: other threads keep updating the access times
+     * of the entries while they are sorted, which the sort must not see.
+     */
+    private static class Candidate {
+        private final String key;
+        private final Entry entry;
+        private final long lastAccess;
+
+        private Candidate( String key, Entry entry ) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final int capacity;
+
+    private final long expiryNanos;
+
+    /**
+     * Only one thread evicts at a time, the others carry on without waiting.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Where the results are kept across restarts, if any.
+     */
+    private volatile OlsQueryStore<?> store;
+
+    /**
+     * @param capacity the maximum number of entries, 0 or less for an unbounded cache.
+     * @param expiry   how long an entry is kept, 0 or less for ever.
+     * @param unit     the unit of the expiry.
+     */
+    public OlsQueryCache( int capacity, long expiry, TimeUnit unit ) {
+        this.capacity = capacity;
+        this.expiryNanos = expiry > 0 ? unit.toNanos( expiry ) : 0;
+    }
+
+    /**
+     * Creates an unbounded cache whose entries never expire.
+     */
+    public OlsQueryCache() {
+        this( 0, 0, TimeUnit.SECONDS );
+    }
+
+    /**
+     * @param properties the cache configuration, see #CAPACITY and #EXPIRY.
+     * @return a cache configured from the given properties.
+     * @throws IllegalArgumentException if a property is not a number.
+     */
+    public static OlsQueryCache fromProperties( Properties properties ) {
+        return new OlsQueryCache( Integer.parseInt( properties.getProperty( CAPACITY, "0" ).trim() ),
+                                  Long.parseLong( properties.getProperty( EXPIRY, "0" ).trim() ), TimeUnit.SECONDS );
+    }
+
+    /**
+     * Gets the cached result of a query, running the query if needed.
+     * <p/>
+     * If another thread is running the same query, the result of that thread is awaited rather than querying again. A
+     * query that failed is not cached, the threads that were waiting for its result get the same exception.
+     *
+     * @param key   the key of the query.
+     * @param query the query to run if no result is cached for the key.
+     * @return the result of the query.
+     */
+    @SuppressWarnings( "unchecked" )
+    public <V> V get( String key, Query<V> query ) {
+        while ( true ) {
+            Entry entry = entries.get( key );
+            if ( entry == null ) {
+                final Entry created = new Entry();
+                entry = entries.putIfAbsent( key, created );
+                if ( entry == null ) {
+                    return ( V ) load( key, created, query );
+                }
+            }
+
+            final long now = System.nanoTime();
+            if ( entry.result.isDone() && expiryNanos > 0 && now - entry.expiresAt > 0 ) {
+                // expired, the first thread to remove it queries again
+                if ( log.isDebugEnabled() ) log.debug( "Expired cache entry for key: " + key );
+                entries.remove( key, entry );
+                continue;
+            }
+
+            entry.lastAccess = now;
+            if ( log.isDebugEnabled() ) log.debug( "Using cached result for key: " + key );
+            try {
+                return ( V ) entry.result.join();
+            } catch ( CompletionException e ) {
+                throw rethrow( e.getCause() );
+            }
+        }
+    }
+
+    private Object load( String key, Entry entry, Query<?> query ) {
+        final Object result;
+        try {
+            result = run( key, query );
+        } catch ( RuntimeException e ) {
+            entries.remove( key, entry );
+            entry.result.completeExceptionally( e );
+            throw e;
+        } catch ( Error e ) {
+            entries.remove( key, entry );
+            entry.result.completeExceptionally( e );
+            throw e;
+        }
+
+        final long now = System.nanoTime();
+        entry.expiresAt = now + expiryNanos;
+        entry.lastAccess = now;
+        entry.result.complete( result );
+
+        if ( capacity > 0 && entries.size() > capacity ) {
+            evict();
+        }
+        return result;
+    }
+
+    private Object run( String key, Query<?> query ) {
+        final OlsQueryStore<?> store = this.store;
+        if ( store != null && store.contains( key ) ) {
+            try {
+                if ( log.isDebugEnabled() ) log.debug( "Using stored result for key: " + key );
+                return store.get( key );
+            } catch ( IOException e ) {
+                log.warn( "Could not read the stored result for key: " + key + ", running the query again", e );
+            }
+        }
+
+        if ( log.isDebugEnabled() ) log.debug( "Running query for key: " + key );
+        final Object result = query.run();
+        if ( store != null ) {
+            store.put( key, result );
+        }
+        return result;
+    }
+
+    private static RuntimeException rethrow( Throwable t ) {
+        if ( t instanceof Error ) {
+            throw ( Error ) t;
+        }
+        if ( t instanceof RuntimeException ) {
+            return ( RuntimeException ) t;
+        }
+        return new IllegalStateException( t );
+    }
+
+    /**
+     * Evicts the least recently used entries, down to 90% of the capacity so that the cost of sorting the entries is
+     * shared by many insertions. Threads adding entries while another one evicts leave the eviction to it, which checks
+     * the size again once done.
+     */
+    private void evict() {
+        boolean evicted;
+        do {
+            if ( !evictionLock.tryLock() ) {
+                return;
+            }
+            try {
+                evicted = evictOnce();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while ( evicted && entries.size() > capacity );
+    }
+
+    /**
+     * @return true if some entries were evicted.
+     */
+    private boolean evictOnce() {
+        final int excess = entries.size() - capacity * 9 / 10;
+        if ( excess <= 0 ) {
+            return false;
+        }
+
+        final List<Candidate> done = new ArrayList<Candidate>( entries.size() );
+        for ( Map.Entry<String, Entry> e : entries.entrySet() ) {
+            // queries in flight are never evicted, so that their waiting threads are not left aside
+            if ( e.getValue().result.isDone() ) {
+                done.add( new Candidate( e.getKey(), e.getValue() ) );
+            }
+        }
+        Collections.sort( done, new Comparator<Candidate>() {
+            public int compare( Candidate c1, Candidate c2 ) {
+                return Long.signum( c1.lastAccess - c2.lastAccess );
+            }
+        } );
+
+        final int count = Math.min( excess, done.size() );
+        for ( int i = 0; i < count; i++ ) {
+            entries.remove( done.get( i ).key, done.get( i ).entry );
+        }
+        if ( log.isDebugEnabled() ) log.debug( "Evicted " + count + " cache entries" );
+        return count > 0;
+    }
+
+    /**
+     * @param store where the results are kept across restarts, null to only keep them in memory.
+     */
+    void setStore( OlsQueryStore<?> store ) {
+        this.store = store;
+    }
+
+    OlsQueryStore<?> getStore() {
+        return store;
+    }
+
+    /**
+     * Removes the cached result of a query.
+     *
+     * @param key the key of the query.
+     */
+    public void remove( String key ) {
+        entries.remove( key );
+    }
+
+    /**
+     * Removes all the cached results. Queries in flight still give their result to the threads waiting for them.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries, including queries in flight.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
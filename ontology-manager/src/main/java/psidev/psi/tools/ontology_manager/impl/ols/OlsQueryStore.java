@@ -0,0 +1,424 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only log of the results of the OLS queries of an ontology, so that they survive a restart.
+ * <p/>
+ * The log is stored in the ontology directory under the ID of the ontology, and it is only used if its header matches
+ * the load date OLS gives for that ontology: once OLS loads a new version of the ontology, the log is started again.
+ * Only the position of each result is kept in memory, results being read back from the log when the OlsQueryCache
+ * misses them.
+ * <p/>
+ * Terms are stored with their accession and name, and created again by the ontology when read. Their synonyms are only
+ * queried when first used, and stored on their own. Results of other types than terms, strings, booleans and sets of
+ * those are not stored.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+class OlsQueryStore<T extends OntologyTermI> implements Closeable {
+
+    public static final Log log = LogFactory.getLog( OlsQueryStore.class );
+
+    private static final int MAGIC = 0x4f4c5351; // "OLSQ"
+
+    /**
+     * To be incremented whenever the layout of the log changes.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String SUFFIX = ".ols-cache";
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte STRING = 2;
+    private static final byte STRINGS = 3;
+    private static final byte TERM = 4;
+    private static final byte TERMS = 5;
+
+    private final AbstractOlsOntology<T> ontology;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final FileLock lock;
+
+    /**
+     * Position of the record of each stored query.
+     */
+    private final ConcurrentMap<String, Long> positions = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Records are appended one at a time.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private volatile boolean closed;
+
+    private OlsQueryStore( AbstractOlsOntology<T> ontology, File file, FileChannel channel, FileLock lock ) {
+        this.ontology = ontology;
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens the log of an ontology, starting it again if it was written for another load date.
+     *
+     * @param directory  the directory where logs are stored.
+     * @param ontology   the ontology creating the terms read back.
+     * @param ontologyID the ID of the ontology in OLS.
+     * @param loadDate   the date OLS loaded the ontology.
+     * @return the log, or null if it cannot be used, for instance because another ontology is using it.
+     */
+    static <T extends OntologyTermI> OlsQueryStore<T> open( File directory, AbstractOlsOntology<T> ontology,
+                                                            String ontologyID, String loadDate ) {
+        final File file = new File( directory, ontologyID.replaceAll( "[^\\w.-]", "_" ) + SUFFIX );
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+            final FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch ( OverlappingFileLockException e ) {
+                log.info( "The OLS cache " + file.getAbsolutePath() + " is already used in this JVM, it will not be used" );
+                channel.close();
+                return null;
+            }
+            if ( lock == null ) {
+                log.info( "The OLS cache " + file.getAbsolutePath() + " is used by another process, it will not be used" );
+                channel.close();
+                return null;
+            }
+
+            final OlsQueryStore<T> store = new OlsQueryStore<T>( ontology, file, channel, lock );
+            store.init( ontologyID, loadDate );
+            return store;
+        } catch ( IOException e ) {
+            log.warn( "Could not open the OLS cache " + file.getAbsolutePath() + ", it will not be used", e );
+            if ( channel != null ) {
+                try {
+                    channel.close();
+                } catch ( IOException ioe ) {
+                    log.warn( "Could not close the OLS cache " + file.getAbsolutePath(), ioe );
+                }
+            }
+            return null;
+        }
+    }
+
+    private void init( String ontologyID, String loadDate ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream header = new DataOutputStream( bytes );
+        header.writeInt( MAGIC );
+        header.writeInt( FORMAT_VERSION );
+        writeString( header, ontologyID );
+        writeString( header, loadDate );
+        header.close();
+        final byte[] expected = bytes.toByteArray();
+
+        final ByteBuffer actual = ByteBuffer.allocate( expected.length );
+        readFully( actual, 0 );
+        if ( actual.hasRemaining() || !Arrays.equals( expected, actual.array() ) ) {
+            if ( channel.size() > 0 && log.isInfoEnabled() ) {
+                log.info( "Starting the stale OLS cache " + file.getAbsolutePath() + " again for the load date " + loadDate );
+            }
+            channel.truncate( 0 );
+            channel.write( ByteBuffer.wrap( expected ), 0 );
+            return;
+        }
+
+        // index the records through the locked channel, dropping the last one if it was not completely written
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream( Channels.newInputStream( channel.position( expected.length ) ), 65536 ) );
+        long position = expected.length;
+        while ( true ) {
+            final int length;
+            try {
+                length = in.readInt();
+            } catch ( EOFException e ) {
+                break;
+            }
+            if ( length < 0 || length > channel.size() - position - 4 ) {
+                break;
+            }
+            final byte[] record = new byte[length];
+            try {
+                in.readFully( record );
+            } catch ( EOFException e ) {
+                break;
+            }
+            final String key = readString( new DataInputStream( new ByteArrayInputStream( record ) ) );
+            positions.put( key, position );
+            position += 4 + length;
+        }
+        if ( position < channel.size() ) {
+            log.warn( "Dropping the incomplete end of the OLS cache " + file.getAbsolutePath() );
+            channel.truncate( position );
+        }
+        if ( log.isInfoEnabled() ) {
+            log.info( "Using the OLS cache " + file.getAbsolutePath() + " with " + positions.size() + " stored queries" );
+        }
+    }
+
+    private void readFully( ByteBuffer buffer, long position ) throws IOException {
+        while ( buffer.hasRemaining() ) {
+            final int read = channel.read( buffer, position + buffer.position() );
+            if ( read < 0 ) {
+                break;
+            }
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of stored queries.
+     */
+    int size() {
+        return positions.size();
+    }
+
+    /**
+     * @param key the key of a query.
+     * @return true if the result of the query is stored.
+     */
+    boolean contains( String key ) {
+        return positions.containsKey( key );
+    }
+
+    /**
+     * @param key the key of a stored query.
+     * @return the stored result.
+     * @throws IOException if the result could not be read.
+     */
+    Object get( String key ) throws IOException {
+        final Long position = positions.get( key );
+        if ( position == null ) {
+            throw new IllegalArgumentException( "No result stored for the query " + key );
+        }
+
+        final ByteBuffer length = ByteBuffer.allocate( 4 );
+        readFully( length, position );
+        final ByteBuffer record = ByteBuffer.allocate( length.getInt( 0 ) );
+        readFully( record, position + 4 );
+        if ( record.hasRemaining() ) {
+            throw new EOFException( "Truncated record for the query " + key + " in " + file.getAbsolutePath() );
+        }
+
+        final DataInputStream in = new DataInputStream( new ByteArrayInputStream( record.array() ) );
+        readString( in ); // the key
+        switch ( in.readByte() ) {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return readString( in );
+            case STRINGS: {
+                final int count = in.readInt();
+                final Set<String> strings = new LinkedHashSet<String>( count * 2 );
+                for ( int i = 0; i < count; i++ ) {
+                    strings.add( readString( in ) );
+                }
+                return strings;
+            }
+            case TERM:
+                return readTerm( in );
+            case TERMS: {
+                final int count = in.readInt();
+                final Set<T> terms = new HashSet<T>( count * 2 );
+                for ( int i = 0; i < count; i++ ) {
+                    terms.add( readTerm( in ) );
+                }
+                return terms;
+            }
+            default:
+                throw new IOException( "Unknown record type for the query " + key + " in " + file.getAbsolutePath() );
+        }
+    }
+
+    /**
+     * Appends the result of a query, unless it is already stored or cannot be stored. Failures are only logged, the
+     * log not being used anymore.
+     *
+     * @param key    the key of the query.
+     * @param result the result of the query.
+     */
+    void put( String key, Object result ) {
+        if ( closed || positions.containsKey( key ) ) {
+            return;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+        final DataOutputStream out = new DataOutputStream( bytes );
+        try {
+            out.writeInt( 0 ); // length of the record, set below
+            writeString( out, key );
+            if ( !writeValue( out, result ) ) {
+                return;
+            }
+            out.close();
+        } catch ( IOException e ) {
+            // not thrown when writing to memory
+            throw new IllegalStateException( e );
+        }
+        final ByteBuffer record = ByteBuffer.wrap( bytes.toByteArray() );
+        record.putInt( 0, record.capacity() - 4 );
+
+        appendLock.lock();
+        try {
+            if ( closed || positions.containsKey( key ) ) {
+                return;
+            }
+            final long position = channel.size();
+            while ( record.hasRemaining() ) {
+                channel.write( record, position + record.position() );
+            }
+            positions.put( key, position );
+        } catch ( IOException e ) {
+            log.warn( "Could not write to the OLS cache " + file.getAbsolutePath() + ", it will not be used anymore", e );
+            closeQuietly();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private boolean writeValue( DataOutputStream out, Object value ) throws IOException {
+        if ( value == null ) {
+            out.writeByte( NULL );
+        } else if ( value instanceof Boolean ) {
+            out.writeByte( BOOLEAN );
+            out.writeBoolean( ( Boolean ) value );
+        } else if ( value instanceof String ) {
+            out.writeByte( STRING );
+            writeString( out, ( String ) value );
+        } else if ( value instanceof OntologyTermI ) {
+            out.writeByte( TERM );
+            writeTerm( out, ( OntologyTermI ) value );
+        } else if ( value instanceof Set ) {
+            final Set<?> set = ( Set<?> ) value;
+            boolean strings = true;
+            boolean terms = true;
+            for ( Object element : set ) {
+                strings &= element instanceof String;
+                terms &= element instanceof OntologyTermI;
+            }
+            if ( strings ) {
+                out.writeByte( STRINGS );
+                out.writeInt( set.size() );
+                for ( Object element : set ) {
+                    writeString( out, ( String ) element );
+                }
+            } else if ( terms ) {
+                out.writeByte( TERMS );
+                out.writeInt( set.size() );
+                for ( Object element : set ) {
+                    writeTerm( out, ( OntologyTermI ) element );
+                }
+            } else {
+                return false;
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void writeTerm( DataOutputStream out, OntologyTermI term ) throws IOException {
+        writeString( out, term.getTermAccession() );
+        writeString( out, term.getPreferredName() );
+        final Collection<String> synonyms = term.getNameSynonyms();
+        if ( synonyms instanceof OlsTermSynonyms ) {
+            // queried when read, and stored on their own then
+            out.writeInt( -1 );
+            return;
+        }
+        out.writeInt( synonyms == null ? 0 : synonyms.size() );
+        if ( synonyms != null ) {
+            for ( String synonym : synonyms ) {
+                writeString( out, synonym );
+            }
+        }
+    }
+
+    private T readTerm( DataInputStream in ) throws IOException {
+        final T term = ontology.createNewOntologyTerm( readString( in ), readString( in ) );
+        final int synonymCount = in.readInt();
+        if ( synonymCount < 0 ) {
+            ontology.attachTermSynonyms( term );
+        }
+        for ( int s = 0; s < synonymCount; s++ ) {
+            term.getNameSynonyms().add( readString( in ) );
+        }
+        return term;
+    }
+
+    private static void writeString( DataOutputStream out, String s ) throws IOException {
+        if ( s == null ) {
+            out.writeInt( -1 );
+        } else {
+            final byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+    }
+
+    private static String readString( DataInputStream in ) throws IOException {
+        final int length = in.readInt();
+        if ( length < 0 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch ( IOException e ) {
+            log.warn( "Could not close the OLS cache " + file.getAbsolutePath(), e );
+        }
+    }
+
+    /**
+     * Closes the log, the stored queries being kept for the next time it is opened.
+     */
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+            positions.clear();
+            try {
+                lock.release();
+            } finally {
+                channel.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Synonyms of a term of an OLS ontology, only queried when first read so that the terms used by their accession alone
+ * never cost a query for their synonyms.
+ * <p/>
+ * The synonyms are read through the cache of the ontology. While the ontology does not use synonyms, the collection
+ * stays empty without querying OLS, and it gets the synonyms once they are used.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+class OlsTermSynonyms extends AbstractCollection<String> {
+
+    private final AbstractOlsOntology<?> ontology;
+
+    private final String accession;
+
+    /**
+     * The synonyms, null until queried. Terms are shared by the threads using the ontology.
+     */
+    private volatile List<String> synonyms;
+
+    OlsTermSynonyms( AbstractOlsOntology<?> ontology, String accession ) {
+        this.ontology = ontology;
+        this.accession = accession;
+    }
+
+    /**
+     * @return true if the synonyms have been queried.
+     */
+    boolean isResolved() {
+        return synonyms != null;
+    }
+
+    /**
+     * Queries the synonyms if they have not been yet, whether the ontology uses synonyms or not.
+     *
+     * @return the synonyms.
+     */
+    List<String> resolve() {
+        List<String> resolved = synonyms;
+        if ( resolved == null ) {
+            // threads resolving at the same time share the same cached query
+            resolved = new CopyOnWriteArrayList<String>( ontology.getTermSynonyms( accession ) );
+            synonyms = resolved;
+        }
+        return resolved;
+    }
+
+    private Collection<String> get() {
+        if ( synonyms == null && !ontology.isUseTermSynonyms() ) {
+            return Collections.emptyList();
+        }
+        return resolve();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return get().iterator();
+    }
+
+    @Override
+    public int size() {
+        return get().size();
+    }
+
+    /**
+     * Adds a synonym to the ones of the term, which are queried first.
+     */
+    @Override
+    public boolean add( String synonym ) {
+        return resolve().add( synonym );
+    }
+
+    @Override
+    public boolean remove( Object synonym ) {
+        return resolve().remove( synonym );
+    }
+
+    @Override
+    public void clear() {
+        synonyms = new CopyOnWriteArrayList<String>();
+    }
+}
@@ -4,6 +4,8 @@ import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
 
 import java.io.File;
 import java.net.URI;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -65,6 +67,54 @@ public interface OntologyAccessTemplate<T extends OntologyTermI> {
      */
     public boolean isObsolete( T term );
 
+    /**
+     * Filters the obsolete terms out of the given ones in a single call. Implementations that know the obsolete terms
+     * upfront should override this method.
+     *
+     * @param terms the terms of interest.
+     * @return a new set of the given terms that are not obsolete, in the order of the given collection.
+     */
+    public default Set<T> filterObsoleteTerms( Collection<T> terms ) {
+        final Set<T> filtered = new LinkedHashSet<T>( terms.size() * 4 / 3 + 1 );
+        for ( T term : terms ) {
+            if ( !isObsolete( term ) ) {
+                filtered.add( term );
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * @return true if the preferred names and synonyms of all the terms are indexed, so that getTermsForName() can be
+     *         used.
+     */
+    public default boolean isTermNameIndexed() {
+        return false;
+    }
+
+    /**
+     * Resolves a preferred name or synonym to the terms having it, with a lookup in the index of the term names.
+     *
+     * @param name the preferred name or synonym of interest, matched exactly.
+     * @return a non null set of ontology terms.
+     * @throws UnsupportedOperationException if the term names are not indexed, see isTermNameIndexed().
+     */
+    public default Set<T> getTermsForName( String name ) {
+        throw new UnsupportedOperationException( "The term names of " + getClass().getSimpleName() + " are not indexed" );
+    }
+
+    /**
+     * Resolves the given accessions, and the children of their terms if asked, ahead of their use so that the later
+     * calls are answered at once. Implementations resolving terms remotely should override this method, the terms
+     * being at hand otherwise.
+     *
+     * @param accessions    the accessions about to be used.
+     * @param allowChildren whether all the children of the terms are about to be used as well.
+     */
+    public default void prefetch( Collection<String> accessions, boolean allowChildren ) {
+        // nothing to do
+    }
+
     /**
      * Provides the direct parents of the given terms in a non null set.
      *
@@ -97,6 +147,29 @@ public interface OntologyAccessTemplate<T extends OntologyTermI> {
      */
     public Set<T> getAllChildren( T term );
 
+    /**
+     * Tells if a term is a descendant of another one. Implementations that can test it without collecting all the
+     * children of the ancestor should override this method.
+     *
+     * @param child    the potential descendant.
+     * @param ancestor the potential ancestor.
+     * @return true if child is one of the children, direct or not, of ancestor.
+     */
+    public default boolean isDescendantOf( T child, T ancestor ) {
+        return getAllChildren( ancestor ).contains( child );
+    }
+
+    /**
+     * Tells how many children, direct or not, a term has, when that is known without collecting them remotely.
+     * Implementations holding the ontology in memory should override this method.
+     *
+     * @param term the term of interest.
+     * @return the number of descendants of the term, or -1 if only collecting them would tell.
+     */
+    public default int getDescendantCount( T term ) {
+        return -1;
+    }
+
     /**
      *
      * @return false if a new update of the ontology has been done recently and the date of the last ontology upload is before the date of the last ontology update
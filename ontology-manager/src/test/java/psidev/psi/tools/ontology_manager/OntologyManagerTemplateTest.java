@@ -0,0 +1,200 @@
+package psidev.psi.tools.ontology_manager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.impl.LazyOntologyAccess;
+import psidev.psi.tools.ontology_manager.impl.local.LocalOntology;
+import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OntologyManagerTemplate tester, loading local ontologies concurrently or on first use.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OntologyManagerTemplateTest {
+
+    @After
+    public void resetContext() {
+        OntologyManagerContext.removeInstance();
+    }
+
+    private InputStream getConfig( String... sources ) throws Exception {
+        final StringBuilder sb = new StringBuilder( "<cvSourceList>\n" );
+        for ( String source : sources ) {
+            sb.append( source ).append( "\n" );
+        }
+        sb.append( "</cvSourceList>" );
+        return new ByteArrayInputStream( sb.toString().getBytes( "UTF-8" ) );
+    }
+
+    private String getSource( String id, String source, String uri ) {
+        return "    <cvSource source=\"" + source + "\" uri=\"" + uri + "\" format=\"OBO\" name=\"" + id
+               + "\" identifier=\"" + id + "\" version=\"\"/>";
+    }
+
+    private String getSource( String id, String source, String uri, boolean lazy ) {
+        return getSource( id, source, uri ).replace( "/>", " lazy=\"" + lazy + "\"/>" );
+    }
+
+    /**
+     * LocalOntology counting how many times it is loaded.
+     */
+    public static class CountingLocalOntology extends LocalOntology {
+        static final AtomicInteger loadCount = new AtomicInteger();
+
+        @Override
+        public void loadOntology( String ontologyID, String name, String version, String format, URI uri ) throws OntologyLoaderException {
+            loadCount.incrementAndGet();
+            super.loadOntology( ontologyID, name, version, format, uri );
+        }
+    }
+
+    @Test
+    public void loadOntologies_concurrently() throws Exception {
+        OntologyManagerContext.getInstance().setLoadingParallelism( 3 );
+        final OntologyManager manager = new OntologyManager();
+
+        final long start = System.currentTimeMillis();
+        manager.loadOntologies( OntologyManagerTemplateTest.class.getResourceAsStream( "/local-ontologies.xml" ) );
+        System.out.println( "Loaded " + manager.getOntologyIDs() + " in " + ( System.currentTimeMillis() - start ) + "ms" );
+
+        Assert.assertEquals( 3, manager.getOntologyIDs().size() );
+        Assert.assertEquals( "footprinting", manager.getOntologyAccess( "MI" ).getTermForAccession( "MI:0417" ).getPreferredName() );
+        Assert.assertNotNull( manager.getOntologyAccess( "MOD" ).getTermForAccession( "MOD:00001" ) );
+        Assert.assertNotNull( manager.getOntologyAccess( "SO" ).getTermForAccession( "SO:0000001" ) );
+    }
+
+    @Test
+    public void loadOntologies_failures() throws Exception {
+        final OntologyManager manager = new OntologyManager();
+        try {
+            manager.loadOntologies( getConfig( getSource( "MOD", "file", "classpath:psi-mod.obo" ),
+                                               getSource( "BAD1", "file", "file:/no/such/directory/bad1.obo" ),
+                                               getSource( "BAD2", "no.such.OntologyAccess", "classpath:psi-mi25.obo" ) ) );
+            Assert.fail( "Two sources cannot be loaded" );
+        } catch ( OntologyLoaderException e ) {
+            Assert.assertTrue( e.getMessage(), e.getMessage().contains( "BAD1 (file)" ) );
+            Assert.assertTrue( e.getMessage(), e.getMessage().contains( "BAD2 (no.such.OntologyAccess)" ) );
+            Assert.assertFalse( e.getMessage(), e.getMessage().contains( "MOD" ) );
+            Assert.assertEquals( 1, e.getCause().getSuppressed().length );
+        }
+
+        // nothing is published unless every source is loaded
+        Assert.assertTrue( manager.getOntologyIDs().isEmpty() );
+    }
+
+    @Test
+    public void loadOntologies_contextCarriedToWorkers() throws Exception {
+        final File directory = Files.createTempDirectory( "ontologies" ).toFile();
+        try {
+            final OntologyManagerContext context = OntologyManagerContext.getInstance();
+            context.setStoreOntologiesLocally( true );
+            context.setOntologyDirectory( directory );
+
+            final OntologyManager manager = new OntologyManager();
+            manager.loadOntologies( getConfig( getSource( "MI", "mapped", "classpath:psi-mi25.obo" ) ) );
+            Assert.assertNotNull( manager.getOntologyAccess( "MI" ) );
+
+            // the worker thread wrote the mapped ontology in the directory of the calling thread
+            final File[] files = directory.listFiles();
+            Assert.assertEquals( 1, files.length );
+            Assert.assertTrue( files[0].getName().endsWith( ".mapped-ontology" ) );
+
+            // and the context of the calling thread is left untouched
+            Assert.assertSame( context, OntologyManagerContext.getInstance() );
+        } finally {
+            for ( File file : directory.listFiles() ) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void loadOntologies_lazy() throws Exception {
+        OntologyManagerContext.getInstance().setLazyLoading( true );
+        final OntologyManager manager = new OntologyManager();
+        manager.loadOntologies( OntologyManagerTemplateTest.class.getResourceAsStream( "/local-ontologies.xml" ) );
+        Assert.assertEquals( 3, manager.getOntologyIDs().size() );
+
+        final LazyOntologyAccess mi = ( LazyOntologyAccess ) manager.getOntologyAccess( "MI" );
+        final LazyOntologyAccess mod = ( LazyOntologyAccess ) manager.getOntologyAccess( "MOD" );
+        Assert.assertFalse( mi.isLoaded() );
+        Assert.assertFalse( mod.isLoaded() );
+        Assert.assertTrue( manager.isUpToDate() );
+
+        Assert.assertEquals( 7, mi.getValidTerms( "MI:0417", true, false ).size() );
+        Assert.assertTrue( mi.isLoaded() );
+        Assert.assertFalse( mod.isLoaded() );
+    }
+
+    @Test
+    public void loadOntologies_lazyPerSource() throws Exception {
+        final OntologyManager manager = new OntologyManager();
+        manager.loadOntologies( getConfig( getSource( "MI", "file", "classpath:psi-mi25.obo", true ),
+                                           getSource( "MOD", "file", "classpath:psi-mod.obo" ) ) );
+        Assert.assertTrue( manager.getOntologyAccess( "MI" ) instanceof LazyOntologyAccess );
+        Assert.assertTrue( manager.getOntologyAccess( "MOD" ) instanceof LocalOntology );
+
+        OntologyManagerContext.getInstance().setLazyLoading( true );
+        manager.loadOntologies( getConfig( getSource( "MOD", "file", "classpath:psi-mod.obo", false ) ) );
+        Assert.assertTrue( manager.getOntologyAccess( "MOD" ) instanceof LocalOntology );
+    }
+
+    @Test
+    public void loadOntologies_lazySingleLoad() throws Exception {
+        CountingLocalOntology.loadCount.set( 0 );
+        final OntologyManager manager = new OntologyManager();
+        manager.loadOntologies( getConfig( getSource( "SO", CountingLocalOntology.class.getName(), "classpath:so.obo", true ) ) );
+        Assert.assertEquals( 0, CountingLocalOntology.loadCount.get() );
+
+        final OntologyAccess so = manager.getOntologyAccess( "SO" );
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier( threads );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<String>> names = new ArrayList<Future<String>>();
+            for ( int i = 0; i < threads; i++ ) {
+                names.add( executor.submit( new Callable<String>() {
+                    public String call() throws Exception {
+                        barrier.await();
+                        return so.getTermForAccession( "SO:0000001" ).getPreferredName();
+                    }
+                } ) );
+            }
+            for ( Future<String> name : names ) {
+                Assert.assertEquals( "region", name.get() );
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals( 1, CountingLocalOntology.loadCount.get() );
+    }
+
+    @Test
+    public void loadOntologies_lazyFailure() throws Exception {
+        final OntologyManager manager = new OntologyManager();
+        manager.loadOntologies( getConfig( getSource( "BAD", "file", "file:/no/such/directory/bad.obo", true ) ) );
+
+        final OntologyAccess bad = manager.getOntologyAccess( "BAD" );
+        try {
+            bad.getTermForAccession( "BAD:1" );
+            Assert.fail( "The ontology cannot be loaded" );
+        } catch ( IllegalStateException e ) {
+            Assert.assertTrue( e.getCause() instanceof OntologyLoaderException );
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package psidev.psi.tools.ontology_manager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.impl.ReadOnlyOntologyAccess;
+import psidev.psi.tools.ontology_manager.impl.local.LocalOntology;
+import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SharedOntologyRegistry tester.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class SharedOntologyRegistryTest {
+
+    private final SharedOntologyRegistry registry = SharedOntologyRegistry.getInstance();
+
+    @Before
+    public void shareOntologies() {
+        OntologyManagerContext.getInstance().setShareOntologies( true );
+    }
+
+    @After
+    public void resetContext() {
+        OntologyManagerContext.removeInstance();
+    }
+
+    private InputStream getLocalOntologies() {
+        return SharedOntologyRegistryTest.class.getResourceAsStream( "/local-ontologies.xml" );
+    }
+
+    private SharedOntologyRegistry.Key getKey( String resource ) throws Exception {
+        final URI uri = SharedOntologyRegistryTest.class.getResource( "/" + resource ).toURI();
+        return SharedOntologyRegistry.createKey( LocalOntology.class, uri, "OBO", "2.5" );
+    }
+
+    @Test
+    public void managersShareOntologies() throws Exception {
+        final OntologyManager manager1 = new OntologyManager( getLocalOntologies() );
+        final OntologyManager manager2 = new OntologyManager( getLocalOntologies() );
+
+        for ( String id : manager1.getOntologyIDs() ) {
+            Assert.assertTrue( manager1.getOntologyAccess( id ) instanceof ReadOnlyOntologyAccess );
+            Assert.assertSame( id, manager1.getOntologyAccess( id ), manager2.getOntologyAccess( id ) );
+        }
+        final SharedOntologyRegistry.Key mi = getKey( "psi-mi25.obo" );
+        Assert.assertEquals( 2, registry.getReferenceCount( mi ) );
+        Assert.assertEquals( 7, manager2.getOntologyAccess( "MI" ).getValidTerms( "MI:0417", true, false ).size() );
+
+        manager1.close();
+        Assert.assertTrue( manager1.getOntologyIDs().isEmpty() );
+        Assert.assertEquals( 1, registry.getReferenceCount( mi ) );
+
+        manager2.close();
+        Assert.assertEquals( 0, registry.getReferenceCount( mi ) );
+    }
+
+    @Test
+    public void sharedOntologyIsReadOnly() throws Exception {
+        final OntologyManager manager = new OntologyManager( getLocalOntologies() );
+        try {
+            final OntologyAccess mi = manager.getOntologyAccess( "MI" );
+            mi.loadOntology( "MI", "PSI-MI", "2.5", "OBO", new URI( "file:/tmp/mi.obo" ) );
+            Assert.fail( "A shared ontology cannot be loaded again" );
+        } catch ( UnsupportedOperationException e ) {
+            // expected
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void failedLoadingReleasesSharedOntologies() throws Exception {
+        final String config = "<cvSourceList>\n" +
+                              "    <cvSource source=\"file\" uri=\"classpath:psi-mi25.obo\" format=\"OBO\"\n" +
+                              "              name=\"PSI-MI\" identifier=\"MI\" version=\"2.5\"/>\n" +
+                              "    <cvSource source=\"file\" uri=\"file:/no/such/directory/bad.obo\" format=\"OBO\"\n" +
+                              "              name=\"BAD\" identifier=\"BAD\" version=\"1\"/>\n" +
+                              "</cvSourceList>";
+        final OntologyManager manager = new OntologyManager();
+        try {
+            manager.loadOntologies( new ByteArrayInputStream( config.getBytes( "UTF-8" ) ) );
+            Assert.fail( "BAD cannot be loaded" );
+        } catch ( OntologyLoaderException e ) {
+            Assert.assertTrue( e.getMessage(), e.getMessage().contains( "BAD" ) );
+        }
+        Assert.assertEquals( 0, registry.getReferenceCount( getKey( "psi-mi25.obo" ) ) );
+    }
+
+    @Test
+    public void acquire_loadsOnce() throws Exception {
+        final SharedOntologyRegistry.Key key = getKey( "so.obo" );
+        final AtomicInteger loadCount = new AtomicInteger();
+        final Callable<String> loader = new Callable<String>() {
+            public String call() throws Exception {
+                loadCount.incrementAndGet();
+                Thread.sleep( 50 );
+                return "ontology";
+            }
+        };
+
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier( threads );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for ( int i = 0; i < threads; i++ ) {
+                results.add( executor.submit( new Callable<String>() {
+                    public String call() throws Exception {
+                        barrier.await();
+                        return registry.acquire( key, loader );
+                    }
+                } ) );
+            }
+            for ( Future<String> result : results ) {
+                Assert.assertEquals( "ontology", result.get() );
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals( 1, loadCount.get() );
+        Assert.assertEquals( threads, registry.getReferenceCount( key ) );
+
+        for ( int i = 0; i < threads; i++ ) {
+            registry.release( key );
+        }
+        Assert.assertEquals( 0, registry.getReferenceCount( key ) );
+    }
+
+    @Test
+    public void acquire_failureIsNotKept() throws Exception {
+        final SharedOntologyRegistry.Key key = getKey( "psi-mod.obo" );
+        try {
+            registry.acquire( key, new Callable<String>() {
+                public String call() throws Exception {
+                    throw new OntologyLoaderException( "cannot load" );
+                }
+            } );
+            Assert.fail( "The loading fails" );
+        } catch ( OntologyLoaderException e ) {
+            Assert.assertEquals( "cannot load", e.getCause().getMessage() );
+        }
+        Assert.assertEquals( 0, registry.getReferenceCount( key ) );
+
+        Assert.assertEquals( "ontology", registry.acquire( key, new Callable<String>() {
+            public String call() {
+                return "ontology";
+            }
+        } ) );
+        registry.release( key );
+    }
+}
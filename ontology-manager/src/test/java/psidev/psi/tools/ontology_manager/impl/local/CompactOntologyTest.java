@@ -0,0 +1,87 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.impl.OntologyTermImpl;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.File;
+import java.util.HashSet;
+
+/**
+ * CompactOntology Tester, checking it against OntologyImpl on the bundled OBO files.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class CompactOntologyTest {
+
+    private File getOboFile( String name ) throws Exception {
+        return new File( CompactOntologyTest.class.getResource( "/" + name ).toURI() );
+    }
+
+    private void assertSameOntology( Ontology expected, Ontology actual ) {
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getOntologyTerms() ),
+                             new HashSet<OntologyTermI>( actual.getOntologyTerms() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getRoots() ),
+                             new HashSet<OntologyTermI>( actual.getRoots() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getObsoleteTerms() ),
+                             new HashSet<OntologyTermI>( actual.getObsoleteTerms() ) );
+
+        for ( OntologyTermI term : expected.getOntologyTerms() ) {
+            final String acc = term.getTermAccession();
+            Assert.assertEquals( acc, expected.search( acc ), actual.search( acc ) );
+            Assert.assertEquals( acc, expected.getDirectParents( term ), actual.getDirectParents( term ) );
+            Assert.assertEquals( acc, expected.getDirectChildren( term ), actual.getDirectChildren( term ) );
+            Assert.assertEquals( acc, expected.getAllParents( term ), actual.getAllParents( term ) );
+            Assert.assertEquals( acc, expected.getAllChildren( term ), actual.getAllChildren( term ) );
+            Assert.assertEquals( acc, expected.getDepth( term ), actual.getDepth( term ) );
+            Assert.assertEquals( acc, expected.isObsoleteTerm( term ), actual.isObsoleteTerm( term ) );
+        }
+    }
+
+    private void compare( String oboFile ) throws Exception {
+        final File file = getOboFile( oboFile );
+        final Ontology expected = new OboLoader( null ).parseOboFile( file );
+        final Ontology actual = new CompactOboLoader( null ).parseOboFile( file );
+        Assert.assertTrue( actual instanceof CompactOntology );
+        assertSameOntology( expected, actual );
+    }
+
+    @Test
+    public void compare_mi() throws Exception {
+        compare( "psi-mi25.obo" );
+    }
+
+    @Test
+    public void compare_mod() throws Exception {
+        compare( "psi-mod.obo" );
+    }
+
+    @Test
+    public void compare_so() throws Exception {
+        compare( "so.obo" );
+    }
+
+    @Test
+    public void addLink_afterIndex() throws Exception {
+        final CompactOntology ontology = new CompactOntology();
+        ontology.addTerm( new OntologyTermImpl( "T:1", "a" ) );
+        ontology.addTerm( new OntologyTermImpl( "T:2", "b" ) );
+        ontology.addTerm( new OntologyTermImpl( "T:3", "c" ) );
+        ontology.addLink( "T:1", "T:2" );
+        ontology.addLink( "T:1", "T:2" );
+        ontology.buildIndex();
+
+        final OntologyTermI a = ontology.search( "T:1" );
+        final OntologyTermI c = ontology.search( "T:3" );
+        Assert.assertEquals( 1, ontology.getDirectChildren( a ).size() );
+        Assert.assertEquals( 2, ontology.getRoots().size() );
+
+        ontology.addLink( "T:2", "T:3" );
+        Assert.assertEquals( 2, ontology.getAllChildren( a ).size() );
+        Assert.assertTrue( ontology.isDescendantOf( c, a ) );
+        Assert.assertEquals( 2, ontology.getDepth( c ) );
+        Assert.assertEquals( 1, ontology.getRoots().size() );
+    }
+}
@@ -11,9 +11,20 @@ import psidev.psi.tools.ontology_manager.impl.OntologyTermImpl;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 
+import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * LocalOntology Tester.
@@ -95,6 +106,29 @@ public class LocalOntologyTest {
         Assert.assertTrue( term.getNameSynonyms().contains( "Selenium replaces sulphur" ) );
     }
 
+    @Test
+    public void getTermsForName() throws Exception {
+        final OntologyAccess mod = manager.getOntologyAccess( "MOD" );
+        Assert.assertTrue( mod.isTermNameIndexed() );
+
+        final OntologyTermI term = mod.getTermForAccession( "MOD:00007" );
+        Assert.assertEquals( Collections.singleton( term ), mod.getTermsForName( term.getPreferredName() ) );
+        Assert.assertTrue( mod.getTermsForName( "Selenium replaces sulphur" ).contains( term ) );
+        Assert.assertTrue( mod.getTermsForName( "Se(S)Res" ).contains( term ) );
+        Assert.assertTrue( mod.getTermsForName( "selenium replaces sulphur" ).isEmpty() );
+        Assert.assertTrue( mod.getTermsForName( "no such name" ).isEmpty() );
+
+        // same names as collected by OntologyUtils.getTermNames()
+        final Set<OntologyTermI> terms = mod.getValidTerms( "MOD:00000", true, true );
+        for ( String name : OntologyUtils.getTermNames( terms ) ) {
+            final Set<OntologyTermI> named = mod.getTermsForName( name );
+            Assert.assertFalse( name, named.isEmpty() );
+            for ( OntologyTermI other : named ) {
+                Assert.assertTrue( name, other.getPreferredName().equals( name ) || other.getNameSynonyms().contains( name ) );
+            }
+        }
+    }
+
     @Test
     public void isObsolete() throws Exception {
         final OntologyAccess mi = manager.getOntologyAccess( "MI" );
@@ -112,6 +146,32 @@ public class LocalOntologyTest {
         Assert.assertFalse(mi.isObsolete( term ));
     }
 
+    @Test
+    public void filterObsoleteTerms() throws Exception {
+        final OntologyAccess mod = manager.getOntologyAccess( "MOD" );
+        final Set<OntologyTermI> terms = mod.getValidTerms( "MOD:00000", true, true );
+        terms.add( mod.getTermForAccession( "MOD:00407" ) );
+        terms.add( mod.getTermForAccession( "MOD:00411" ) );
+
+        final Set<OntologyTermI> filtered = mod.filterObsoleteTerms( terms );
+        int obsolete = 0;
+        for ( OntologyTermI term : terms ) {
+            if ( mod.isObsolete( term ) ) {
+                obsolete++;
+                Assert.assertFalse( term.getTermAccession(), filtered.contains( term ) );
+            } else {
+                Assert.assertTrue( term.getTermAccession(), filtered.contains( term ) );
+            }
+        }
+        Assert.assertTrue( obsolete >= 2 );
+        Assert.assertEquals( terms.size() - obsolete, filtered.size() );
+
+        final List<OntologyTermI> mixed = new ArrayList<OntologyTermI>();
+        mixed.add( new OntologyTermImpl( "MOD:xxxxx", "bogus term" ) );
+        mixed.addAll( manager.getOntologyAccess( "MI" ).filterObsoleteTerms( terms ) );
+        Assert.assertEquals( filtered.size() + 1, mod.filterObsoleteTerms( mixed ).size() );
+    }
+
     @Test
     @Ignore
     public void setOntologyDirectory() throws Exception {
@@ -192,6 +252,27 @@ public class LocalOntologyTest {
         Assert.assertEquals( 0, children.size() );
     }
 
+    @Test
+    public void isDescendantOf() throws Exception {
+        final OntologyAccess mi = manager.getOntologyAccess( "MI" );
+
+        final OntologyTermI footprinting = mi.getTermForAccession( "MI:0417" );
+        final OntologyTermI dnaseFootprinting = mi.getTermForAccession( "MI:0606" );
+        final OntologyTermI root = mi.getTermForAccession( "MI:0000" );
+        Assert.assertNotNull( footprinting );
+        Assert.assertNotNull( dnaseFootprinting );
+
+        Assert.assertTrue( mi.isDescendantOf( dnaseFootprinting, footprinting ) );
+        Assert.assertFalse( mi.isDescendantOf( footprinting, dnaseFootprinting ) );
+        Assert.assertFalse( mi.isDescendantOf( footprinting, footprinting ) );
+        Assert.assertTrue( mi.isDescendantOf( footprinting, root ) );
+        Assert.assertFalse( mi.isDescendantOf( new OntologyTermImpl( "MI:xxxx", "bogus term" ), footprinting ) );
+
+        for ( OntologyTermI child : mi.getAllChildren( root ) ) {
+            Assert.assertTrue( child.toString(), mi.isDescendantOf( child, root ) );
+        }
+    }
+
     ///////////////////
 
     // Parents
@@ -255,12 +336,146 @@ public class LocalOntologyTest {
         Assert.assertEquals( 0, parents.size() );
     }
 
+    @Test
+    public void getAllParents_cycle() throws Exception {
+        final OntologyImpl ontology = new OntologyImpl();
+        final OntologyTermI a = new OntologyTermImpl( "T:1", "a" );
+        final OntologyTermI b = new OntologyTermImpl( "T:2", "b" );
+        final OntologyTermI c = new OntologyTermImpl( "T:3", "c" );
+        final OntologyTermI d = new OntologyTermImpl( "T:4", "d" );
+        ontology.addTerm( a );
+        ontology.addTerm( b );
+        ontology.addTerm( c );
+        ontology.addTerm( d );
+        ontology.addLink( "T:1", "T:2" );
+        ontology.addLink( "T:2", "T:3" );
+        ontology.addLink( "T:3", "T:4" );
+        ontology.addLink( "T:4", "T:2" ); // malformed ontology: b -> c -> d -> b
+
+        Assert.assertEquals( 4, ontology.getAllParents( d ).size() );
+        Assert.assertTrue( ontology.getAllParents( d ).contains( a ) );
+        Assert.assertTrue( ontology.getAllParents( d ).contains( d ) );
+        Assert.assertEquals( 3, ontology.getAllChildren( a ).size() );
+
+        Assert.assertEquals( 0, ontology.getDepth( a ) );
+        Assert.assertEquals( 1, ontology.getDepth( b ) );
+        Assert.assertEquals( 3, ontology.getDepth( d ) );
+    }
+
+    @Test
+    public void freeze() throws Exception {
+        final OntologyImpl ontology = new OntologyImpl();
+        final OntologyTermI a = new OntologyTermImpl( "T:1", "a" );
+        final OntologyTermI b = new OntologyTermImpl( "T:2", "b" );
+        final OntologyTermI c = new OntologyTermImpl( "T:3", "c" );
+        ontology.addTerm( a );
+        ontology.addTerm( b );
+        ontology.addTerm( c );
+        ontology.addLink( "T:1", "T:2" );
+        ontology.addLink( "T:1", "T:3" );
+        ontology.addObsoleteTerm( c );
+        Assert.assertFalse( ontology.isFrozen() );
+
+        ontology.freeze();
+        Assert.assertTrue( ontology.isFrozen() );
+        Assert.assertEquals( 1, ontology.getRoots().size() );
+        Assert.assertEquals( 2, ontology.getLeaves().size() );
+        Assert.assertTrue( ontology.isObsoleteTerm( c ) );
+
+        try {
+            ontology.getDirectChildren( a ).clear();
+            Assert.fail( "The children of a frozen ontology cannot be modified" );
+        } catch ( UnsupportedOperationException e ) {
+            // expected
+        }
+        try {
+            ontology.addTerm( new OntologyTermImpl( "T:4", "d" ) );
+            Assert.fail( "A frozen ontology cannot be modified" );
+        } catch ( UnsupportedOperationException e ) {
+            // expected
+        }
+        try {
+            ontology.addLink( "T:2", "T:3" );
+            Assert.fail( "A frozen ontology cannot be modified" );
+        } catch ( UnsupportedOperationException e ) {
+            // expected
+        }
+        Assert.assertEquals( 2, ontology.getDirectChildren( a ).size() );
+    }
+
+    @Test
+    public void freeze_loadedOntology() throws Exception {
+        final LocalOntology mi = ( LocalOntology ) manager.getOntologyAccess( "MI" );
+        Assert.assertTrue( mi.ontology.isFrozen() );
+
+        // many threads reading the same ontology get the same answers
+        final OntologyTermI parent = mi.getTermForAccession( "MI:0417" );
+        final int expected = mi.getAllChildren( parent ).size();
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for ( int i = 0; i < 64; i++ ) {
+                results.add( executor.submit( new Callable<Integer>() {
+                    public Integer call() {
+                        int count = 0;
+                        for ( OntologyTermI child : mi.getAllChildren( parent ) ) {
+                            if ( mi.getDirectParents( child ).size() > 0 && mi.isDescendantOf( child, parent ) ) {
+                                count++;
+                            }
+                        }
+                        return count;
+                    }
+                } ) );
+            }
+            for ( Future<Integer> result : results ) {
+                Assert.assertEquals( expected, result.get().intValue() );
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void getDepth() throws Exception {
+        final LocalOntology mi = ( LocalOntology ) manager.getOntologyAccess( "MI" );
+
+        Assert.assertEquals( 0, mi.getDepth( mi.getTermForAccession( "MI:0000" ) ) );
+        Assert.assertEquals( 2, mi.getDepth( mi.getTermForAccession( "MI:0045" ) ) );
+        Assert.assertEquals( -1, mi.getDepth( new OntologyTermImpl( "MI:xxxx", "bogus term" ) ) );
+    }
+
     private void printTerms( Collection<OntologyTermI> terms ) {
         for ( OntologyTermI term : terms ) {
             System.out.println( term );
         }
     }
 
+    @Test
+    public void refreshOntologies_unchanged() throws OntologyLoaderException {
+        // the local files did not change, none of them is loaded again
+        final OntologyAccess mi = manager.getOntologyAccess( "MI" );
+        final long generation = manager.getGeneration();
+        Assert.assertEquals( Collections.emptySet(), manager.refreshOntologies() );
+        Assert.assertSame( mi, manager.getOntologyAccess( "MI" ) );
+        Assert.assertEquals( generation, manager.getGeneration() );
+    }
+
+    @Test
+    public void isOntologyUpToDate_localFile() throws Exception {
+        final File obo = File.createTempFile( "local-ontology", ".obo" );
+        obo.deleteOnExit();
+        Files.write( obo.toPath(), "format-version: 1.2\n\n[Term]\nid: T:0001\nname: root\n".getBytes( StandardCharsets.UTF_8 ) );
+
+        final LocalOntology ontology = new LocalOntology();
+        ontology.loadOntology( "T", "test", "1", "OBO", obo.toURI() );
+        Assert.assertTrue( ontology.isOntologyUpToDate() );
+        Assert.assertTrue( ontology.isOntologyUpToDate() );
+
+        Files.write( obo.toPath(), "[Term]\nid: T:0002\nname: child\nis_a: T:0001 ! root\n".getBytes( StandardCharsets.UTF_8 ),
+                     StandardOpenOption.APPEND );
+        Assert.assertFalse( ontology.isOntologyUpToDate() );
+    }
+
     @Test
     public void getValidTerms_so_small() throws OntologyLoaderException {
         final OntologyAccess mod = manager.getOntologyAccess( "SO" );
@@ -0,0 +1,150 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.OntologyManager;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.impl.OntologyTermImpl;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * MappedOntology Tester.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class MappedOntologyTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile( "mapped-ontologies", "" );
+        directory.delete();
+        directory.mkdirs();
+        OntologyManagerContext.getInstance().setOntologyDirectory( directory );
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( true );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        OntologyManagerContext.removeInstance();
+        for ( File file : directory.listFiles() ) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private File getOboFile( String name ) throws Exception {
+        return new File( MappedOntologyTest.class.getResource( "/" + name ).toURI() );
+    }
+
+    private void assertSameOntology( Ontology expected, Ontology actual ) {
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getOntologyTerms() ),
+                             new HashSet<OntologyTermI>( actual.getOntologyTerms() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getRoots() ),
+                             new HashSet<OntologyTermI>( actual.getRoots() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getObsoleteTerms() ),
+                             new HashSet<OntologyTermI>( actual.getObsoleteTerms() ) );
+
+        for ( OntologyTermI term : expected.getOntologyTerms() ) {
+            final String acc = term.getTermAccession();
+            final OntologyTermI copy = actual.search( acc );
+            Assert.assertEquals( acc, term.getPreferredName(), copy.getPreferredName() );
+            Assert.assertEquals( acc, new ArrayList<String>( term.getNameSynonyms() ),
+                                 new ArrayList<String>( copy.getNameSynonyms() ) );
+            Assert.assertEquals( acc, expected.getDirectParents( term ), actual.getDirectParents( term ) );
+            Assert.assertEquals( acc, expected.getDirectChildren( term ), actual.getDirectChildren( term ) );
+            Assert.assertEquals( acc, expected.getAllParents( term ), actual.getAllParents( term ) );
+            Assert.assertEquals( acc, expected.getAllChildren( term ), actual.getAllChildren( term ) );
+            Assert.assertEquals( acc, expected.getDepth( term ), actual.getDepth( term ) );
+            Assert.assertEquals( acc, expected.isObsoleteTerm( term ), actual.isObsoleteTerm( term ) );
+            for ( OntologyTermI parent : expected.getAllParents( term ) ) {
+                Assert.assertTrue( acc, actual.isDescendantOf( term, parent ) );
+                Assert.assertEquals( acc, expected.isDescendantOf( parent, term ), actual.isDescendantOf( parent, term ) );
+            }
+        }
+        Assert.assertNull( actual.search( "XX:0000" ) );
+    }
+
+    @Test
+    public void parseOboFile() throws Exception {
+        for ( String name : new String[]{"psi-mi25.obo", "psi-mod.obo", "so.obo"} ) {
+            final File obo = getOboFile( name );
+            final Ontology expected = new OboLoader( null ).parseOboFile( obo );
+
+            final Ontology mapped = new MappedOboLoader( null ).parseOboFile( obo );
+            Assert.assertTrue( mapped instanceof MappedOntology );
+            assertSameOntology( expected, mapped );
+
+            // the second time the file is mapped directly
+            final MappedOntology remapped = ( MappedOntology ) new MappedOboLoader( null ).parseOboFile( obo );
+            Assert.assertEquals( ( ( MappedOntology ) mapped ).getFile(), remapped.getFile() );
+            assertSameOntology( expected, remapped );
+        }
+    }
+
+    @Test
+    public void parseOboFile_corruptedFile() throws Exception {
+        final File obo = getOboFile( "psi-mi25.obo" );
+        final MappedOntology mapped = ( MappedOntology ) new MappedOboLoader( null ).parseOboFile( obo );
+
+        final RandomAccessFile raf = new RandomAccessFile( mapped.getFile(), "rw" );
+        raf.setLength( raf.length() - 10 );
+        raf.close();
+
+        final Ontology expected = new OboLoader( null ).parseOboFile( obo );
+        assertSameOntology( expected, new MappedOboLoader( null ).parseOboFile( obo ) );
+    }
+
+    @Test
+    public void parseOboFile_notStoredLocally() throws Exception {
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( false );
+        final File obo = getOboFile( "psi-mi25.obo" );
+
+        final Ontology mapped = new MappedOboLoader( null ).parseOboFile( obo );
+        Assert.assertTrue( mapped instanceof MappedOntology );
+        Assert.assertEquals( 0, directory.listFiles().length );
+        Assert.assertFalse( ( ( MappedOntology ) mapped ).getFile().exists() );
+        assertSameOntology( new OboLoader( null ).parseOboFile( obo ), mapped );
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void addTerm() throws Exception {
+        final Ontology mapped = new MappedOboLoader( null ).parseOboFile( getOboFile( "psi-mi25.obo" ) );
+        mapped.addTerm( new OntologyTermImpl( "MI:9999", "new term" ) );
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void addLink() throws Exception {
+        final Ontology mapped = new MappedOboLoader( null ).parseOboFile( getOboFile( "psi-mi25.obo" ) );
+        mapped.addLink( "MI:0000", "MI:0001" );
+    }
+
+    @Test
+    public void mappedKeyword() throws Exception {
+        final String uri = getOboFile( "psi-mi25.obo" ).toURI().toString();
+        final String config = "<cvSourceList>\n" +
+                              "    <cvSource source=\"Mapped\" uri=\"" + uri + "\" format=\"OBO\"\n" +
+                              "              name=\"PSI-MI\" identifier=\"MI\" version=\"2.5\"/>\n" +
+                              "</cvSourceList>";
+        final OntologyManager manager = new OntologyManager( new ByteArrayInputStream( config.getBytes( "UTF-8" ) ) );
+        final OntologyAccess mi = manager.getOntologyAccess( "MI" );
+        Assert.assertTrue( mi instanceof MappedLocalOntology );
+        Assert.assertTrue( ( ( MappedLocalOntology ) mi ).ontology instanceof MappedOntology );
+
+        final Set<OntologyTermI> terms = mi.getValidTerms( "MI:0417", true, false );
+        Assert.assertEquals( 7, terms.size() );
+        Assert.assertEquals( "footprinting", mi.getTermForAccession( "MI:0417" ).getPreferredName() );
+    }
+}
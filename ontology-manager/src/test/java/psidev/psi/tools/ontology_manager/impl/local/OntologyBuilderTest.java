@@ -0,0 +1,182 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.impl.OntologyTermImpl;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * OntologyBuilder Tester, checking that ontologies built in one go are the same as ontologies loaded term by term on
+ * the bundled OBO files.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OntologyBuilderTest {
+
+    /**
+     * The content of an OBO file, as given by the StreamingOboParser.
+     */
+    private static class ParsedOntology implements StreamingOboParser.Builder {
+        private final List<OntologyTermI> terms = new ArrayList<OntologyTermI>();
+        private final List<OntologyTermI> obsoleteTerms = new ArrayList<OntologyTermI>();
+        private final List<String> links = new ArrayList<String>();
+
+        public void addTerm( String id, String name, List<String> synonyms, boolean obsolete ) {
+            final OntologyTermI term = new OntologyTermImpl( id, name );
+            term.getNameSynonyms().addAll( synonyms );
+            terms.add( term );
+            if ( obsolete ) {
+                obsoleteTerms.add( term );
+            }
+        }
+
+        public void addLink( String parentId, String childId ) {
+            links.add( parentId );
+            links.add( childId );
+        }
+
+        private <O extends OntologyTemplate<OntologyTermI>> O loadIncrementally( O ontology ) {
+            for ( OntologyTermI term : terms ) {
+                ontology.addTerm( term );
+            }
+            for ( OntologyTermI term : obsoleteTerms ) {
+                ontology.addObsoleteTerm( term );
+            }
+            for ( int i = 0; i < links.size(); i += 2 ) {
+                ontology.addLink( links.get( i ), links.get( i + 1 ) );
+            }
+            ontology.buildIndex();
+            return ontology;
+        }
+
+        private <O extends OntologyTemplate<OntologyTermI>> O build( O ontology ) {
+            final OntologyBuilder<OntologyTermI> builder = new OntologyBuilder<OntologyTermI>( terms.size() );
+            for ( OntologyTermI term : terms ) {
+                builder.addTerm( term );
+            }
+            for ( OntologyTermI term : obsoleteTerms ) {
+                builder.addObsoleteTerm( term );
+            }
+            for ( int i = 0; i < links.size(); i += 2 ) {
+                builder.addLink( links.get( i ), links.get( i + 1 ) );
+            }
+            return builder.build( ontology );
+        }
+    }
+
+    private ParsedOntology parse( String name ) throws Exception {
+        final ParsedOntology parsed = new ParsedOntology();
+        final InputStream in = new FileInputStream( OntologyBuilderTest.class.getResource( "/" + name ).toURI().getPath() );
+        try {
+            new StreamingOboParser().parse( in, parsed );
+        } finally {
+            in.close();
+        }
+        return parsed;
+    }
+
+    private void assertSameOntology( Ontology expected, Ontology actual ) {
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getOntologyTerms() ),
+                             new HashSet<OntologyTermI>( actual.getOntologyTerms() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getRoots() ),
+                             new HashSet<OntologyTermI>( actual.getRoots() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getLeaves() ),
+                             new HashSet<OntologyTermI>( actual.getLeaves() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getObsoleteTerms() ),
+                             new HashSet<OntologyTermI>( actual.getObsoleteTerms() ) );
+
+        for ( OntologyTermI term : expected.getOntologyTerms() ) {
+            final String acc = term.getTermAccession();
+            Assert.assertEquals( acc, expected.search( acc ), actual.search( acc ) );
+            Assert.assertEquals( acc, expected.getDirectParents( term ), actual.getDirectParents( term ) );
+            Assert.assertEquals( acc, expected.getDirectChildren( term ), actual.getDirectChildren( term ) );
+            Assert.assertEquals( acc, expected.getAllChildren( term ), actual.getAllChildren( term ) );
+            Assert.assertEquals( acc, expected.getDepth( term ), actual.getDepth( term ) );
+            Assert.assertEquals( acc, expected.isObsoleteTerm( term ), actual.isObsoleteTerm( term ) );
+        }
+    }
+
+    private void compare( String oboFile ) throws Exception {
+        final ParsedOntology parsed = parse( oboFile );
+
+        final OntologyImpl incremental = parsed.loadIncrementally( new OntologyImpl() );
+        assertSameOntology( incremental, parsed.build( new OntologyImpl() ) );
+        assertSameOntology( incremental, parsed.build( new CompactOntology() ) );
+    }
+
+    @Test
+    public void compare_mod() throws Exception {
+        compare( "psi-mod.obo" );
+    }
+
+    @Test
+    public void compare_so() throws Exception {
+        compare( "so.obo" );
+    }
+
+    @Test
+    public void build_duplicates() throws Exception {
+        final OntologyTermI first = new OntologyTermImpl( "T:2", "first" );
+        final OntologyTermI second = new OntologyTermImpl( "T:2", "second" );
+
+        final OntologyBuilder<OntologyTermI> builder = new OntologyBuilder<OntologyTermI>();
+        builder.addTerm( new OntologyTermImpl( "T:1", "root" ) );
+        builder.addTerm( first );
+        builder.addTerm( second );
+        builder.addLink( "T:1", "T:2" );
+        builder.addLink( "T:1", "T:2" );
+        Assert.assertEquals( 2, builder.getTermCount() );
+
+        final OntologyImpl ontology = builder.build( new OntologyImpl() );
+        Assert.assertEquals( 2, ontology.getOntologyTerms().size() );
+        Assert.assertEquals( "second", ontology.search( "T:2" ).getPreferredName() );
+        Assert.assertEquals( 1, ontology.getDirectChildren( ontology.search( "T:1" ) ).size() );
+        Assert.assertEquals( 1, ontology.getDepth( second ) );
+        Assert.assertEquals( Collections.singleton( second ), new HashSet<OntologyTermI>( ontology.getLeaves() ) );
+    }
+
+    @Test
+    public void build_notEmpty() throws Exception {
+        final OntologyImpl ontology = new OntologyImpl();
+        ontology.addTerm( new OntologyTermImpl( "T:1", "root" ) );
+
+        final OntologyBuilder<OntologyTermI> builder = new OntologyBuilder<OntologyTermI>();
+        builder.addTerm( new OntologyTermImpl( "T:2", "child" ) );
+        builder.addTerm( new OntologyTermImpl( "T:1", "root" ) );
+        builder.addLink( "T:1", "T:2" );
+        builder.build( ontology );
+
+        Assert.assertEquals( 1, ontology.getRoots().size() );
+        Assert.assertEquals( 1, ontology.getAllChildren( ontology.search( "T:1" ) ).size() );
+    }
+
+    @Test
+    public void build_once() throws Exception {
+        final OntologyBuilder<OntologyTermI> builder = new OntologyBuilder<OntologyTermI>();
+        builder.addTerm( new OntologyTermImpl( "T:1", "root" ) );
+        builder.build( new CompactOntology() );
+        try {
+            builder.addTerm( new OntologyTermImpl( "T:2", "child" ) );
+            Assert.fail( "The builder cannot be used once the ontology is built" );
+        } catch ( IllegalStateException e ) {
+            // expected
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void addObsoleteTerm_unknown() throws Exception {
+        new OntologyBuilder<OntologyTermI>().addObsoleteTerm( new OntologyTermImpl( "T:1", "obsolete" ) );
+    }
+
+    @Test( expected = NullPointerException.class )
+    public void addLink_unknown() throws Exception {
+        final OntologyBuilder<OntologyTermI> builder = new OntologyBuilder<OntologyTermI>();
+        builder.addTerm( new OntologyTermImpl( "T:1", "root" ) );
+        builder.addLink( "T:1", "T:2" );
+    }
+}
@@ -0,0 +1,101 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * OntologySnapshot Tester.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OntologySnapshotTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile( "ontology-snapshots", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( true );
+        OntologyManagerContext.getInstance().setOntologyDirectory( directory );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        OntologyManagerContext.removeInstance();
+        for ( File file : directory.listFiles() ) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void assertSameOntology( Ontology expected, Ontology actual ) {
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getOntologyTerms() ),
+                             new HashSet<OntologyTermI>( actual.getOntologyTerms() ) );
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getObsoleteTerms() ),
+                             new HashSet<OntologyTermI>( actual.getObsoleteTerms() ) );
+
+        for ( OntologyTermI term : expected.getOntologyTerms() ) {
+            final OntologyTermI copy = actual.search( term.getTermAccession() );
+            Assert.assertEquals( term.getPreferredName(), copy.getPreferredName() );
+            Assert.assertEquals( new ArrayList<String>( term.getNameSynonyms() ),
+                                 new ArrayList<String>( copy.getNameSynonyms() ) );
+            Assert.assertEquals( expected.getDirectChildren( term ), actual.getDirectChildren( term ) );
+            Assert.assertEquals( expected.getDirectParents( term ), actual.getDirectParents( term ) );
+        }
+    }
+
+    @Test
+    public void parseOboFile_snapshot() throws Exception {
+        final File obo = new File( OntologySnapshotTest.class.getResource( "/psi-mi25.obo" ).toURI() );
+
+        long start = System.currentTimeMillis();
+        final Ontology parsed = new OboLoader( directory ).parseOboFile( obo );
+        final long parseTime = System.currentTimeMillis() - start;
+
+        final File[] snapshots = directory.listFiles();
+        Assert.assertEquals( 1, snapshots.length );
+        Assert.assertTrue( snapshots[0].getName().endsWith( ".snapshot" ) );
+
+        start = System.currentTimeMillis();
+        final Ontology restored = new OboLoader( directory ).parseOboFile( obo );
+        final long snapshotTime = System.currentTimeMillis() - start;
+        System.out.println( obo.getName() + ": parsed in " + parseTime + "ms, restored from snapshot in " + snapshotTime + "ms" );
+
+        assertSameOntology( parsed, restored );
+
+        // each loader has its own snapshot
+        final Ontology compact = new CompactOboLoader( directory ).parseOboFile( obo );
+        Assert.assertTrue( compact instanceof CompactOntology );
+        assertSameOntology( parsed, compact );
+        Assert.assertEquals( 2, directory.listFiles().length );
+        Assert.assertTrue( new CompactOboLoader( directory ).parseOboFile( obo ) instanceof CompactOntology );
+    }
+
+    @Test
+    public void parseOboFile_corruptedSnapshot() throws Exception {
+        final File obo = new File( OntologySnapshotTest.class.getResource( "/psi-mod.obo" ).toURI() );
+        final Ontology parsed = new OboLoader( directory ).parseOboFile( obo );
+
+        final File snapshot = directory.listFiles()[0];
+        final RandomAccessFile raf = new RandomAccessFile( snapshot, "rw" );
+        raf.setLength( raf.length() / 2 );
+        raf.close();
+
+        // the truncated snapshot is ignored, then replaced
+        assertSameOntology( parsed, new OboLoader( directory ).parseOboFile( obo ) );
+        assertSameOntology( parsed, new OboLoader( directory ).parseOboFile( obo ) );
+    }
+}
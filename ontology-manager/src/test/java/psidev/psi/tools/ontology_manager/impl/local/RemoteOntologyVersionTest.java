@@ -0,0 +1,309 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.OntologyManager;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RemoteOntologyVersion tester, checking the updates of ontologies served by a local HTTP server with conditional
+ * requests, and refreshing them in an OntologyManager.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class RemoteOntologyVersionTest {
+
+    /**
+     * Serves a small OBO file, answering conditional requests unless validators are turned off.
+     */
+    private static class OboHandler implements HttpHandler {
+        private volatile int version = 1;
+        private volatile boolean validators = true;
+        private volatile boolean failingGets = false;
+        private final AtomicInteger gets = new AtomicInteger();
+        private final AtomicInteger heads = new AtomicInteger();
+
+        private String getContent() {
+            final StringBuilder sb = new StringBuilder( "format-version: 1.2\n\n" );
+            sb.append( "[Term]\nid: T:0001\nname: root\n\n" );
+            for ( int i = 2; i <= version + 1; i++ ) {
+                sb.append( "[Term]\nid: T:000" ).append( i ).append( "\nname: term " ).append( i )
+                        .append( "\nis_a: T:0001 ! root\n\n" );
+            }
+            return sb.toString();
+        }
+
+        public void handle( HttpExchange exchange ) throws IOException {
+            final boolean head = "HEAD".equals( exchange.getRequestMethod() );
+            ( head ? heads : gets ).incrementAndGet();
+            if ( !head && failingGets ) {
+                exchange.sendResponseHeaders( 500, -1 );
+                exchange.close();
+                return;
+            }
+
+            final byte[] content = getContent().getBytes( StandardCharsets.UTF_8 );
+            final String etag = "\"v" + version + "\"";
+            if ( validators ) {
+                exchange.getResponseHeaders().set( "ETag", etag );
+                exchange.getResponseHeaders().set( "Last-Modified", "Mon, 0" + version + " Jan 2024 00:00:00 GMT" );
+                if ( etag.equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) ) {
+                    exchange.sendResponseHeaders( 304, -1 );
+                    exchange.close();
+                    return;
+                }
+            }
+            if ( head ) {
+                exchange.sendResponseHeaders( 200, -1 );
+            } else {
+                exchange.sendResponseHeaders( 200, content.length );
+                final OutputStream out = exchange.getResponseBody();
+                out.write( content );
+                out.close();
+            }
+            exchange.close();
+        }
+    }
+
+    /**
+     * Local ontology telling whether it was closed.
+     */
+    public static class CloseableOntology extends LocalOntology implements Closeable {
+        private volatile boolean closed;
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private HttpServer server;
+    private OboHandler handler;
+    private URI uri;
+
+    @Before
+    public void startServer() throws Exception {
+        handler = new OboHandler();
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/test.obo", handler );
+        server.start();
+        uri = new URI( "http://127.0.0.1:" + server.getAddress().getPort() + "/test.obo" );
+    }
+
+    @After
+    public void stopServer() {
+        server.stop( 0 );
+        OntologyManagerContext.removeInstance();
+    }
+
+    private LocalOntology load() throws Exception {
+        final LocalOntology ontology = new LocalOntology();
+        ontology.loadOntology( "T", "test", "1", "OBO", uri );
+        return ontology;
+    }
+
+    @Test
+    public void isOntologyUpToDate_conditionalRequest() throws Exception {
+        final LocalOntology ontology = load();
+        Assert.assertEquals( 1, handler.gets.get() );
+        Assert.assertNotNull( ontology.getTermForAccession( "T:0002" ) );
+
+        Assert.assertTrue( ontology.isOntologyUpToDate() );
+        Assert.assertTrue( ontology.isOntologyUpToDate() );
+        Assert.assertEquals( "the ontology is never downloaded again", 1, handler.gets.get() );
+        Assert.assertEquals( 2, handler.heads.get() );
+
+        handler.version = 2;
+        Assert.assertFalse( ontology.isOntologyUpToDate() );
+        Assert.assertEquals( 1, handler.gets.get() );
+    }
+
+    @Test
+    public void isOntologyUpToDate_noValidators() throws Exception {
+        handler.validators = false;
+        final LocalOntology ontology = load();
+        Assert.assertNull( ontology.remoteVersion.getEtag() );
+
+        // the file is downloaded again to compare its MD5 signature
+        final int gets = handler.gets.get();
+        Assert.assertTrue( ontology.isOntologyUpToDate() );
+        Assert.assertTrue( handler.gets.get() > gets );
+    }
+
+    @Test
+    public void storedOntology_keepsItsVersion() throws Exception {
+        final File directory = Files.createTempDirectory( "remote-ontology" ).toFile();
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( true );
+        OntologyManagerContext.getInstance().setOntologyDirectory( directory );
+
+        load();
+        Assert.assertEquals( 1, handler.gets.get() );
+
+        // reused as it did not change
+        Assert.assertNull( load().getTermForAccession( "T:0003" ) );
+        Assert.assertEquals( 1, handler.gets.get() );
+
+        // downloaded again once changed
+        handler.version = 2;
+        Assert.assertNotNull( load().getTermForAccession( "T:0003" ) );
+        Assert.assertEquals( 2, handler.gets.get() );
+    }
+
+    @Test
+    public void storedOntologies_loadedConcurrently() throws Exception {
+        final File directory = Files.createTempDirectory( "remote-ontology" ).toFile();
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( true );
+        OntologyManagerContext.getInstance().setOntologyDirectory( directory );
+        final OntologyManagerContext context = OntologyManagerContext.getInstance();
+
+        final int count = 8;
+        final List<URI> uris = new ArrayList<URI>();
+        for ( int i = 0; i < count; i++ ) {
+            server.createContext( "/test" + i + ".obo", handler );
+            uris.add( new URI( "http://127.0.0.1:" + server.getAddress().getPort() + "/test" + i + ".obo" ) );
+        }
+
+        // all the ontologies are downloaded at the same time, each of them being added to the registry
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Throwable> failures = Collections.synchronizedList( new ArrayList<Throwable>() );
+        final List<Thread> threads = new ArrayList<Thread>();
+        for ( final URI ontologyUri : uris ) {
+            final Thread thread = new Thread( new Runnable() {
+                public void run() {
+                    OntologyManagerContext.setInstance( context.copy() );
+                    try {
+                        start.await();
+                        new LocalOntology().loadOntology( "T", "test", "1", "OBO", ontologyUri );
+                    } catch ( Throwable t ) {
+                        failures.add( t );
+                    } finally {
+                        OntologyManagerContext.removeInstance();
+                    }
+                }
+            } );
+            thread.start();
+            threads.add( thread );
+        }
+        start.countDown();
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        Assert.assertEquals( Collections.emptyList(), failures );
+        Assert.assertEquals( count, handler.gets.get() );
+
+        final ObjectInputStream ois = new ObjectInputStream(
+                new FileInputStream( new File( directory, AbstractOboLoader.ONTOLOGY_REGISTRY_NAME ) ) );
+        final Map registryMap = ( Map ) ois.readObject();
+        ois.close();
+        Assert.assertEquals( count, registryMap.size() );
+
+        // all of them are reused afterwards
+        for ( URI ontologyUri : uris ) {
+            new LocalOntology().loadOntology( "T", "test", "1", "OBO", ontologyUri );
+        }
+        Assert.assertEquals( count, handler.gets.get() );
+    }
+
+    private OntologyManager createManager() throws Exception {
+        return createManager( "file" );
+    }
+
+    private OntologyManager createManager( String source ) throws Exception {
+        final String config = "<cvSourceList>\n" +
+                              "    <cvSource source=\"" + source + "\" uri=\"" + uri + "\" format=\"OBO\"\n" +
+                              "              name=\"test\" identifier=\"T\" version=\"1\"/>\n" +
+                              "</cvSourceList>";
+        return new OntologyManager( new ByteArrayInputStream( config.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+
+    @Test
+    public void refreshOntologies() throws Exception {
+        final OntologyManager manager = createManager();
+        final OntologyAccess previous = manager.getOntologyAccess( "T" );
+        final long generation = manager.getGeneration();
+        Assert.assertEquals( Collections.emptySet(), manager.refreshOntologies() );
+        Assert.assertSame( previous, manager.getOntologyAccess( "T" ) );
+        Assert.assertEquals( generation, manager.getGeneration() );
+
+        handler.version = 2;
+        Assert.assertEquals( Collections.singleton( "T" ), manager.refreshOntologies() );
+        Assert.assertTrue( manager.getGeneration() > generation );
+        Assert.assertNotNull( manager.getOntologyAccess( "T" ).getTermForAccession( "T:0003" ) );
+
+        // the previous version is left as it was for those still using it
+        Assert.assertNull( previous.getTermForAccession( "T:0003" ) );
+        Assert.assertNotNull( previous.getTermForAccession( "T:0002" ) );
+        manager.close();
+    }
+
+    @Test
+    public void refreshOntologies_closesReplacedOntology() throws Exception {
+        final OntologyManager manager = createManager( CloseableOntology.class.getName() );
+        final CloseableOntology previous = ( CloseableOntology ) manager.getOntologyAccess( "T" );
+
+        // the new version cannot be downloaded, the previous one is kept as it was
+        handler.version = 2;
+        handler.failingGets = true;
+        try {
+            manager.refreshOntologies();
+            Assert.fail( "the new version could not be loaded" );
+        } catch ( OntologyLoaderException e ) {
+            // expected
+        }
+        Assert.assertSame( previous, manager.getOntologyAccess( "T" ) );
+        Assert.assertFalse( previous.closed );
+
+        // the previous version is closed once replaced
+        handler.failingGets = false;
+        Assert.assertEquals( Collections.singleton( "T" ), manager.refreshOntologies() );
+        final CloseableOntology reloaded = ( CloseableOntology ) manager.getOntologyAccess( "T" );
+        Assert.assertNotSame( previous, reloaded );
+        Assert.assertTrue( previous.closed );
+        Assert.assertFalse( reloaded.closed );
+
+        manager.close();
+        Assert.assertTrue( reloaded.closed );
+    }
+
+    @Test
+    public void startRefreshing() throws Exception {
+        final OntologyManager manager = createManager();
+        final OntologyAccess previous = manager.getOntologyAccess( "T" );
+        manager.startRefreshing( 20, TimeUnit.MILLISECONDS );
+        try {
+            handler.version = 2;
+            final long deadline = System.currentTimeMillis() + 10000;
+            while ( manager.getOntologyAccess( "T" ) == previous && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 20 );
+            }
+            Assert.assertNotNull( manager.getOntologyAccess( "T" ).getTermForAccession( "T:0003" ) );
+        } finally {
+            manager.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package psidev.psi.tools.ontology_manager.impl.local;
+
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.impl.OntologyTermImpl;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * StreamingOboParser Tester, checking that it builds the same ontologies as the ols-core parser, with one or several
+ * threads.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class StreamingOboParserTest {
+
+    /**
+     * Loader building the ontology from the beans of the ols-core parser.
+     */
+    private static class OlsCoreOboLoader extends OboLoader {
+        OlsCoreOboLoader() {
+            super( null );
+        }
+
+        @Override
+        protected boolean isStreamingParserEnabled() {
+            return false;
+        }
+    }
+
+    private File getOboFile( String name ) throws Exception {
+        return new File( StreamingOboParserTest.class.getResource( "/" + name ).toURI() );
+    }
+
+    private void compare( String oboFile ) throws Exception {
+        final File file = getOboFile( oboFile );
+        final Ontology expected = new OlsCoreOboLoader().parseOboFile( file );
+        final Ontology actual = new OboLoader( null ).parseOboFile( file );
+
+        Assert.assertEquals( expected.getOntologyTerms().size(), actual.getOntologyTerms().size() );
+        for ( OntologyTermI term : expected.getOntologyTerms() ) {
+            final String acc = term.getTermAccession();
+            final OntologyTermI other = actual.search( acc );
+            Assert.assertNotNull( acc, other );
+            Assert.assertEquals( acc, term.getPreferredName(), other.getPreferredName() );
+            Assert.assertEquals( acc, term.getNameSynonyms(), other.getNameSynonyms() );
+            Assert.assertEquals( acc, expected.isObsoleteTerm( term ), actual.isObsoleteTerm( other ) );
+            Assert.assertEquals( acc, expected.getDirectChildren( term ), actual.getDirectChildren( other ) );
+        }
+        Assert.assertEquals( new HashSet<OntologyTermI>( expected.getRoots() ),
+                             new HashSet<OntologyTermI>( actual.getRoots() ) );
+    }
+
+    @Test
+    public void compare_mi() throws Exception {
+        compare( "psi-mi25.obo" );
+    }
+
+    @Test
+    public void compare_mod() throws Exception {
+        compare( "psi-mod.obo" );
+    }
+
+    @Test
+    public void compare_so() throws Exception {
+        compare( "so.obo" );
+    }
+
+    @Test
+    public void parse_escapesAndComments() throws Exception {
+        final String obo = "format-version: 1.2\r\n"
+                           + "\r\n"
+                           + "[Term]\r\n"
+                           + "id: T:1\r\n"
+                           + "name: root ! a comment\r\n"
+                           + "\r\n"
+                           + "[Typedef]\r\n"
+                           + "id: part_of\r\n"
+                           + "name: part of\r\n"
+                           + "\r\n"
+                           + "[Term]\r\n"
+                           + "id: T:2\r\n"
+                           + "name: a \\! b\\Wc\r\n"
+                           + "synonym: \"say \\\"hi\\\"\" EXACT []\r\n"
+                           + "exact_synonym: \"other\" []\r\n"
+                           + "is_a: T:1 ! root\r\n"
+                           + "is_a: T:404\r\n"
+                           + "\r\n"
+                           + "[Term]\r\n"
+                           + "id: T:3\r\n"
+                           + "relationship: part_of T:2 {cardinality=1}\r\n"
+                           + "is_obsolete: true";
+
+        final Map<String, OntologyTermI> terms = new LinkedHashMap<String, OntologyTermI>();
+        final Set<String> obsolete = new HashSet<String>();
+        final List<String> links = new ArrayList<String>();
+        new StreamingOboParser().parse( new ByteArrayInputStream( obo.getBytes( StandardCharsets.UTF_8 ) ),
+                                        new StreamingOboParser.Builder() {
+                                            public void addTerm( String id, String name, List<String> synonyms, boolean isObsolete ) {
+                                                final OntologyTermI term = new OntologyTermImpl( id, name );
+                                                term.getNameSynonyms().addAll( synonyms );
+                                                terms.put( id, term );
+                                                if ( isObsolete ) {
+                                                    obsolete.add( id );
+                                                }
+                                            }
+
+                                            public void addLink( String parentId, String childId ) {
+                                                links.add( parentId + ">" + childId );
+                                            }
+                                        } );
+
+        Assert.assertEquals( Arrays.asList( "T:1", "T:2", "T:3" ), new ArrayList<String>( terms.keySet() ) );
+        Assert.assertEquals( "root", terms.get( "T:1" ).getPreferredName() );
+        Assert.assertEquals( "a ! b c", terms.get( "T:2" ).getPreferredName() );
+        Assert.assertEquals( Arrays.asList( "say \"hi\"", "other" ), terms.get( "T:2" ).getNameSynonyms() );
+        Assert.assertNull( terms.get( "T:3" ).getPreferredName() );
+        Assert.assertEquals( Collections.singleton( "T:3" ), obsolete );
+        Assert.assertEquals( Arrays.asList( "T:1>T:2", "T:2>T:3" ), links );
+    }
+
+    /**
+     * Records the calls made to a Builder.
+     */
+    private static class RecordingBuilder implements StreamingOboParser.Builder {
+        private final List<String> calls = new ArrayList<String>();
+
+        public void addTerm( String id, String name, List<String> synonyms, boolean obsolete ) {
+            calls.add( "term " + id + " " + name + " " + synonyms + " " + obsolete );
+        }
+
+        public void addLink( String parentId, String childId ) {
+            calls.add( "link " + parentId + " " + childId );
+        }
+    }
+
+    private void compareParallel( String oboFile ) throws Exception {
+        final File file = getOboFile( oboFile );
+
+        final RecordingBuilder expected = new RecordingBuilder();
+        InputStream in = new FileInputStream( file );
+        try {
+            new StreamingOboParser().parse( in, expected );
+        } finally {
+            in.close();
+        }
+
+        for ( int chunkSize : new int[]{ 1, 4096, 64 * 1024, Integer.MAX_VALUE } ) {
+            final RecordingBuilder actual = new RecordingBuilder();
+            in = new FileInputStream( file );
+            try {
+                new StreamingOboParser().parseInParallel( in, actual, chunkSize );
+            } finally {
+                in.close();
+            }
+            Assert.assertEquals( oboFile + " in chunks of " + chunkSize, expected.calls, actual.calls );
+        }
+    }
+
+    @Test
+    public void parseInParallel_mi() throws Exception {
+        compareParallel( "psi-mi25.obo" );
+    }
+
+    @Test
+    public void parseInParallel_mod() throws Exception {
+        compareParallel( "psi-mod.obo" );
+    }
+
+    @Test
+    public void parseInParallel_so() throws Exception {
+        compareParallel( "so.obo" );
+    }
+
+    @Test
+    public void parseOboFile_singleThreaded() throws Exception {
+        final File file = getOboFile( "psi-mod.obo" );
+        final OntologyManagerContext context = OntologyManagerContext.getInstance();
+        try {
+            context.setParallelOboParsing( false );
+            final Ontology expected = new OboLoader( null ).parseOboFile( file );
+
+            context.setParallelOboParsing( true );
+            final Ontology actual = new OboLoader( null ).parseOboFile( file );
+
+            Assert.assertEquals( new ArrayList<OntologyTermI>( expected.getOntologyTerms() ),
+                                 new ArrayList<OntologyTermI>( actual.getOntologyTerms() ) );
+            for ( OntologyTermI term : expected.getOntologyTerms() ) {
+                Assert.assertEquals( term.getTermAccession(), expected.getDirectChildren( term ), actual.getDirectChildren( term ) );
+            }
+        } finally {
+            OntologyManagerContext.removeInstance();
+        }
+    }
+}
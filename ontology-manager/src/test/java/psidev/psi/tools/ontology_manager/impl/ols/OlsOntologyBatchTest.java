@@ -0,0 +1,186 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tester of the batch methods of AbstractOlsOntology, checking that their queries run in parallel up to the query
+ * parallelism and that prefetched terms need no more query, and of the synonyms of the terms being only queried when
+ * used.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OlsOntologyBatchTest {
+
+    @After
+    public void tearDown() {
+        OntologyManagerContext.removeInstance();
+    }
+
+    private OlsOntology load( StubOlsClient client, int parallelism ) throws Exception {
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( false );
+        final OlsOntology ontology = new OlsOntology();
+        ontology.olsClient = client;
+        ontology.setQueryParallelism( parallelism );
+        ontology.loadOntology( "T", "test", "1", "OLS", null );
+        return ontology;
+    }
+
+    @Test
+    public void getTermsForAccessions() throws Exception {
+        final StubOlsClient client = new StubOlsClient( "2024-01-01", 20, 20 );
+        final OlsOntology ontology = load( client, 4 );
+
+        final List<String> accessions = new ArrayList<String>();
+        for ( int i = 1; i <= 21; i++ ) {
+            accessions.add( "T:" + i );
+        }
+        accessions.add( "T:1" );
+
+        final Map<String, OntologyTermI> terms = ontology.getTermsForAccessions( accessions );
+        Assert.assertEquals( accessions.subList( 0, 20 ), new ArrayList<String>( terms.keySet() ) );
+        Assert.assertEquals( "term T:5", terms.get( "T:5" ).getPreferredName() );
+        Assert.assertEquals( Collections.singletonList( "synonym of T:5" ),
+                             new ArrayList<String>( terms.get( "T:5" ).getNameSynonyms() ) );
+        Assert.assertTrue( client.maxRunning.get() > 1 );
+        Assert.assertTrue( client.maxRunning.get() <= 4 );
+    }
+
+    /**
+     * @return the maximum number of queries that ran at the same time.
+     */
+    private int fetchTermSynonyms( int parallelism ) throws Exception {
+        final StubOlsClient client = new StubOlsClient( "2024-01-01", 41, 10 );
+        final OlsOntology ontology = load( client, parallelism );
+        final Set<OntologyTermI> children = ontology.getAllChildren( ontology.getTermForAccession( "T:1" ) );
+        ontology.fetchTermSynonyms( children );
+
+        final int queries = client.queries.get();
+        Assert.assertEquals( 40, children.size() );
+        for ( OntologyTermI child : children ) {
+            Assert.assertEquals( 1, child.getNameSynonyms().size() );
+        }
+        Assert.assertEquals( queries, client.queries.get() );
+        return client.maxRunning.get();
+    }
+
+    @Test
+    public void fetchTermSynonyms_inParallel() throws Exception {
+        Assert.assertEquals( 1, fetchTermSynonyms( 1 ) );
+        final int maxRunning = fetchTermSynonyms( 8 );
+        Assert.assertTrue( maxRunning > 1 );
+        Assert.assertTrue( maxRunning <= 8 );
+    }
+
+    @Test
+    public void getTermsForAccessions_sharedParallelism() throws Exception {
+        // batches of many threads at the same time share the query parallelism of the ontology
+        final StubOlsClient client = new StubOlsClient( "2024-01-01", 200, 10 );
+        final OlsOntology ontology = load( client, 4 );
+        final int threads = 6;
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<Map<String, OntologyTermI>>> results = new ArrayList<Future<Map<String, OntologyTermI>>>();
+            for ( int t = 0; t < threads; t++ ) {
+                final List<String> accessions = new ArrayList<String>();
+                for ( int i = 1; i <= 20; i++ ) {
+                    accessions.add( "T:" + ( t * 20 + i ) );
+                }
+                results.add( executor.submit( new Callable<Map<String, OntologyTermI>>() {
+                    public Map<String, OntologyTermI> call() {
+                        return ontology.getTermsForAccessions( accessions );
+                    }
+                } ) );
+            }
+            for ( Future<Map<String, OntologyTermI>> result : results ) {
+                Assert.assertEquals( 20, result.get( 60, TimeUnit.SECONDS ).size() );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals( threads * 20, client.queries.get() );
+        Assert.assertTrue( client.maxRunning.get() > 1 );
+        Assert.assertTrue( client.maxRunning.get() <= 4 );
+    }
+
+    @Test
+    public void getAllChildren_synonymsOnFirstUse() throws Exception {
+        final StubOlsClient client = new StubOlsClient( "2024-01-01", 41, 0 );
+        final OlsOntology ontology = load( client, 4 );
+        final OntologyTermI root = ontology.getTermForAccession( "T:1" );
+        Assert.assertEquals( 1, client.queries.get() );
+
+        // validating by accession only never queries the synonyms
+        final Set<OntologyTermI> children = ontology.getAllChildren( root );
+        Assert.assertEquals( 40, children.size() );
+        Assert.assertEquals( 2, client.queries.get() );
+
+        final OntologyTermI child = children.iterator().next();
+        Assert.assertEquals( Collections.singletonList( "synonym of " + child.getTermAccession() ),
+                             new ArrayList<String>( child.getNameSynonyms() ) );
+        Assert.assertEquals( 3, client.queries.get() );
+        child.getNameSynonyms().size();
+        Assert.assertEquals( 3, client.queries.get() );
+    }
+
+    @Test
+    public void setUseTermSynonyms_keepsCache() throws Exception {
+        final StubOlsClient client = new StubOlsClient( "2024-01-01", 5, 0 );
+        final OlsOntology ontology = load( client, 4 );
+        ontology.setUseTermSynonyms( false );
+        final OntologyTermI term = ontology.getTermForAccession( "T:2" );
+        Assert.assertTrue( term.getNameSynonyms().isEmpty() );
+        Assert.assertEquals( 1, client.queries.get() );
+
+        ontology.setUseTermSynonyms( true );
+        Assert.assertSame( term, ontology.getTermForAccession( "T:2" ) );
+        Assert.assertEquals( 1, term.getNameSynonyms().size() );
+        Assert.assertEquals( 2, client.queries.get() );
+
+        // the synonyms already queried are kept
+        ontology.setUseTermSynonyms( false );
+        Assert.assertEquals( 1, ontology.getTermForAccession( "T:2" ).getNameSynonyms().size() );
+        Assert.assertEquals( 2, client.queries.get() );
+    }
+
+    @Test
+    public void getAllChildrenOf() throws Exception {
+        final OlsOntology ontology = load( new StubOlsClient( "2024-01-01", 5, 0 ), 4 );
+        final Collection<OntologyTermI> terms = ontology.getTermsForAccessions( Arrays.asList( "T:1", "T:2" ) ).values();
+
+        final Map<OntologyTermI, Set<OntologyTermI>> children = ontology.getAllChildrenOf( terms );
+        Assert.assertEquals( 2, children.size() );
+        Assert.assertEquals( 4, children.get( ontology.getTermForAccession( "T:1" ) ).size() );
+        Assert.assertTrue( children.get( ontology.getTermForAccession( "T:2" ) ).isEmpty() );
+    }
+
+    @Test
+    public void prefetch() throws Exception {
+        final StubOlsClient client = new StubOlsClient( "2024-01-01", 10, 0 );
+        final OlsOntology ontology = load( client, 4 );
+        ontology.prefetch( Arrays.asList( "T:1", "T:2", "T:99" ), true );
+        final int queries = client.queries.get();
+
+        // what the validator asks for the terms of the rules
+        for ( String accession : Arrays.asList( "T:1", "T:2" ) ) {
+            final OntologyTermI term = ontology.getTermForAccession( accession );
+            ontology.isObsolete( term );
+            ontology.getDirectChildren( term );
+            ontology.getValidTerms( accession, true, true );
+        }
+        Assert.assertEquals( 9, ontology.getAllChildren( ontology.getTermForAccession( "T:1" ) ).size() );
+        Assert.assertEquals( queries, client.queries.get() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void setQueryParallelism_invalid() throws Exception {
+        load( new StubOlsClient( "2024-01-01" ), 0 );
+    }
+}
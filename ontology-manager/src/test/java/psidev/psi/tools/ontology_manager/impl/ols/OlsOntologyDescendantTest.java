@@ -0,0 +1,50 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+/**
+ * Tester of AbstractOlsOntology.isDescendantOf, checking that it walks up from the child instead of collecting all the
+ * children of the ancestor.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OlsOntologyDescendantTest {
+
+    @After
+    public void tearDown() {
+        OntologyManagerContext.removeInstance();
+    }
+
+    private OlsOntology load( StubOlsClient client ) throws Exception {
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( false );
+        final OlsOntology ontology = new OlsOntology();
+        ontology.olsClient = client;
+        ontology.loadOntology( "T", "test", "1", "OLS", null );
+        return ontology;
+    }
+
+    @Test
+    public void isDescendantOf() throws Exception {
+        final StubOlsClient client = new StubOlsClient( "2024-01-01", 10001, 0 );
+        final OlsOntology ontology = load( client );
+        final OntologyTermI root = ontology.getTermForAccession( "T:1" );
+        final OntologyTermI leaf = ontology.getTermForAccession( "T:5000" );
+        final OntologyTermI other = ontology.getTermForAccession( "T:6000" );
+        final int queries = client.queries.get();
+
+        Assert.assertTrue( ontology.isDescendantOf( leaf, root ) );
+        Assert.assertFalse( ontology.isDescendantOf( root, leaf ) );
+        Assert.assertFalse( ontology.isDescendantOf( leaf, other ) );
+        Assert.assertFalse( ontology.isDescendantOf( leaf, leaf ) );
+        Assert.assertFalse( ontology.isDescendantOf( null, root ) );
+
+        // the parents of the leaf and of the root, the children of the root being never asked for
+        Assert.assertEquals( queries + 2, client.queries.get() );
+        Assert.assertEquals( -1, ontology.getDescendantCount( root ) );
+    }
+}
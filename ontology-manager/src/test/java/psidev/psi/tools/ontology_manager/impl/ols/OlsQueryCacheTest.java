@@ -0,0 +1,177 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OlsQueryCache tester, checking that concurrent misses of a query run it once and that the cache keeps to its bounds.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OlsQueryCacheTest {
+
+    private static class CountingQuery implements OlsQueryCache.Query<String> {
+        private final AtomicInteger runs = new AtomicInteger();
+        private final String result;
+
+        private CountingQuery( String result ) {
+            this.result = result;
+        }
+
+        public String run() {
+            runs.incrementAndGet();
+            return result;
+        }
+    }
+
+    @Test
+    public void get_cached() throws Exception {
+        final OlsQueryCache cache = new OlsQueryCache();
+        final CountingQuery query = new CountingQuery( "name" );
+        Assert.assertEquals( "name", cache.get( "key", query ) );
+        Assert.assertEquals( "name", cache.get( "key", query ) );
+        Assert.assertEquals( 1, query.runs.get() );
+
+        // OLS may give nothing, which is cached as well
+        final CountingQuery nothing = new CountingQuery( null );
+        Assert.assertNull( cache.get( "nothing", nothing ) );
+        Assert.assertNull( cache.get( "nothing", nothing ) );
+        Assert.assertEquals( 1, nothing.runs.get() );
+        Assert.assertEquals( 2, cache.size() );
+    }
+
+    @Test
+    public void get_coalesced() throws Exception {
+        final OlsQueryCache cache = new OlsQueryCache();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch answered = new CountDownLatch( 1 );
+        final AtomicInteger runs = new AtomicInteger();
+        final OlsQueryCache.Query<String> slowQuery = new OlsQueryCache.Query<String>() {
+            public String run() {
+                runs.incrementAndGet();
+                started.countDown();
+                try {
+                    answered.await();
+                } catch ( InterruptedException e ) {
+                    throw new IllegalStateException( e );
+                }
+                return "name";
+            }
+        };
+
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for ( int i = 0; i < threads; i++ ) {
+                results.add( executor.submit( new Callable<String>() {
+                    public String call() {
+                        return cache.get( "key", slowQuery );
+                    }
+                } ) );
+            }
+            Assert.assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+            // other keys are not held up by the query in flight
+            Assert.assertEquals( "other", cache.get( "other", new CountingQuery( "other" ) ) );
+
+            answered.countDown();
+            for ( Future<String> result : results ) {
+                Assert.assertEquals( "name", result.get( 10, TimeUnit.SECONDS ) );
+            }
+            Assert.assertEquals( 1, runs.get() );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void get_failed() throws Exception {
+        final OlsQueryCache cache = new OlsQueryCache();
+        try {
+            cache.get( "key", new OlsQueryCache.Query<String>() {
+                public String run() {
+                    throw new IllegalStateException( "RemoteException while trying to connect to OLS." );
+                }
+            } );
+            Assert.fail( "The failure of the query should be thrown" );
+        } catch ( IllegalStateException e ) {
+            // expected
+        }
+
+        // failures are not cached
+        Assert.assertEquals( 0, cache.size() );
+        Assert.assertEquals( "name", cache.get( "key", new CountingQuery( "name" ) ) );
+    }
+
+    @Test
+    public void get_capacity() throws Exception {
+        final OlsQueryCache cache = new OlsQueryCache( 100, 0, TimeUnit.SECONDS );
+        final CountingQuery first = new CountingQuery( "first" );
+        cache.get( "first", first );
+        for ( int i = 0; i < 1000; i++ ) {
+            cache.get( "key" + i, new CountingQuery( "value" + i ) );
+            // the first entry is the most used one
+            cache.get( "first", first );
+        }
+        Assert.assertTrue( cache.size() <= 100 );
+        Assert.assertEquals( 1, first.runs.get() );
+    }
+
+    @Test
+    public void get_capacity_concurrent() throws Exception {
+        // entries are evicted while other threads keep reading them
+        final OlsQueryCache cache = new OlsQueryCache( 100, 0, TimeUnit.SECONDS );
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<?>> results = new ArrayList<Future<?>>();
+            for ( int t = 0; t < threads; t++ ) {
+                final int seed = t;
+                results.add( executor.submit( new Callable<Void>() {
+                    public Void call() {
+                        for ( int i = 0; i < 20000; i++ ) {
+                            final int key = ( i * 31 + seed * 7 ) % ( i % 3 == 0 ? 50 : 1000 );
+                            cache.get( "key" + key, new CountingQuery( "value" + key ) );
+                        }
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<?> result : results ) {
+                result.get( 60, TimeUnit.SECONDS );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertTrue( String.valueOf( cache.size() ), cache.size() <= 100 );
+    }
+
+    @Test
+    public void get_expiry() throws Exception {
+        final OlsQueryCache cache = new OlsQueryCache( 0, 50, TimeUnit.MILLISECONDS );
+        final CountingQuery query = new CountingQuery( "name" );
+        cache.get( "key", query );
+        cache.get( "key", query );
+        Assert.assertEquals( 1, query.runs.get() );
+
+        Thread.sleep( 100 );
+        cache.get( "key", query );
+        Assert.assertEquals( 2, query.runs.get() );
+    }
+
+    @Test
+    public void fromProperties() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty( OlsQueryCache.CAPACITY, "50000" );
+        Assert.assertEquals( 50000, OlsQueryCache.fromProperties( properties ).getCapacity() );
+        Assert.assertEquals( 0, OlsQueryCache.fromProperties( new Properties() ).getCapacity() );
+    }
+}
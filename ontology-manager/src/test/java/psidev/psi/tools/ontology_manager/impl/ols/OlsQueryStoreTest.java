@@ -0,0 +1,179 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import psidev.psi.tools.ontology_manager.OntologyManager;
+import psidev.psi.tools.ontology_manager.OntologyManagerContext;
+import psidev.psi.tools.ontology_manager.OntologyUtils;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * OlsQueryStore tester, checking that the results of the OLS queries are used again after a restart, as long as OLS
+ * does not load a new version of the ontology.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class OlsQueryStoreTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory( "ols-cache" ).toFile();
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( true );
+        OntologyManagerContext.getInstance().setOntologyDirectory( directory );
+    }
+
+    @After
+    public void tearDown() {
+        OntologyManagerContext.removeInstance();
+    }
+
+    private OlsOntology load( StubOlsClient client ) throws Exception {
+        final OlsOntology ontology = new OlsOntology();
+        ontology.olsClient = client;
+        ontology.loadOntology( "T", "test", "1", "OLS", null );
+        return ontology;
+    }
+
+    private void close( OlsOntology ontology ) throws Exception {
+        ontology.close();
+        Assert.assertNull( ontology.cache.getStore() );
+    }
+
+    /**
+     * @return the results of a few queries, as strings.
+     */
+    private List<String> query( OlsOntology ontology ) {
+        final List<String> results = new ArrayList<String>();
+        final OntologyTermI root = ontology.getTermForAccession( "T:1" );
+        results.add( root + " " + root.getNameSynonyms() );
+        results.add( String.valueOf( ontology.getTermForAccession( "T:4" ) ) );
+        results.add( new TreeSet<String>( OntologyUtils.getAccessions( ontology.getValidTerms( "T:1", true, true ) ) ).toString() );
+        for ( OntologyTermI child : ontology.getAllChildren( root ) ) {
+            results.add( child + " " + child.getNameSynonyms() + " " + ontology.isObsolete( child )
+                         + " " + ontology.getDirectParents( child ) );
+        }
+        Collections.sort( results );
+        return results;
+    }
+
+    @Test
+    public void warmRestart() throws Exception {
+        final StubOlsClient client = new StubOlsClient( "2024-01-01" );
+        final OlsOntology ontology = load( client );
+        final List<String> results = query( ontology );
+        Assert.assertTrue( client.queries.get() > 0 );
+        Assert.assertTrue( ontology.cache.getStore().size() > 0 );
+        close( ontology );
+
+        final StubOlsClient restarted = new StubOlsClient( "2024-01-01" );
+        final OlsOntology warm = load( restarted );
+        Assert.assertEquals( results, query( warm ) );
+        Assert.assertEquals( "no query is sent to OLS again", 0, restarted.queries.get() );
+        close( warm );
+    }
+
+    @Test
+    public void newLoadDate() throws Exception {
+        final OlsOntology ontology = load( new StubOlsClient( "2024-01-01" ) );
+        final List<String> results = query( ontology );
+        close( ontology );
+
+        final StubOlsClient updated = new StubOlsClient( "2024-02-01" );
+        final OlsOntology reloaded = load( updated );
+        Assert.assertEquals( 0, reloaded.cache.getStore().size() );
+        Assert.assertEquals( results, query( reloaded ) );
+        Assert.assertTrue( updated.queries.get() > 0 );
+        close( reloaded );
+    }
+
+    @Test
+    public void incompleteRecord() throws Exception {
+        final OlsOntology ontology = load( new StubOlsClient( "2024-01-01" ) );
+        final List<String> results = query( ontology );
+        final File file = ontology.cache.getStore().getFile();
+        final int stored = ontology.cache.getStore().size();
+        close( ontology );
+
+        // as if the process stopped while appending a record
+        final FileOutputStream out = new FileOutputStream( file, true );
+        out.write( new byte[]{0, 0, 1, 0, 42} );
+        out.close();
+
+        final StubOlsClient restarted = new StubOlsClient( "2024-01-01" );
+        final OlsOntology warm = load( restarted );
+        Assert.assertEquals( stored, warm.cache.getStore().size() );
+        Assert.assertEquals( results, query( warm ) );
+        Assert.assertEquals( 0, restarted.queries.get() );
+        close( warm );
+    }
+
+    @Test
+    public void notStoredLocally() throws Exception {
+        OntologyManagerContext.getInstance().setStoreOntologiesLocally( false );
+        final OlsOntology ontology = load( new StubOlsClient( "2024-01-01" ) );
+        query( ontology );
+        Assert.assertNull( ontology.cache.getStore() );
+        Assert.assertEquals( 0, directory.list().length );
+    }
+
+    @Test
+    public void alreadyUsed() throws Exception {
+        final OlsOntology ontology = load( new StubOlsClient( "2024-01-01" ) );
+        Assert.assertNotNull( ontology.cache.getStore() );
+
+        // a single ontology appends to the stored results at a time
+        Assert.assertNull( load( new StubOlsClient( "2024-01-01" ) ).cache.getStore() );
+        close( ontology );
+    }
+
+    @Test
+    public void closedByManager() throws Exception {
+        final OlsOntology ontology = load( new StubOlsClient( "2024-01-01" ) );
+        final List<String> results = query( ontology );
+        final OntologyManager manager = new OntologyManager();
+        manager.putOntology( "T", ontology );
+        manager.close();
+
+        // the ontology still answers from memory, the next instance gets the stored results
+        Assert.assertNull( ontology.cache.getStore() );
+        Assert.assertEquals( results, query( ontology ) );
+        final StubOlsClient restarted = new StubOlsClient( "2024-01-01" );
+        final OlsOntology reloaded = load( restarted );
+        Assert.assertNotNull( reloaded.cache.getStore() );
+        Assert.assertEquals( results, query( reloaded ) );
+        Assert.assertEquals( 0, restarted.queries.get() );
+        close( reloaded );
+    }
+
+    @Test
+    public void closedWhenReplaced() throws Exception {
+        final OlsOntology ontology = load( new StubOlsClient( "2024-01-01" ) );
+        final List<String> results = query( ontology );
+        final OntologyManager manager = new OntologyManager();
+        manager.putOntology( "T", ontology );
+
+        // the replaced ontology releases the stored results, the next instance gets them
+        final OlsOntology other = load( new StubOlsClient( "2024-01-01" ) );
+        Assert.assertNull( other.cache.getStore() );
+        Assert.assertSame( ontology, manager.putOntology( "T", other ) );
+        Assert.assertNull( ontology.cache.getStore() );
+
+        final StubOlsClient restarted = new StubOlsClient( "2024-01-01" );
+        final OlsOntology reloaded = load( restarted );
+        Assert.assertNotNull( reloaded.cache.getStore() );
+        Assert.assertEquals( results, query( reloaded ) );
+        Assert.assertEquals( 0, restarted.queries.get() );
+        close( reloaded );
+        manager.close();
+    }
+}
@@ -0,0 +1,121 @@
+package psidev.psi.tools.ontology_manager.impl.ols;
+
+import psidev.psi.tools.ontology_manager.client.OlsClient;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands for OLS serving a small ontology: the root T:1 with the leaves T:2 to T:n as children, T:3 being obsolete.
+ * It counts the queries and how many of them run at the same time.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+class StubOlsClient extends OlsClient {
+
+    private final String loadDate;
+    private final int termCount;
+    private final long delay;
+
+    final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * @param loadDate  the date OLS loaded the ontology.
+     * @param termCount the number of terms, root included.
+     * @param delay     how long each query takes, in milliseconds.
+     */
+    StubOlsClient( String loadDate, int termCount, long delay ) {
+        this.loadDate = loadDate;
+        this.termCount = termCount;
+        this.delay = delay;
+    }
+
+    StubOlsClient( String loadDate ) {
+        this( loadDate, 3, 0 );
+    }
+
+    private boolean exists( String accession ) {
+        if ( !accession.startsWith( "T:" ) ) {
+            return false;
+        }
+        try {
+            final int number = Integer.parseInt( accession.substring( 2 ) );
+            return number >= 1 && number <= termCount;
+        } catch ( NumberFormatException e ) {
+            return false;
+        }
+    }
+
+    private void query() {
+        queries.incrementAndGet();
+        final int now = running.incrementAndGet();
+        int max;
+        while ( ( max = maxRunning.get() ) < now && !maxRunning.compareAndSet( max, now ) ) {
+            // try again
+        }
+        try {
+            if ( delay > 0 ) {
+                Thread.sleep( delay );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private Map<String, String> map( int from, int to ) {
+        final Map<String, String> map = new HashMap<String, String>();
+        for ( int i = from; i <= to; i++ ) {
+            map.put( "T:" + i, "term T:" + i );
+        }
+        return map;
+    }
+
+    @Override
+    public String getOntologyLoadDate( String ontologyId ) {
+        return loadDate;
+    }
+
+    @Override
+    public Map getRootTerms( String ontologyId ) {
+        return map( 1, 1 );
+    }
+
+    @Override
+    public String getTermById( String accession, String ontologyId ) {
+        query();
+        return exists( accession ) ? "term " + accession : accession;
+    }
+
+    @Override
+    public Map getTermMetadata( String termAccession, String ontologyId ) {
+        query();
+        final Map<String, Map<String, String>> metadata = new HashMap<String, Map<String, String>>();
+        metadata.put( "exact_synonym", Collections.singletonMap( "synonym of " + termAccession, "exact" ) );
+        return metadata;
+    }
+
+    @Override
+    public boolean isObsolete( String termAccession, String ontologyId ) {
+        query();
+        return "T:3".equals( termAccession );
+    }
+
+    @Override
+    public Map getTermParents( String termAccession, String ontologyId ) {
+        query();
+        return "T:1".equals( termAccession ) ? map( 1, 0 ) : map( 1, 1 );
+    }
+
+    @Override
+    public Map getTermChildren( String termAccession, String ontologyId, int level ) {
+        query();
+        return "T:1".equals( termAccession ) ? map( 2, termCount ) : map( 1, 0 );
+    }
+}
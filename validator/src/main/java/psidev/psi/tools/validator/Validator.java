@@ -12,6 +12,7 @@ import psidev.psi.tools.ontology_manager.OntologyManager;
 import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
 import psidev.psi.tools.validator.preferences.UserPreferences;
 import psidev.psi.tools.validator.rules.codedrule.ObjectRule;
+import psidev.psi.tools.validator.rules.codedrule.ObjectRuleIndex;
 import psidev.psi.tools.validator.rules.cvmapping.CvRule;
 import psidev.psi.tools.validator.rules.cvmapping.CvRuleManager;
 import psidev.psi.tools.validator.util.ValidatorReport;
@@ -98,7 +99,64 @@ public abstract class Validator {
      * The set of rules specific to that Validator.
      * List of ObjectRuleS
      */
-    private Set<ObjectRule> rules = new HashSet<>();
+    private final Set<ObjectRule> rules = new ObjectRuleSet();
+
+    /**
+     * If true, the object rules are dispatched by class of the objects to validate.
+     */
+    private boolean objectRuleIndexEnabled = false;
+
+    /**
+     * Object rules indexed by target type, built when first needed and dropped whenever the rules change.
+     */
+    private ObjectRuleIndex objectRuleIndex;
+
+    /**
+     * Set of the object rules dropping the index of the rules whenever it is modified, be it by this validator or
+     * through getObjectRules().
+     */
+    private class ObjectRuleSet extends AbstractSet<ObjectRule> {
+
+        private final Set<ObjectRule> set = new HashSet<>();
+
+        @Override
+        public boolean add( ObjectRule rule ) {
+            final boolean added = set.add( rule );
+            if ( added ) {
+                objectRuleIndex = null;
+            }
+            return added;
+        }
+
+        @Override
+        public boolean contains( Object o ) {
+            return set.contains( o );
+        }
+
+        @Override
+        public Iterator<ObjectRule> iterator() {
+            final Iterator<ObjectRule> iterator = set.iterator();
+            return new Iterator<ObjectRule>() {
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public ObjectRule next() {
+                    return iterator.next();
+                }
+
+                public void remove() {
+                    iterator.remove();
+                    objectRuleIndex = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return set.size();
+        }
+    }
 
     /**
      * The map containing the set of Rules excluded by each imported object rule file
@@ -135,6 +193,11 @@ public abstract class Validator {
      */
     private CvRuleManager cvRuleManager;
 
+    /**
+     * If true, the CvRules evaluate their XPaths made only of child steps by calling the getters directly.
+     */
+    private boolean propertyPathsEnabled = false;
+
     //////////////////////
     // Constructor
 
@@ -206,11 +269,32 @@ public abstract class Validator {
 
     protected void instantiateCvRuleManager(OntologyManager manager, CvMapping cvMappingRules){
         this.cvRuleManager = new CvRuleManager(manager, cvMappingRules);
+        this.cvRuleManager.setPropertyPathsEnabled(propertyPathsEnabled);
     }
 
     protected void setCvRuleManager(CvRuleManager manager){
         if (manager != null){
             this.cvRuleManager = manager;
+            this.cvRuleManager.setPropertyPathsEnabled(propertyPathsEnabled);
+        }
+    }
+
+    public boolean isPropertyPathsEnabled() {
+        return propertyPathsEnabled;
+    }
+
+    /**
+     * Selects how the CvMapping rules of this validator evaluate their XPath expressions. When enabled, the
+     * expressions only made of child steps (e.g. /garage/bikes/@color) are evaluated by calling the getters of the
+     * objects directly, the other ones are still evaluated by JXPath. Disabled by default.
+     *
+     * @param propertyPathsEnabled true to evaluate the simple XPath expressions without JXPath.
+     * @see psidev.psi.tools.validator.xpath.PropertyPath
+     */
+    public void setPropertyPathsEnabled( boolean propertyPathsEnabled ) {
+        this.propertyPathsEnabled = propertyPathsEnabled;
+        if ( cvRuleManager != null ) {
+            cvRuleManager.setPropertyPathsEnabled( propertyPathsEnabled );
         }
     }
 
@@ -244,6 +328,10 @@ public abstract class Validator {
         }
     }
 
+    /**
+     * @return the object rules of this validator, changes made to that set are taken into account by the next
+     *         validations.
+     */
     public Set<ObjectRule> getObjectRules() {
         return rules;
     }
@@ -587,6 +675,29 @@ public abstract class Validator {
          }
     }
 
+    public boolean isObjectRuleIndexEnabled() {
+        return objectRuleIndexEnabled;
+    }
+
+    /**
+     * When enabled, the object rules are indexed by the type of objects they can check (see
+     * ObjectRule.getTargetType()) and an object is only checked by the rules that target one of its superclasses or
+     * interfaces, or that do not declare any target type. Disabled by default.
+     *
+     * @param objectRuleIndexEnabled true to dispatch the objects to validate by class.
+     */
+    public void setObjectRuleIndexEnabled( boolean objectRuleIndexEnabled ) {
+        this.objectRuleIndexEnabled = objectRuleIndexEnabled;
+        this.objectRuleIndex = null;
+    }
+
+    private ObjectRuleIndex getObjectRuleIndex() {
+        if ( objectRuleIndex == null ) {
+            objectRuleIndex = new ObjectRuleIndex( rules );
+        }
+        return objectRuleIndex;
+    }
+
     public UserPreferences getUserPreferences() {
         return userPreferences;
     }
@@ -607,6 +718,21 @@ public abstract class Validator {
      */
     public Collection<ValidatorMessage> validate( Collection<?> col ) throws ValidatorException {
         Collection<ValidatorMessage> messages = new ArrayList<>();
+        if ( objectRuleIndexEnabled ) {
+            final ObjectRuleIndex index = getObjectRuleIndex();
+            final List<ObjectRule> indexedRules = index.getRules();
+            for ( int i = 0; i < indexedRules.size(); i++ ) {
+                ObjectRule rule = indexedRules.get( i );
+                for ( Object aCol : col ) {
+                    // apply only if rule can handle this object
+                    if ( index.isCandidate( i, aCol ) && rule.canCheck( aCol ) ) {
+                        messages.addAll( rule.check( aCol ) );
+                    }
+                }
+            }
+            return messages;
+        }
+
         for ( ObjectRule rule : rules ) {
             messages.addAll( validate( col, rule ) );
         }
@@ -622,7 +748,9 @@ public abstract class Validator {
      */
     public Collection<ValidatorMessage> validate( Object objectToCheck ) throws ValidatorException {
         Collection<ValidatorMessage> messages = new ArrayList<>();
-        for ( ObjectRule rule : rules ) {
+        final Collection<ObjectRule> candidates =
+                objectRuleIndexEnabled ? getObjectRuleIndex().getCandidateRules( objectToCheck ) : rules;
+        for ( ObjectRule rule : candidates ) {
             if ( rule.canCheck( objectToCheck ) ) { // apply only if rule can handle this object
                 messages.addAll( rule.check( objectToCheck ) );
             }
@@ -693,12 +821,10 @@ public abstract class Validator {
         Collection<ValidatorMessage> messages = new ArrayList<>();
         // Run cv mapping check
         if ( cvRuleManager != null ) {
-            for ( CvRule rule : cvRuleManager.getCvRules() ) {
+            // only the rules that apply to that xPath
+            for ( CvRule rule : cvRuleManager.getCvRules( xPath ) ) {
                 for ( Object o : col ) {
-                    if ( rule.canCheck( xPath ) ) {
-                        messages.addAll( rule.check( o, xPath ) );
-                    }
-                    // else: rule does not apply
+                    messages.addAll( rule.check( o, xPath ) );
                 }
             }
         } else {
@@ -719,11 +845,9 @@ public abstract class Validator {
         Collection<ValidatorMessage> messages = new ArrayList<>();
         // Run cv mapping check
         if ( cvRuleManager != null ) {
-            for ( CvRule rule : cvRuleManager.getCvRules() ) {
-                if ( rule.canCheck( xPath ) ) {
-                    messages.addAll( rule.check( o, xPath ) );
-                }
-                // else: rule does not apply
+            // only the rules that apply to that xPath
+            for ( CvRule rule : cvRuleManager.getCvRules( xPath ) ) {
+                messages.addAll( rule.check( o, xPath ) );
             }
         } else {
             log.error( "The CvRuleManager has not been set up yet." );
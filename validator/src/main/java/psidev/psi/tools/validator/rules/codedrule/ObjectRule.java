@@ -5,7 +5,12 @@ import psidev.psi.tools.validator.ValidatorException;
 import psidev.psi.tools.validator.ValidatorMessage;
 import psidev.psi.tools.validator.rules.AbstractRule;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Rule intended to perform custom check on a object of type T.
@@ -45,4 +50,42 @@ public abstract class ObjectRule<T> extends AbstractRule {
      * @throws ValidatorException should an error occur in the process of validating the given object.
      */
     public abstract Collection<ValidatorMessage> check( T t ) throws ValidatorException;
+
+    /**
+     * Gives the type of the objects this rule can check, the rule being only asked canCheck() for instances of that
+     * type when the validator dispatches objects by class. By default it is the type given as generic parameter of
+     * the rule, e.g. Interaction for a rule extending ObjectRule&lt;Interaction&gt;.
+     * <p/>
+     * Rules that can check objects unrelated to their generic parameter must override this method and return null.
+     *
+     * @return the type of the objects this rule can check, null if the rule may check any object.
+     */
+    public Class<?> getTargetType() {
+        Map<TypeVariable, Type> bindings = new HashMap<TypeVariable, Type>();
+
+        for ( Class<?> c = getClass(); c != null && c != ObjectRule.class; c = c.getSuperclass() ) {
+            Type superType = c.getGenericSuperclass();
+            if ( superType instanceof ParameterizedType ) {
+                ParameterizedType parameterized = ( ParameterizedType ) superType;
+                TypeVariable[] variables = ( ( Class<?> ) parameterized.getRawType() ).getTypeParameters();
+                Type[] arguments = parameterized.getActualTypeArguments();
+                for ( int i = 0; i < variables.length; i++ ) {
+                    Type argument = arguments[i];
+                    if ( argument instanceof TypeVariable && bindings.containsKey( argument ) ) {
+                        argument = bindings.get( argument );
+                    }
+                    bindings.put( variables[i], argument );
+                }
+            }
+        }
+
+        Type type = bindings.get( ObjectRule.class.getTypeParameters()[0] );
+        if ( type instanceof ParameterizedType ) {
+            type = ( ( ParameterizedType ) type ).getRawType();
+        }
+        if ( type instanceof Class && type != Object.class ) {
+            return ( Class<?> ) type;
+        }
+        return null;
+    }
 }
\ No newline at end of file
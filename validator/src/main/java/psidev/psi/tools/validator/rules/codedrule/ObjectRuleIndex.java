@@ -0,0 +1,104 @@
+package psidev.psi.tools.validator.rules.codedrule;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatch table of the ObjectRules by class of the object to check.
+ * <p/>
+ * For each concrete class met, the rules whose target type is a superclass or an interface of that class, together
+ * with the rules that do not declare any target type, are computed once and cached. Only these rules need to be asked
+ * canCheck() for an instance of that class.
+ *
+ * @version $Id$
+ * @see ObjectRule#getTargetType()
+ * @since 2.0.0
+ */
+public class ObjectRuleIndex {
+
+    private final List<ObjectRule> rules;
+
+    private final Class<?>[] targetTypes;
+
+    private final Map<Class<?>, Candidates> class2candidates = new ConcurrentHashMap<Class<?>, Candidates>();
+
+    private final Candidates allRules;
+
+    /**
+     * @param rules the rules to index, their iteration order is kept by the index.
+     */
+    public ObjectRuleIndex( Collection<? extends ObjectRule> rules ) {
+        this.rules = Collections.unmodifiableList( new ArrayList<ObjectRule>( rules ) );
+        this.targetTypes = new Class<?>[this.rules.size()];
+        for ( int i = 0; i < targetTypes.length; i++ ) {
+            targetTypes[i] = this.rules.get( i ).getTargetType();
+        }
+
+        BitSet all = new BitSet( targetTypes.length );
+        all.set( 0, targetTypes.length );
+        allRules = new Candidates( this.rules, all );
+    }
+
+    /**
+     * @return the indexed rules, in their original order.
+     */
+    public List<ObjectRule> getRules() {
+        return rules;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * @param object the object to check.
+     * @return the rules that may be able to check that object, in their original order.
+     */
+    public List<ObjectRule> getCandidateRules( Object object ) {
+        return getCandidates( object ).rules;
+    }
+
+    /**
+     * @param ruleIndex the position of the rule in getRules().
+     * @param object    the object to check.
+     * @return true if the rule may be able to check that object and so has to be asked canCheck().
+     */
+    public boolean isCandidate( int ruleIndex, Object object ) {
+        return getCandidates( object ).positions.get( ruleIndex );
+    }
+
+    private Candidates getCandidates( Object object ) {
+        if ( object == null ) {
+            return allRules;
+        }
+
+        final Class<?> clazz = object.getClass();
+        Candidates candidates = class2candidates.get( clazz );
+        if ( candidates == null ) {
+            BitSet positions = new BitSet( targetTypes.length );
+            List<ObjectRule> selected = new ArrayList<ObjectRule>();
+            for ( int i = 0; i < targetTypes.length; i++ ) {
+                if ( targetTypes[i] == null || targetTypes[i].isAssignableFrom( clazz ) ) {
+                    positions.set( i );
+                    selected.add( rules.get( i ) );
+                }
+            }
+            candidates = new Candidates( Collections.unmodifiableList( selected ), positions );
+            class2candidates.put( clazz, candidates );
+        }
+        return candidates;
+    }
+
+    /**
+     * Rules applicable to a given class.
+     */
+    private static class Candidates {
+        private final List<ObjectRule> rules;
+        private final BitSet positions;
+
+        private Candidates( List<ObjectRule> rules, BitSet positions ) {
+            this.rules = rules;
+            this.positions = positions;
+        }
+    }
+}
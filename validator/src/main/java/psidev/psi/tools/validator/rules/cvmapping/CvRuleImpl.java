@@ -1,5 +1,6 @@
 package psidev.psi.tools.validator.rules.cvmapping;
 
+import org.apache.commons.jxpath.CompiledExpression;
 import org.apache.commons.jxpath.JXPathException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -8,16 +9,19 @@ import psidev.psi.tools.cvrReader.mapping.jaxb.CvReference;
 import psidev.psi.tools.cvrReader.mapping.jaxb.CvTerm;
 import psidev.psi.tools.ontology_manager.OntologyManager;
 import psidev.psi.tools.ontology_manager.OntologyUtils;
+import psidev.psi.tools.ontology_manager.interfaces.OntologyAccess;
 import psidev.psi.tools.ontology_manager.interfaces.OntologyTermI;
 import psidev.psi.tools.validator.*;
 import psidev.psi.tools.validator.rules.AbstractRule;
 import psidev.psi.tools.validator.rules.Rule;
 import psidev.psi.tools.validator.util.XpathValidator;
+import psidev.psi.tools.validator.xpath.PropertyPath;
 import psidev.psi.tools.validator.xpath.XPathHelper;
 import psidev.psi.tools.validator.xpath.XPathResult;
 
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of the CV rule that performs check based on XML definition.
@@ -31,12 +35,47 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
 
     public static final Log log = LogFactory.getLog( CvRuleImpl.class );
 
+    /**
+     * Number of children, direct or not, above which the accessions accepted by a CvTerm allowing children are no
+     * longer collected, each value being checked by walking up from its term instead.
+     */
+    public static final int DEFAULT_DESCENDANT_CHECK_THRESHOLD = 1000;
+
     private CvMappingRule cvMappingRule;
 
     private static final String cvScope = "cv-only";
 
     private MappingRuleStatus status = MappingRuleStatus.NOT_CHECKED;
 
+    /**
+     * XPath expressions of the rule when no prefix is given, compiled once and reused for every object checked.
+     */
+    private volatile RuleXPaths xpaths;
+
+    /**
+     * XPath expressions of the rule, indexed by the prefix XPath that was given when checking objects.
+     */
+    private final Map<String, RuleXPaths> prefix2xpaths = new ConcurrentHashMap<String, RuleXPaths>();
+
+    /**
+     * If true, XPaths made only of child steps are evaluated through PropertyPath instead of JXPath.
+     */
+    private boolean propertyPathsEnabled = false;
+
+    /**
+     * Values accepted for each CvTerm of the rule (accessions, or names and synonyms), resolved once. They are derived
+     * from the ontologies of the OntologyManager: CvRuleManager resolves them again, see resolveAllowedValues(), once
+     * the manager replaced or refreshed its ontologies.
+     */
+    private final Map<CvTerm, Set<String>> term2allowedValues = new ConcurrentHashMap<CvTerm, Set<String>>();
+
+    /**
+     * Whether the values of each CvTerm of the rule are checked by walking up from their terms, decided once.
+     */
+    private final Map<CvTerm, Boolean> term2descendantCheck = new ConcurrentHashMap<CvTerm, Boolean>();
+
+    private int descendantCheckThreshold = DEFAULT_DESCENDANT_CHECK_THRESHOLD;
+
     public CvRuleImpl( OntologyManager ontologyManager ) {
         super( ontologyManager );
         cvMappingRule = new CvMappingRule();
@@ -52,6 +91,10 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
 
     public void setCvMappingRule( CvMappingRule mappingRule ) {
         this.cvMappingRule = mappingRule;
+        this.xpaths = null;
+        this.prefix2xpaths.clear();
+        this.term2allowedValues.clear();
+        this.term2descendantCheck.clear();
     }
 
     public List<CvTerm> getCVTerms() {
@@ -90,6 +133,196 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
         return cvMappingRule.getName();
     }
 
+    public boolean isPropertyPathsEnabled() {
+        return propertyPathsEnabled;
+    }
+
+    /**
+     * @param propertyPathsEnabled if true, the XPaths of this rule that only contain child steps are evaluated
+     *                             by calling the getters directly instead of using JXPath.
+     */
+    public void setPropertyPathsEnabled( boolean propertyPathsEnabled ) {
+        if ( this.propertyPathsEnabled != propertyPathsEnabled ) {
+            this.propertyPathsEnabled = propertyPathsEnabled;
+            this.xpaths = null;
+            this.prefix2xpaths.clear();
+        }
+    }
+
+    public int getDescendantCheckThreshold() {
+        return descendantCheckThreshold;
+    }
+
+    /**
+     * @param descendantCheckThreshold number of children, direct or not, above which the accessions accepted by a
+     *                                 CvTerm allowing children are not collected, each value being checked against
+     *                                 the CvTerm by walking up from its term instead.
+     */
+    public void setDescendantCheckThreshold( int descendantCheckThreshold ) {
+        this.descendantCheckThreshold = descendantCheckThreshold;
+        this.term2descendantCheck.clear();
+    }
+
+    /**
+     * Compiles the scope XPath of this rule and, when the element XPath lies within the scope, the XPath fetching the
+     * values from the objects in scope, so that they do not have to be parsed again every time an object is checked.
+     *
+     * @throws JXPathException if one of the XPath expressions of the rule could not be compiled.
+     */
+    public void compileXPaths() {
+        RuleXPaths compiled = new RuleXPaths( getScopePath(), getElementPath(), propertyPathsEnabled );
+        compiled.compileScope();
+        if ( getElementPath().startsWith( getScopePath() ) ) {
+            compiled.compileValue();
+        }
+        xpaths = compiled;
+    }
+
+    /**
+     * Resolves, for each CvTerm of this rule, the set of values it accepts so that checking a value only takes a
+     * hash lookup. The ontologies referenced by the CvTerms must be available in the OntologyManager.
+     */
+    public void resolveAllowedValues() {
+        term2allowedValues.clear();
+        term2descendantCheck.clear();
+        for ( CvTerm cvTerm : getCVTerms() ) {
+            if ( !isResolvedByName( cvTerm ) && !isResolvedByDescent( cvTerm ) ) {
+                getAllowedValues( cvTerm );
+            }
+        }
+    }
+
+    private OntologyAccess getOntologyAccess( CvTerm cvTerm ) {
+        return ontologyManager.getOntologyAccess( ( ( CvReference ) cvTerm.getCvIdentifierRef() ).getCvIdentifier() );
+    }
+
+    /**
+     * @param cvTerm a CvTerm of this rule.
+     * @return true if the CvTerm uses term names and its ontology indexes them, so that a name can be checked without
+     *         collecting the names of all the allowed terms.
+     */
+    private boolean isResolvedByName( CvTerm cvTerm ) {
+        return cvTerm.isUseTermName() && getOntologyAccess( cvTerm ).isTermNameIndexed();
+    }
+
+    /**
+     * @param cvTerm a CvTerm of this rule.
+     * @return true if the CvTerm uses accessions and allows children that are too many to be collected, or that the
+     *         ontology cannot count without collecting them, so that a value is checked by walking up from its term.
+     */
+    private boolean isResolvedByDescent( CvTerm cvTerm ) {
+        if ( !cvTerm.isAllowChildren() || cvTerm.isUseTermName() ) {
+            return false;
+        }
+        Boolean resolvedByDescent = term2descendantCheck.get( cvTerm );
+        if ( resolvedByDescent == null ) {
+            final OntologyAccess access = getOntologyAccess( cvTerm );
+            final OntologyTermI cvOntologyTerm = access.getTermForAccession( cvTerm.getTermAccession() );
+            final int descendantCount = cvOntologyTerm == null ? 0 : access.getDescendantCount( cvOntologyTerm );
+            resolvedByDescent = descendantCount < 0 || descendantCount > descendantCheckThreshold;
+            term2descendantCheck.put( cvTerm, resolvedByDescent );
+        }
+        return resolvedByDescent;
+    }
+
+    /**
+     * @param cvTerm a CvTerm of this rule.
+     * @param value  an accession, or a name if the term uses names.
+     * @return true if the value is accepted by the given CvTerm.
+     */
+    private boolean isAllowedValue( CvTerm cvTerm, String value ) {
+        if ( isResolvedByName( cvTerm ) ) {
+            // resolve the name to its terms, then check that one of them is the term itself or one of its children
+            final OntologyAccess access = getOntologyAccess( cvTerm );
+            return isAllowedTerm( cvTerm, access, access.getTermsForName( value ) );
+        }
+        if ( isResolvedByDescent( cvTerm ) ) {
+            final OntologyAccess access = getOntologyAccess( cvTerm );
+            final OntologyTermI term = access.getTermForAccession( value );
+            return term != null && isAllowedTerm( cvTerm, access, Collections.singleton( term ) );
+        }
+        return getAllowedValues( cvTerm ).contains( value );
+    }
+
+    /**
+     * @param cvTerm a CvTerm of this rule.
+     * @param access the ontology of the CvTerm.
+     * @param terms  the terms of a value.
+     * @return true if one of the terms is the term of the CvTerm, if it is used, or one of its children, if they are
+     *         allowed.
+     */
+    private boolean isAllowedTerm( CvTerm cvTerm, OntologyAccess access, Collection<OntologyTermI> terms ) {
+        if ( terms.isEmpty() ) {
+            return false;
+        }
+        final OntologyTermI cvOntologyTerm = access.getTermForAccession( cvTerm.getTermAccession() );
+        if ( cvOntologyTerm == null ) {
+            return false;
+        }
+        for ( OntologyTermI term : terms ) {
+            if ( cvTerm.isUseTerm() && term.equals( cvOntologyTerm ) ) {
+                return true;
+            }
+            if ( cvTerm.isAllowChildren() && access.isDescendantOf( term, cvOntologyTerm ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param cvTerm a CvTerm of this rule.
+     * @return the accessions, or names and synonyms if the term uses names, accepted by the given CvTerm.
+     */
+    Set<String> getAllowedValues( CvTerm cvTerm ) {
+        Set<String> allowedValues = term2allowedValues.get( cvTerm );
+        if ( allowedValues == null ) {
+            // Get all information from the CV term
+            String ontologyID = ( ( CvReference ) cvTerm.getCvIdentifierRef() ).getCvIdentifier();
+
+            // Get the accession numbers that are valid for this cvTerm.
+            // Note: the ontologyID is checkd on by the CvRuleManager.checkCvMapping()
+            Collection<OntologyTermI> allowedTerms = ontologyManager.getOntologyAccess( ontologyID )
+                    .getValidTerms( cvTerm.getTermAccession(), cvTerm.isAllowChildren(), cvTerm.isUseTerm() );
+
+            // Now we'll see whether we should be checking CV accessions or CV preferred names.
+            if ( cvTerm.isUseTermName() ) {
+                // We should check on term names (preferred names and synonyms) rather that accessions.
+                allowedValues = new HashSet<String>( OntologyUtils.getTermNames( allowedTerms ) );
+            } else {
+                // The allowed values in this case are the actual accession numbers.
+                // Note that the names are ignored now. Accession has precedence.
+                allowedValues = new HashSet<String>( OntologyUtils.getAccessions( allowedTerms ) );
+            }
+            allowedValues = Collections.unmodifiableSet( allowedValues );
+            term2allowedValues.put( cvTerm, allowedValues );
+        }
+        return allowedValues;
+    }
+
+    private RuleXPaths getXPaths( String prefixXpath ) {
+        if ( prefixXpath == null ) {
+            if ( xpaths == null ) {
+                xpaths = new RuleXPaths( getScopePath(), getElementPath(), propertyPathsEnabled );
+            }
+            return xpaths;
+        }
+
+        RuleXPaths compiled = prefix2xpaths.get( prefixXpath );
+        if ( compiled == null ) {
+            // if the user has provided us with a prefix, we update the XPath available in the Rule (i.e. removing the prefix)
+            String scopeXpath = removeXpathPrefix( getScopePath(), prefixXpath );
+            String elementXpath = removeXpathPrefix( getElementPath(), prefixXpath );
+            if ( log.isDebugEnabled() ) {
+                log.debug( "Updated scope Xpath using prefix '" + prefixXpath + "' to: " + scopeXpath );
+                log.debug( "Updated element Xpath using prefix '" + prefixXpath + "' to: " + elementXpath );
+            }
+            compiled = new RuleXPaths( scopeXpath, elementXpath, propertyPathsEnabled );
+            prefix2xpaths.put( prefixXpath, compiled );
+        }
+        return compiled;
+    }
+
     //////////////////
     // Rule
 
@@ -138,25 +371,16 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
         // given the scope of the XPath expression, transform the elementXpath to it only retreive the objects on which
         // we want to apply the validation
 
-        String scopeXpath = getScopePath();
-        String elementXpath = getElementPath();
-
-        if ( prefixXpath != null ) {
-            // if the user has provided us with a prefix, we update the XPath available in the Rule (i.e. removing the prefix)
-            scopeXpath = removeXpathPrefix( scopeXpath, prefixXpath );
-            elementXpath = removeXpathPrefix( elementXpath, prefixXpath );
-            if ( log.isDebugEnabled() ) {
-                log.debug( "Updated scope Xpath using prefix '" + prefixXpath + "' to: " + scopeXpath );
-                log.debug( "Updated element Xpath using prefix '" + prefixXpath + "' to: " + elementXpath );
-            }
-        }
+        RuleXPaths ruleXpaths = getXPaths( prefixXpath );
+        String scopeXpath = ruleXpaths.scopeXpath;
+        String elementXpath = ruleXpaths.elementXpath;
 
         if ( log.isDebugEnabled() ) log.debug( "Xpath to fetch objects to check on: " + scopeXpath );
 
         // get the elements to check
         List<XPathResult> results = Collections.EMPTY_LIST;
         try {
-            results = XPathHelper.evaluateXPath( scopeXpath, object );
+            results = ruleXpaths.evaluateScope( object );
             if ( log.isDebugEnabled() ) {
                 log.debug( "XPath '" + scopeXpath + "' allowed to fetch " + results.size() + " object(s) from the given " +
                            object.getClass().getSimpleName() + ": " + printObjectAccessions( results ) );
@@ -204,15 +428,14 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
             // that is substract the scopeXpath from the elementXpath
             // example:  /garage/bikes/@color
             //           /garage/bikes         <-- this is the prefix
-            String valueXpath = removeXpathPrefix( elementXpath, scopeXpath );
             if ( log.isDebugEnabled() )
-                log.debug( "Xpath allowing to retreive the values from the Objects: " + valueXpath );
+                log.debug( "Xpath allowing to retreive the values from the Objects: " + ruleXpaths.getValueXpath() );
 
             // Check the objects one by one
             for ( XPathResult result : results ) {
                 Object objectToCheck = result.getResult();
 
-                checkSingleObject( objectToCheck, elementXpath, valueXpath, messages, level, object );
+                checkSingleObject( objectToCheck, elementXpath, ruleXpaths, messages, level, object );
 
                 if( status.equals( MappingRuleStatus.INVALID_XPATH ) ) {
                     return messages;
@@ -292,7 +515,7 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
      *
      * @param objectToCheck the object we are checking on.
      * @param elementXpath  the path that led to this element (for error reporting purpose).
-     * @param valueXpath    the Xpath expression allowing to fetch the values on the objectToCheck.
+     * @param ruleXpaths    the Xpath expressions of the rule, giving the values to fetch on the objectToCheck.
      * @param messages      list of message that eventually will be returned to the user.
      * @param level         level of the messages to generate
      * @param o             the parent object on what the rule is applied to
@@ -300,17 +523,18 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
      */
     private void checkSingleObject( Object objectToCheck,
                                     String elementXpath,
-                                    String valueXpath,
+                                    RuleXPaths ruleXpaths,
                                     Collection<ValidatorMessage> messages,
                                     Recommendation level,
                                     Object o) throws ValidatorException {
         
         String resultClassName = objectToCheck.getClass().getSimpleName();
+        String valueXpath = ruleXpaths.getValueXpath();
 
         // 1. from the objectToCheck retrieve the values to be checked against the CvTerms of the rule
         List<XPathResult> valueResults = Collections.EMPTY_LIST;
         try {
-            valueResults = XPathHelper.evaluateXPath( valueXpath, objectToCheck );
+            valueResults = ruleXpaths.evaluateValue( objectToCheck );
 
             if( ! valueResults.isEmpty() ) {
                 status = MappingRuleStatus.VALID_RULE;
@@ -625,32 +849,8 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
                                         xpResult.getResult().getClass().getName() ) );
         }
 
-        // Get all information from the CV term
-        String ontologyID = ( ( CvReference ) cvTerm.getCvIdentifierRef() ).getCvIdentifier();
-
-        String ruleTermAcc = cvTerm.getTermAccession();
-        boolean allowChildren = cvTerm.isAllowChildren();
-        boolean useTerm = cvTerm.isUseTerm();
-        boolean useTermName = cvTerm.isUseTermName();
-
-        // Get the accession numbers that are valid for this cvTerm.
-        // Note: the ontologyID is checkd on by the CvRuleManager.checkCvMapping()
-        Collection<OntologyTermI> allowedTerms = ontologyManager.getOntologyAccess(ontologyID).getValidTerms( ruleTermAcc, allowChildren, useTerm );
-
-        // Now we'll see whether we should be checking CV accessions or CV preferred names.
-        Collection<String> allowedValues;
-        if ( useTermName ) {
-            // We should check on term names rather that accessions.
-            // Note that the names are the preferred names.
-            allowedValues = OntologyUtils.getTermNames(allowedTerms);
-        } else {
-            // The allowed values in this case are the actual accession numbers.
-            // Note that the names are ignored now. Accession has precedence.
-            allowedValues = OntologyUtils.getAccessions(allowedTerms);
-        }
-
         // Check whether the value found is in the allowed values (be they terms or accessions).
-        if ( allowedValues.contains( accession ) ) {
+        if ( isAllowedValue( cvTerm, accession ) ) {
             // Term found, we populate the map
 
             Integer count;
@@ -915,7 +1115,7 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
      * @param prefixXpath xpath of this object from the root element of the XML.
      * @return the xpath to use for the checking
      */
-    private String removeXpathPrefix( String xpath, String prefixXpath ) {
+    private static String removeXpathPrefix( String xpath, String prefixXpath ) {
         //ToDo: more detailed checking of xpath (e.g. starts with '/', ...)
 //        if ( log.isDebugEnabled() ) {
 //            log.debug( "\""+ xpath +"\".substring(\""+ prefixXpath +"\".length())" );
@@ -938,6 +1138,74 @@ public class CvRuleImpl extends AbstractRule implements CvRule {
         return result;
     }
 
+    /**
+     * Scope and element XPath of the rule once the prefix has been removed, together with their compiled form.
+     * <p/>
+     * Instances are shared by the threads checking objects, the compiled forms are hence volatile: they are
+     * immutable once built and compiling them twice when two threads race is harmless.
+     */
+    private static class RuleXPaths {
+        private final String scopeXpath;
+        private final String elementXpath;
+        private final boolean propertyPaths;
+        private volatile String valueXpath;
+        private volatile CompiledExpression scopeExpression;
+        private volatile CompiledExpression valueExpression;
+        private volatile PropertyPath scopePropertyPath;
+        private volatile PropertyPath valuePropertyPath;
+
+        private RuleXPaths( String scopeXpath, String elementXpath, boolean propertyPaths ) {
+            this.scopeXpath = scopeXpath;
+            this.elementXpath = elementXpath;
+            this.propertyPaths = propertyPaths;
+        }
+
+        // the Xpath allowing to fetch the values from the object contained in the scope results,
+        // that is the scopeXpath substracted from the elementXpath
+        private String getValueXpath() {
+            if ( valueXpath == null ) {
+                valueXpath = removeXpathPrefix( elementXpath, scopeXpath );
+            }
+            return valueXpath;
+        }
+
+        private void compileScope() {
+            if ( propertyPaths && PropertyPath.isPropertyPath( scopeXpath ) ) {
+                if ( scopePropertyPath == null ) {
+                    scopePropertyPath = PropertyPath.compile( scopeXpath );
+                }
+            } else if ( scopeExpression == null ) {
+                scopeExpression = XPathHelper.compileXPath( scopeXpath );
+            }
+        }
+
+        private void compileValue() {
+            if ( propertyPaths && PropertyPath.isPropertyPath( getValueXpath() ) ) {
+                if ( valuePropertyPath == null ) {
+                    valuePropertyPath = PropertyPath.compile( getValueXpath() );
+                }
+            } else if ( valueExpression == null ) {
+                valueExpression = XPathHelper.compileXPath( getValueXpath() );
+            }
+        }
+
+        private List<XPathResult> evaluateScope( Object object ) throws ValidatorException {
+            compileScope();
+            if ( scopePropertyPath != null ) {
+                return scopePropertyPath.evaluate( object );
+            }
+            return XPathHelper.evaluateXPath( scopeExpression, object );
+        }
+
+        private List<XPathResult> evaluateValue( Object object ) throws ValidatorException {
+            compileValue();
+            if ( valuePropertyPath != null ) {
+                return valuePropertyPath.evaluate( object );
+            }
+            return XPathHelper.evaluateXPath( valueExpression, object );
+        }
+    }
+
     public String toString() {
 
         StringBuffer sb = new StringBuffer( 256 );
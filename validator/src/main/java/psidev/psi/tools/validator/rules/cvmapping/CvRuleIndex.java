@@ -0,0 +1,165 @@
+package psidev.psi.tools.validator.rules.cvmapping;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the CvRules by element path, giving the rules that can check an object found at a given XPath.
+ * <p/>
+ * The element paths of the CvRuleImpl are stored in a character trie, so that the rules whose element path starts
+ * with a given XPath are all found under the node reached by that XPath. Rules overriding canCheck (or other
+ * implementations of CvRule) are asked directly. The list of rules for a given XPath is computed once and then
+ * reused, the rules keeping the order they have in the CvRuleManager.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+class CvRuleIndex {
+
+    private final List<CvRule> rules;
+
+    private final TrieNode root = new TrieNode();
+
+    /**
+     * Index of the rules that do not rely on CvRuleImpl.canCheck(String).
+     */
+    private final List<Integer> customRules = new ArrayList<Integer>();
+
+    private final Map<String, List<CvRule>> xpath2rules = new ConcurrentHashMap<String, List<CvRule>>();
+
+    /**
+     * The rules for the root element (null XPath), which the map cannot hold.
+     */
+    private volatile List<CvRule> rootRules;
+
+    CvRuleIndex( Collection<CvRule> rules ) {
+        this.rules = Collections.unmodifiableList( new ArrayList<CvRule>( rules ) );
+
+        for ( int i = 0; i < this.rules.size(); i++ ) {
+            CvRule rule = this.rules.get( i );
+            if ( isIndexable( rule ) && rule.getElementPath() != null ) {
+                root.add( rule.getElementPath(), i );
+            } else {
+                customRules.add( i );
+            }
+        }
+    }
+
+    /**
+     * @return the number of rules that were indexed.
+     */
+    int size() {
+        return rules.size();
+    }
+
+    /**
+     * @param xPath the XPath of the objects to be checked, null meaning the root element.
+     * @return the rules that can check an object found at that XPath, in their original order.
+     */
+    List<CvRule> getRules( String xPath ) {
+        if ( xPath == null ) {
+            List<CvRule> selected = rootRules;
+            if ( selected == null ) {
+                selected = rulesFor( null );
+                rootRules = selected;
+            }
+            return selected;
+        }
+
+        List<CvRule> selected = xpath2rules.get( xPath );
+        if ( selected == null ) {
+            selected = rulesFor( xPath );
+            xpath2rules.put( xPath, selected );
+        }
+        return selected;
+    }
+
+    private List<CvRule> rulesFor( String xPath ) {
+        List<Integer> indexes = new ArrayList<Integer>();
+
+        if ( xPath == null ) {
+            // CvRuleImpl.canCheck( null ) is always true
+            root.collect( indexes );
+        } else {
+            TrieNode node = root.find( xPath );
+            if ( node != null ) {
+                node.collect( indexes );
+            }
+        }
+        for ( Integer i : customRules ) {
+            if ( rules.get( i ).canCheck( xPath ) ) {
+                indexes.add( i );
+            }
+        }
+        Collections.sort( indexes );
+
+        List<CvRule> selected = new ArrayList<CvRule>( indexes.size() );
+        for ( Integer i : indexes ) {
+            selected.add( rules.get( i ) );
+        }
+        return Collections.unmodifiableList( selected );
+    }
+
+    /**
+     * @return true if the rule uses the canCheck(String) of CvRuleImpl, that is an element path prefix match.
+     */
+    private static boolean isIndexable( CvRule rule ) {
+        if ( !( rule instanceof CvRuleImpl ) ) {
+            return false;
+        }
+        try {
+            return rule.getClass().getMethod( "canCheck", String.class ).getDeclaringClass() == CvRuleImpl.class;
+        } catch ( NoSuchMethodException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Node of the trie of element paths.
+     */
+    private static class TrieNode {
+
+        private Map<Character, TrieNode> children;
+
+        private List<Integer> rules;
+
+        private void add( String path, int ruleIndex ) {
+            TrieNode node = this;
+            for ( int i = 0; i < path.length(); i++ ) {
+                if ( node.children == null ) {
+                    node.children = new HashMap<Character, TrieNode>();
+                }
+                Character c = path.charAt( i );
+                TrieNode child = node.children.get( c );
+                if ( child == null ) {
+                    child = new TrieNode();
+                    node.children.put( c, child );
+                }
+                node = child;
+            }
+            if ( node.rules == null ) {
+                node.rules = new ArrayList<Integer>( 1 );
+            }
+            node.rules.add( ruleIndex );
+        }
+
+        private TrieNode find( String prefix ) {
+            TrieNode node = this;
+            for ( int i = 0; i < prefix.length() && node != null; i++ ) {
+                node = node.children == null ? null : node.children.get( prefix.charAt( i ) );
+            }
+            return node;
+        }
+
+        private void collect( List<Integer> indexes ) {
+            if ( rules != null ) {
+                indexes.addAll( rules );
+            }
+            if ( children != null ) {
+                for ( TrieNode child : children.values() ) {
+                    child.collect( indexes );
+                }
+            }
+        }
+    }
+}
@@ -37,6 +37,22 @@ public class CvRuleManager {
 
     private List<CvReference> cvReferences;
 
+    /**
+     * If true, the CvRuleImpl evaluate their XPaths made only of child steps through PropertyPath.
+     */
+    private boolean propertyPathsEnabled = false;
+
+    /**
+     * Rules indexed by element path, built when first needed and dropped whenever the rules change.
+     */
+    private volatile CvRuleIndex ruleIndex;
+
+    /**
+     * Generation of the ontologies the values accepted by the rules were resolved against, -1 until checkCvMapping()
+     * resolves them. See OntologyManager.getGeneration().
+     */
+    private volatile long resolvedGeneration = -1;
+
     //////////////////
     // Constructors
 
@@ -60,10 +76,54 @@ public class CvRuleManager {
         return rules;
     }
 
+    /**
+     * Gives the rules that apply to objects found at the given XPath, that is the ones for which canCheck( xPath )
+     * is true. The selection is computed once per XPath and reused until the rules of this manager change.
+     *
+     * @param xPath the xpath from the XML root to the objects to be checked, null meaning the root element.
+     * @return a non null, unmodifiable list of rules in the order they have been added to this manager.
+     */
+    public List<CvRule> getCvRules( String xPath ) {
+        if ( rules == null ) {
+            return Collections.emptyList();
+        }
+        resolveAgainIfRefreshed();
+        CvRuleIndex index = ruleIndex;
+        if ( index == null || index.size() != rules.size() ) {
+            index = new CvRuleIndex( rules );
+            ruleIndex = index;
+        }
+        return index.getRules( xPath );
+    }
+
     public OntologyManager getOntologyMngr() {
         return ontologyMngr;
     }
 
+    public boolean isPropertyPathsEnabled() {
+        return propertyPathsEnabled;
+    }
+
+    /**
+     * @param propertyPathsEnabled if true, the rules evaluate the XPaths that only contain child steps by calling
+     *                             the getters directly instead of using JXPath.
+     * @see psidev.psi.tools.validator.xpath.PropertyPath
+     */
+    public void setPropertyPathsEnabled( boolean propertyPathsEnabled ) {
+        this.propertyPathsEnabled = propertyPathsEnabled;
+        if ( rules != null ) {
+            for ( CvRule rule : rules ) {
+                applyPropertyPaths( rule );
+            }
+        }
+    }
+
+    private void applyPropertyPaths( CvRule rule ) {
+        if ( rule instanceof CvRuleImpl ) {
+            ( ( CvRuleImpl ) rule ).setPropertyPathsEnabled( propertyPathsEnabled );
+        }
+    }
+
     //////////////////////
     // Rule
 
@@ -73,6 +133,7 @@ public class CvRuleManager {
             throw new ValidatorException( "Cannot validate a null object." );
         }
 
+        resolveAgainIfRefreshed();
         Collection<ValidatorMessage> messages = new ArrayList<ValidatorMessage>();
         for (CvRule rule : rules) {
             messages.addAll(rule.check(o, null));
@@ -86,6 +147,7 @@ public class CvRuleManager {
             throw new ValidatorException( "Cannot validate a null object." );
         }
 
+        resolveAgainIfRefreshed();
         Collection<ValidatorMessage> messages = new ArrayList<ValidatorMessage>();
         for (CvRule rule : rules) {
             messages.addAll(rule.check(o, contextXpath));
@@ -93,6 +155,35 @@ public class CvRuleManager {
         return messages;
     }
 
+    /**
+     * Resolves again the values accepted by the rules once the OntologyManager replaced some of its ontologies, for
+     * instance when refreshing them in the background, so that the objects are not validated against the previous
+     * version of the ontologies.
+     */
+    private void resolveAgainIfRefreshed() {
+        final long generation = ontologyMngr.getGeneration();
+        if ( resolvedGeneration < 0 || resolvedGeneration == generation ) {
+            return;
+        }
+        synchronized ( this ) {
+            if ( resolvedGeneration < 0 || resolvedGeneration == generation ) {
+                return;
+            }
+            if ( log.isInfoEnabled() ) log.info( "The ontologies changed, resolving again the values accepted by the rules" );
+            for ( CvRule rule : rules ) {
+                if ( rule instanceof CvRuleImpl ) {
+                    try {
+                        ( ( CvRuleImpl ) rule ).resolveAllowedValues();
+                    } catch ( RuntimeException e ) {
+                        // the values left unresolved are resolved when first needed
+                        log.warn( "Could not resolve again the values accepted by rule " + rule.getId(), e );
+                    }
+                }
+            }
+            resolvedGeneration = generation;
+        }
+    }
+
     /**
      * Checks that the CvMapping is valid. CvTerms and Rules can be pruned along the way and messages explaining it
      * should inform the user. This collection of messages is returned to the user.
@@ -118,6 +209,14 @@ public class CvRuleManager {
         if ( rules.size() < 1 ) {
             throw new ValidatorException("checkCvMapping: There are no rules to check! Make sure valid rules have been loaded.");
         }
+
+        // ontologies changed while checking are taken into account by the next validation
+        final long generation = ontologyMngr.getGeneration();
+
+        // the terms are checked one after the other below, get them all at once beforehand
+        prefetchCvTerms();
+        final Map<String, Set<String>> obsoleteAccessions = getObsoleteCvTerms();
+
         for ( Iterator<CvRule> it_rule = rules.iterator(); it_rule.hasNext(); ) {
             CvRule rule = it_rule.next();
 
@@ -136,16 +235,19 @@ public class CvRuleManager {
                                                      msg, rule ) );
                 } else {
 
-                    // test compile the XPaths
-                    // TODO this is where one would want to cache the compiled expression !
-                    XPathHelper.evaluateXPath( scopePath, "" );
-                    XPathHelper.evaluateXPath( elementPath, "" );
+                    // compile the XPaths, CvRuleImpl keeps the compiled expressions for when objects get checked
+                    if ( rule instanceof CvRuleImpl ) {
+                        ( ( CvRuleImpl ) rule ).compileXPaths();
+                    } else {
+                        XPathHelper.evaluateXPath( scopePath, "" );
+                        XPathHelper.evaluateXPath( elementPath, "" );
+                    }
 
                     int cvTermCount = rule.getCVTerms().size();
                     Iterator<CvTerm> it_cv = rule.getCVTerms().iterator();
                     while ( it_cv.hasNext() ) {
                         CvTerm cvTerm = it_cv.next();
-                        if ( !isValidCvTerm( cvTerm, rule, messages ) ) {
+                        if ( !isValidCvTerm( cvTerm, rule, obsoleteAccessions, messages ) ) {
                             //ToDo: add message that TERM has been removed
                             it_cv.remove(); // remove the term from the cvMappingRule
                         }
@@ -160,6 +262,9 @@ public class CvRuleManager {
                         messages.add( rule.buildMessage( elementPath,
                                                          Recommendation.forName( rule.getRequirementLevel() ),
                                                          msg, rule ) );
+                    } else if ( rule instanceof CvRuleImpl ) {
+                        // resolve once the values accepted by the remaining terms
+                        ( ( CvRuleImpl ) rule ).resolveAllowedValues();
                     }
                 }
 
@@ -174,21 +279,126 @@ public class CvRuleManager {
             }
         } // rules
 
+        // some rules may have been removed
+        ruleIndex = null;
+        resolvedGeneration = generation;
+
         return messages;
     }
 
+    /**
+     * Resolves the terms of all the rules, and their children when the rules allow them and check term names, before
+     * any object gets validated. The accessions of remote ontologies allowed as children are checked by walking up from
+     * their own terms, so that the children of the terms are not needed then. Ontologies resolving terms remotely fetch them at once instead of one after the other during the
+     * first validations. Failures are only logged, the terms being resolved again when needed.
+     */
+    public void prefetchCvTerms() {
+        if ( rules == null ) {
+            return;
+        }
+
+        // accessions by ontology, depending on whether the names of their children are used
+        final Map<String, Set<String>> withChildren = new HashMap<String, Set<String>>();
+        final Map<String, Set<String>> withoutChildren = new HashMap<String, Set<String>>();
+        for ( CvRule rule : rules ) {
+            for ( CvTerm cvTerm : rule.getCVTerms() ) {
+                if ( !( cvTerm.getCvIdentifierRef() instanceof CvReference ) || cvTerm.getTermAccession() == null ) {
+                    continue;
+                }
+                final String ontologyID = ( ( CvReference ) cvTerm.getCvIdentifierRef() ).getCvIdentifier();
+                final Map<String, Set<String>> accessions =
+                        cvTerm.isAllowChildren() && cvTerm.isUseTermName() ? withChildren : withoutChildren;
+                Set<String> ontologyAccessions = accessions.get( ontologyID );
+                if ( ontologyAccessions == null ) {
+                    ontologyAccessions = new LinkedHashSet<String>();
+                    accessions.put( ontologyID, ontologyAccessions );
+                }
+                ontologyAccessions.add( cvTerm.getTermAccession() );
+            }
+        }
+
+        prefetch( withChildren, true );
+        prefetch( withoutChildren, false );
+    }
+
+    private void prefetch( Map<String, Set<String>> accessions, boolean allowChildren ) {
+        for ( Map.Entry<String, Set<String>> entry : accessions.entrySet() ) {
+            final String ontologyID = entry.getKey();
+            if ( !ontologyMngr.containsOntology( ontologyID ) ) {
+                continue;
+            }
+            try {
+                ontologyMngr.getOntologyAccess( ontologyID ).prefetch( entry.getValue(), allowChildren );
+            } catch ( RuntimeException e ) {
+                log.warn( "Could not prefetch the " + entry.getValue().size() + " terms of " + ontologyID
+                          + " used by the rules", e );
+            }
+        }
+    }
+
+    /**
+     * Finds the obsolete terms among the terms of all the rules, each ontology being given all its terms at once.
+     *
+     * @return the accessions of the obsolete terms, by ontology identifier.
+     */
+    private Map<String, Set<String>> getObsoleteCvTerms() {
+        final Map<String, Set<String>> accessions = new HashMap<String, Set<String>>();
+        for ( CvRule rule : rules ) {
+            for ( CvTerm cvTerm : rule.getCVTerms() ) {
+                if ( !( cvTerm.getCvIdentifierRef() instanceof CvReference ) || cvTerm.getTermAccession() == null ) {
+                    continue;
+                }
+                final String ontologyID = ( ( CvReference ) cvTerm.getCvIdentifierRef() ).getCvIdentifier();
+                Set<String> ontologyAccessions = accessions.get( ontologyID );
+                if ( ontologyAccessions == null ) {
+                    ontologyAccessions = new LinkedHashSet<String>();
+                    accessions.put( ontologyID, ontologyAccessions );
+                }
+                ontologyAccessions.add( cvTerm.getTermAccession() );
+            }
+        }
+
+        final Map<String, Set<String>> obsoleteAccessions = new HashMap<String, Set<String>>();
+        for ( Map.Entry<String, Set<String>> entry : accessions.entrySet() ) {
+            final String ontologyID = entry.getKey();
+            if ( !ontologyMngr.containsOntology( ontologyID ) ) {
+                continue;
+            }
+            final OntologyAccess ontoAccess = ontologyMngr.getOntologyAccess( ontologyID );
+            final List<OntologyTermI> terms = new ArrayList<OntologyTermI>( entry.getValue().size() );
+            for ( String accession : entry.getValue() ) {
+                final OntologyTermI term = ontoAccess.getTermForAccession( accession );
+                if ( term != null ) {
+                    terms.add( term );
+                }
+            }
+
+            final Set<OntologyTermI> currentTerms = ontoAccess.filterObsoleteTerms( terms );
+            final Set<String> obsolete = new HashSet<String>();
+            for ( OntologyTermI term : terms ) {
+                if ( !currentTerms.contains( term ) ) {
+                    obsolete.add( term.getTermAccession() );
+                }
+            }
+            obsoleteAccessions.put( ontologyID, obsolete );
+        }
+        return obsoleteAccessions;
+    }
+
     /**
      * Check if the given CvTerm is valid or not. If not, ValidatorMessage are generated along the way and stored in
      * the given collection.
      *
-     * @param cvTerm   the term to check upon
-     * @param rule     the rule to which the cvTerm is attached
-     * @param messages the non null collection of messages
+     * @param cvTerm             the term to check upon
+     * @param rule               the rule to which the cvTerm is attached
+     * @param obsoleteAccessions the accessions of the obsolete terms of the rules, by ontology identifier.
+     * @param messages           the non null collection of messages
      * @return true is the cvTerm is valid, false otherwise.
      * @throws ValidatorException if valdation failed.
      */
     private boolean isValidCvTerm( CvTerm cvTerm,
                                    CvRule rule,
+                                   Map<String, Set<String>> obsoleteAccessions,
                                    Collection<ValidatorMessage> messages ) throws ValidatorException {
 
         // ToDo: !! RESTRUCTURE THIS !! 
@@ -222,7 +432,7 @@ public class CvRuleManager {
         }
 
         // check if the used term is obsolete
-        if ( ontoAccess.isObsolete(ontoAccess.getTermForAccession(ruleTermAcc)) ) {
+        if ( obsoleteAccessions.get( ontologyID ).contains( ruleTermAcc ) ) {
             // this term should not be in use here
             String msg = "The term " + printSimpleCvTerm( cvTerm ) + " is obsolete in the ontology " +
                          ontologyID + ". The CvTerm will be removed.";
@@ -304,8 +514,10 @@ public class CvRuleManager {
         for (CvMappingRule cvMappingRule : cvMappingRules) {
             CvRuleImpl rule = new CvRuleImpl(ontologyMngr);
             rule.setCvMappingRule(cvMappingRule);
+            applyPropertyPaths(rule);
             rules.add(rule);
         }
+        ruleIndex = null;
     }
 
     protected void addCvRule(CvRule rule){
@@ -313,8 +525,10 @@ public class CvRuleManager {
             rules = new ArrayList<CvRule>();
         }
         if (rule != null){
+            applyPropertyPaths(rule);
             this.rules.add(rule);
         }
+        ruleIndex = null;
     }
 
     protected void addCvRules(List<CvRule> rules){
@@ -322,8 +536,12 @@ public class CvRuleManager {
             rules = new ArrayList<CvRule>();
         }
         if (rules != null){
+            for (CvRule rule : rules) {
+                applyPropertyPaths(rule);
+            }
             this.rules.addAll(rules);
         }
+        ruleIndex = null;
     }
 
     protected String printSimpleCvTerm( CvTerm cv ) {
@@ -0,0 +1,333 @@
+package psidev.psi.tools.validator.xpath;
+
+import org.apache.commons.jxpath.CompiledExpression;
+import org.apache.commons.jxpath.JXPathBeanInfo;
+import org.apache.commons.jxpath.JXPathException;
+import org.apache.commons.jxpath.JXPathIntrospector;
+import org.apache.commons.jxpath.ri.QName;
+import org.apache.commons.jxpath.ri.model.NodePointer;
+import org.apache.commons.jxpath.ri.model.beans.BeanPointer;
+import org.apache.commons.jxpath.util.ValueUtils;
+import psidev.psi.tools.validator.ValidatorException;
+
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * <b> XPath made only of child steps </b>.
+ * <p/>
+ * Paths such as <code>/garage/bikes/@color</code> are evaluated by calling the bean getters directly, through
+ * accessors generated once per concrete class, instead of going through a JXPath context. Collections and arrays
+ * met along the way are flattened the way JXPath does it and the results carry the same nodes and paths as the one
+ * JXPath would have returned.
+ * <p/>
+ * Whenever the path walks through something else than a plain bean (Map, DOM node, DynaBean, unknown property...),
+ * or ends on a collection, whose pointers JXPath does not number the same way, the whole evaluation is delegated to
+ * JXPath so that the results are always the same.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public final class PropertyPath {
+
+    private static final Pattern PROPERTY_PATH =
+            Pattern.compile( "\\.|/?@?[A-Za-z_$][A-Za-z0-9_$]*(/@?[A-Za-z_$][A-Za-z0-9_$]*)*" );
+
+    private static final QName ROOT_NAME = new QName( null, "root" );
+
+    /**
+     * Per class property accessors, shared by all paths.
+     */
+    private static final ClassValue<ClassAccessors> ACCESSORS = new ClassValue<ClassAccessors>() {
+        @Override
+        protected ClassAccessors computeValue( Class<?> type ) {
+            return new ClassAccessors( type );
+        }
+    };
+
+    private final String xpath;
+
+    private final String[] steps;
+
+    private final CompiledExpression fallback;
+
+    private PropertyPath( String xpath ) {
+        this.xpath = xpath;
+        this.fallback = XPathHelper.compileXPath( xpath );
+
+        if ( ".".equals( xpath ) ) {
+            steps = new String[0];
+        } else {
+            String path = xpath.startsWith( "/" ) ? xpath.substring( 1 ) : xpath;
+            steps = path.split( "/" );
+            for ( int i = 0; i < steps.length; i++ ) {
+                // on a bean, JXPath resolves attributes and child elements to the same property
+                if ( steps[i].startsWith( "@" ) ) {
+                    steps[i] = steps[i].substring( 1 );
+                }
+            }
+        }
+    }
+
+    /**
+     * @param xpath the XPath to test.
+     * @return true if the XPath is only made of child or attribute steps and can be compiled as a PropertyPath.
+     */
+    public static boolean isPropertyPath( String xpath ) {
+        return xpath != null && PROPERTY_PATH.matcher( xpath ).matches();
+    }
+
+    /**
+     * Compiles a path made only of child or attribute steps.
+     *
+     * @param xpath the XPath to compile.
+     * @return the compiled path.
+     * @throws IllegalArgumentException if the XPath is not a property path.
+     * @see #isPropertyPath(String)
+     */
+    public static PropertyPath compile( String xpath ) {
+        if ( !isPropertyPath( xpath ) ) {
+            throw new IllegalArgumentException( "Not a property path, use JXPath to evaluate: " + xpath );
+        }
+        return new PropertyPath( xpath );
+    }
+
+    public String getXPath() {
+        return xpath;
+    }
+
+    /**
+     * Evaluates this path on the given root object.
+     *
+     * @param root the object on which the path is evaluated.
+     * @return a non null list of results.
+     * @throws ValidatorException
+     * @throws JXPathException    if a property could not be read.
+     */
+    public List<XPathResult> evaluate( Object root ) throws ValidatorException {
+        if ( root == null || !isBean( root ) ) {
+            return XPathHelper.evaluateXPath( fallback, root );
+        }
+
+        List<Object> nodes = Collections.singletonList( root );
+        List<String> paths = Collections.singletonList( "" );
+
+        for ( int s = 0; s < steps.length; s++ ) {
+            final String name = steps[s];
+            final boolean lastStep = ( s == steps.length - 1 );
+
+            List<Object> nextNodes = new ArrayList<Object>( nodes.size() );
+            List<String> nextPaths = new ArrayList<String>( nodes.size() );
+
+            for ( int i = 0; i < nodes.size(); i++ ) {
+                Object node = nodes.get( i );
+                if ( node == null ) {
+                    // JXPath does not walk through null values
+                    continue;
+                }
+                if ( !isBean( node ) ) {
+                    return XPathHelper.evaluateXPath( fallback, root );
+                }
+
+                PropertyAccessor accessor = ACCESSORS.get( node.getClass() ).getAccessor( name );
+                if ( accessor == null ) {
+                    return XPathHelper.evaluateXPath( fallback, root );
+                }
+
+                Object value = accessor.getValue( node );
+                String path = paths.get( i ) + "/" + name;
+
+                if ( value == null ) {
+                    if ( accessor.keepNull ) {
+                        nextNodes.add( null );
+                        nextPaths.add( path );
+                    }
+                } else if ( value instanceof Collection || value.getClass().isArray() ) {
+                    if ( lastStep ) {
+                        // JXPath gives the index of the last element to all the pointers, leave it to JXPath
+                        return XPathHelper.evaluateXPath( fallback, root );
+                    }
+                    int index = 1;
+                    for ( Iterator it = ValueUtils.iterate( value ); it.hasNext(); index++ ) {
+                        Object element = it.next();
+                        if ( element != null && ( element instanceof Collection || element.getClass().isArray() ) ) {
+                            // collection of collections, leave it to JXPath
+                            return XPathHelper.evaluateXPath( fallback, root );
+                        }
+                        nextNodes.add( element );
+                        nextPaths.add( path + "[" + index + "]" );
+                    }
+                } else {
+                    nextNodes.add( value );
+                    nextPaths.add( path );
+                }
+            }
+
+            nodes = nextNodes;
+            paths = nextPaths;
+        }
+
+        List<XPathResult> results = new ArrayList<XPathResult>( nodes.size() );
+        for ( int i = 0; i < nodes.size(); i++ ) {
+            String path = paths.get( i );
+            results.add( new XPathResult( nodes.get( i ), root, path.length() == 0 ? "/" : path ) );
+        }
+        return results;
+    }
+
+    private static boolean isBean( Object node ) {
+        return ACCESSORS.get( node.getClass() ).isBean( node );
+    }
+
+    @Override
+    public String toString() {
+        return "PropertyPath{" + xpath + '}';
+    }
+
+    ////////////////////
+    // Accessors
+
+    /**
+     * Accessors of the properties of a given class, created the first time a property is read.
+     */
+    private static final class ClassAccessors {
+
+        private final Class<?> type;
+
+        private volatile Boolean bean;
+
+        private final Map<String, Optional<PropertyAccessor>> accessors =
+                new ConcurrentHashMap<String, Optional<PropertyAccessor>>();
+
+        private ClassAccessors( Class<?> type ) {
+            this.type = type;
+        }
+
+        /**
+         * @return true if JXPath would handle instances of that class as a plain java bean.
+         */
+        private boolean isBean( Object instance ) {
+            if ( bean == null ) {
+                JXPathBeanInfo beanInfo = JXPathIntrospector.getBeanInfo( type );
+                bean = !beanInfo.isAtomic() && !beanInfo.isDynamic()
+                       && NodePointer.newNodePointer( ROOT_NAME, instance, Locale.getDefault() ).getClass() == BeanPointer.class;
+            }
+            return bean;
+        }
+
+        private PropertyAccessor getAccessor( String name ) {
+            Optional<PropertyAccessor> accessor = accessors.get( name );
+            if ( accessor == null ) {
+                accessor = Optional.ofNullable( createAccessor( name ) );
+                accessors.put( name, accessor );
+            }
+            return accessor.orElse( null );
+        }
+
+        private PropertyAccessor createAccessor( String name ) {
+            PropertyDescriptor descriptor = JXPathIntrospector.getBeanInfo( type ).getPropertyDescriptor( name );
+            if ( descriptor == null || descriptor instanceof IndexedPropertyDescriptor ) {
+                return null;
+            }
+
+            Method method = ValueUtils.getAccessibleMethod( descriptor.getReadMethod() );
+            if ( method == null ) {
+                return null;
+            }
+
+            // JXPath does not return null values unless the declared type is final (String, Integer, enum ...)
+            boolean keepNull = ValueUtils.getCollectionHint( descriptor.getPropertyType() ) == -1;
+
+            try {
+                MethodHandle getter = MethodHandles.publicLookup().unreflect( method );
+                return new PropertyAccessor( name, createFunction( getter ), keepNull );
+            } catch ( IllegalAccessException e ) {
+                return null;
+            }
+        }
+
+        @SuppressWarnings( "unchecked" )
+        private static Function<Object, Object> createFunction( final MethodHandle getter ) {
+            MethodType type = getter.type();
+            if ( isVisible( type.parameterType( 0 ) ) && isVisible( type.returnType() ) ) {
+                try {
+                    return ( Function<Object, Object> ) LambdaMetafactory.metafactory(
+                            MethodHandles.lookup(), "apply", MethodType.methodType( Function.class ),
+                            MethodType.methodType( Object.class, Object.class ), getter, type.wrap() )
+                            .getTarget().invokeExact();
+                } catch ( Throwable t ) {
+                    // use the method handle below
+                }
+            }
+
+            final MethodHandle generic = getter.asType( MethodType.methodType( Object.class, Object.class ) );
+            return new Function<Object, Object>() {
+                public Object apply( Object o ) {
+                    try {
+                        return generic.invokeExact( o );
+                    } catch ( RuntimeException e ) {
+                        throw e;
+                    } catch ( Error e ) {
+                        throw e;
+                    } catch ( Throwable t ) {
+                        throw new UndeclaredThrowableException( t );
+                    }
+                }
+            };
+        }
+
+        /**
+         * @return true if the generated accessors can link to that class, that is it can be loaded from here.
+         */
+        private static boolean isVisible( Class<?> type ) {
+            if ( type.isPrimitive() ) {
+                return true;
+            }
+            while ( type.isArray() ) {
+                type = type.getComponentType();
+            }
+            try {
+                return Class.forName( type.getName(), false, PropertyPath.class.getClassLoader() ) == type;
+            } catch ( ClassNotFoundException e ) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads a single property of a bean.
+     */
+    private static final class PropertyAccessor {
+
+        private final String name;
+
+        private final Function<Object, Object> getter;
+
+        private final boolean keepNull;
+
+        private PropertyAccessor( String name, Function<Object, Object> getter, boolean keepNull ) {
+            this.name = name;
+            this.getter = getter;
+            this.keepNull = keepNull;
+        }
+
+        private Object getValue( Object bean ) {
+            try {
+                return getter.apply( bean );
+            } catch ( Exception e ) {
+                Throwable cause = e instanceof UndeclaredThrowableException ? e.getCause() : e;
+                throw new JXPathException( "Cannot access property: " + bean.getClass().getName() + "." + name, cause );
+            }
+        }
+    }
+}
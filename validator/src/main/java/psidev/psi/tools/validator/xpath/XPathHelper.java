@@ -1,6 +1,7 @@
 package psidev.psi.tools.validator.xpath;
 
 import psidev.psi.tools.validator.ValidatorException;
+import org.apache.commons.jxpath.CompiledExpression;
 import org.apache.commons.jxpath.JXPathContext;
 import org.apache.commons.jxpath.Pointer;
 
@@ -42,12 +43,47 @@ public class XPathHelper {
      */
     protected static List<XPathResult> evaluateXPathWithClass( String xpath, Object root, Class clazz ) throws ValidatorException {
         JXPathContext ctx = JXPathContext.newContext( root );
-        Iterator iter = ctx.iteratePointers( xpath );
+        return collectResults( ctx.iteratePointers( xpath ), ctx, clazz );
+    }
+
+    /**
+     * Compiles the given XPath expression so that it can be evaluated many times without being parsed again.
+     *
+     * @param xpath the XPath expression to compile.
+     * @return the compiled expression.
+     * @throws org.apache.commons.jxpath.JXPathException if the expression is not a valid XPath.
+     */
+    public static CompiledExpression compileXPath( String xpath ) {
+        return JXPathContext.compile( xpath );
+    }
+
+    /**
+     * Evaluates a compiled XPath expression on the given root object.
+     *
+     * @param xpath the compiled expression.
+     * @param root  the object on which the expression is evaluated.
+     * @return a non null list of results.
+     * @throws ValidatorException
+     */
+    public static List<XPathResult> evaluateXPath( CompiledExpression xpath, Object root ) throws ValidatorException {
+        JXPathContext ctx = JXPathContext.newContext( root );
+        return collectResults( xpath.iteratePointers( ctx ), ctx, XPathResult.class );
+    }
+
+    private static List<XPathResult> collectResults( Iterator iter, JXPathContext ctx, Class clazz ) throws ValidatorException {
         List<XPathResult> results = new ArrayList<XPathResult>();
+        if ( !iter.hasNext() ) {
+            return results;
+        }
+        Constructor constructor;
+        try {
+            constructor = clazz.getConstructor( new Class[]{Pointer.class, JXPathContext.class} );
+        } catch ( Exception e ) {
+            throw new ValidatorException( "Error creating XPath Result class" );
+        }
         while ( iter.hasNext() ) {
             Pointer p = ( Pointer ) iter.next();
             try {
-                Constructor constructor = clazz.getConstructor( new Class[]{Pointer.class, JXPathContext.class} );
                 results.add( ( XPathResult ) constructor.newInstance( new Object[]{p, ctx} ) );
             } catch ( Exception e ) {
                 throw new ValidatorException( "Error creating XPath Result class" );
@@ -16,15 +16,22 @@ import org.apache.commons.jxpath.Pointer;
 public class XPathResult {
 
     /**
-     * TODO document that method.
+     * JXPath pointer on the result, only set on demand for the results built by PropertyPath: use getPointer().
      */
     protected Pointer pointer;
 
     /**
-     * TODO document that method.
+     * JXPath context of the root node, only set on demand for the results built by PropertyPath: use getPointer().
      */
     protected JXPathContext rootContext;
 
+    /**
+     * Node, root node and path of a result that was not obtained through JXPath (see PropertyPath).
+     */
+    private Object node;
+    private Object rootNode;
+    private String path;
+
     /**
      * TODO document that method.
      * @param pointer
@@ -35,15 +42,46 @@ public class XPathResult {
         this.rootContext = rootContext;
     }
 
+    /**
+     * Builds a result from a node that was found without using JXPath. The pointer and context are only created
+     * if they are requested, hence this constructor is kept to PropertyPath: subclasses always get their fields set.
+     *
+     * @param node     the node found.
+     * @param rootNode the object from which the path was evaluated.
+     * @param path     the path of the node, as JXPath would give it, that is one JXPath resolves to that node.
+     */
+    XPathResult( Object node, Object rootNode, String path ) {
+        this.node = node;
+        this.rootNode = rootNode;
+        this.path = path;
+    }
+
+    /**
+     * @return the JXPath pointer on this result.
+     */
+    public Pointer getPointer() {
+        if ( pointer == null ) {
+            rootContext = JXPathContext.newContext( rootNode );
+            pointer = rootContext.getPointer( path );
+        }
+        return pointer;
+    }
+
     /**
      * TODO document that method.
      * @return  TODO
      */
     public Object getResult() {
+        if ( path != null ) {
+            return node;
+        }
         return pointer.getNode();
     }
 
     public Object getRootNode() {
+        if ( path != null ) {
+            return rootNode;
+        }
         return pointer.getRootNode();
     }
 
@@ -52,14 +90,14 @@ public class XPathResult {
      * @return TODO
      */
     public Context getContext() {
-        return new Context( pointer.getNode().toString() );
+        return new Context( getResult().toString() );
     }
 
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append( "XPathResult" );
-        sb.append( "{pointer=" ).append( pointer );
+        sb.append( "{pointer=" ).append( getPointer() );
         sb.append( ", rootContext=" ).append( rootContext );
         sb.append( ", result=" ).append( getResult() );
         sb.append( '}' );
@@ -67,6 +105,9 @@ public class XPathResult {
     }
 
     public String asPath() {
+        if ( path != null ) {
+            return path;
+        }
         return this.pointer.asPath();
     }
 }
\ No newline at end of file
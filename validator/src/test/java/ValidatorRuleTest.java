@@ -17,11 +17,17 @@
 import org.junit.Assert;
 import org.junit.Test;
 import psidev.psi.tools.ontology_manager.OntologyManager;
+import psidev.psi.tools.validator.MessageLevel;
+import psidev.psi.tools.validator.ValidatorException;
 import psidev.psi.tools.validator.ValidatorMessage;
+import psidev.psi.tools.validator.rules.codedrule.ObjectRule;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public class ValidatorRuleTest {
 
@@ -113,7 +119,53 @@ public class ValidatorRuleTest {
         Assert.assertEquals( 3, validator.getObjectRules().size() );
     }
 
-}
+    /**
+     * Rule checking numbers, reporting its name.
+     */
+    private static class NamedNumberRule extends ObjectRule<Number> {
+        private final String name;
+
+        NamedNumberRule( String name ) {
+            super( null );
+            this.name = name;
+        }
+
+        public String getId() {
+            return name;
+        }
 
+        public boolean canCheck( Object t ) {
+            return t instanceof Number;
+        }
 
+        public Collection<ValidatorMessage> check( Number n ) throws ValidatorException {
+            return Collections.singletonList( new ValidatorMessage( name, MessageLevel.WARN ) );
+        }
+    }
 
+    private static List<String> getMessages( Collection<ValidatorMessage> messages ) {
+        final List<String> names = new ArrayList<String>();
+        for ( ValidatorMessage message : messages ) {
+            names.add( message.getMessage() );
+        }
+        return names;
+    }
+
+    @Test
+    public void validate_objectRuleIndex_rulesChanged() throws Exception {
+        final ObjectRule first = new NamedNumberRule( "first" );
+        final ObjectRule second = new NamedNumberRule( "second" );
+        final SPEValidator validator = new SPEValidator( new OntologyManager(), null,
+                                                         Collections.<ObjectRule>singletonList( first ) );
+        validator.setObjectRuleIndexEnabled( true );
+        Assert.assertEquals( Collections.singletonList( "first" ), getMessages( validator.validate( 1 ) ) );
+
+        // same number of rules, the index must not be used anymore
+        validator.getObjectRules().remove( first );
+        validator.getObjectRules().add( second );
+        Assert.assertEquals( Collections.singletonList( "second" ), getMessages( validator.validate( 1 ) ) );
+
+        validator.getObjectRules().clear();
+        Assert.assertEquals( Collections.emptyList(), getMessages( validator.validate( 1 ) ) );
+    }
+}
@@ -0,0 +1,78 @@
+package psidev.psi.tools.validator.rules.codedrule;
+
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.validator.ValidatorException;
+import psidev.psi.tools.validator.ValidatorMessage;
+
+import java.util.*;
+
+/**
+ * ObjectRuleIndex Tester.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class ObjectRuleIndexTest {
+
+    public static abstract class DummyRule<T> extends ObjectRule<T> {
+        public DummyRule() {
+            super( null );
+        }
+
+        public String getId() {
+            return getClass().getSimpleName();
+        }
+
+        public Collection<ValidatorMessage> check( T t ) throws ValidatorException {
+            return Collections.emptyList();
+        }
+    }
+
+    public static class NumberRule extends DummyRule<Number> {
+
+        public boolean canCheck( Object t ) {
+            return t instanceof Number;
+        }
+    }
+
+    public static abstract class CollectionRule<C extends Collection> extends DummyRule<C> {
+        public boolean canCheck( Object t ) {
+            return t instanceof Collection;
+        }
+    }
+
+    public static class ListRule extends CollectionRule<List<String>> {
+    }
+
+    public static class AnyRule extends DummyRule<Object> {
+        public boolean canCheck( Object t ) {
+            return true;
+        }
+    }
+
+    @Test
+    public void getTargetType() throws Exception {
+        Assert.assertEquals( Number.class, new NumberRule().getTargetType() );
+        Assert.assertEquals( List.class, new ListRule().getTargetType() );
+        Assert.assertNull( new AnyRule().getTargetType() );
+    }
+
+    @Test
+    public void getCandidateRules() throws Exception {
+        final ObjectRule numberRule = new NumberRule();
+        final ObjectRule listRule = new ListRule();
+        final ObjectRule anyRule = new AnyRule();
+        final ObjectRuleIndex index = new ObjectRuleIndex( Arrays.asList( numberRule, listRule, anyRule ) );
+
+        Assert.assertEquals( Arrays.asList( numberRule, anyRule ), index.getCandidateRules( 1 ) );
+        Assert.assertEquals( Arrays.asList( numberRule, anyRule ), index.getCandidateRules( 2.0 ) );
+        Assert.assertEquals( Arrays.asList( listRule, anyRule ), index.getCandidateRules( new ArrayList() ) );
+        Assert.assertEquals( Arrays.asList( anyRule ), index.getCandidateRules( new HashSet() ) );
+        Assert.assertEquals( Arrays.asList( numberRule, listRule, anyRule ), index.getCandidateRules( null ) );
+
+        Assert.assertTrue( index.isCandidate( 0, 1 ) );
+        Assert.assertFalse( index.isCandidate( 1, 1 ) );
+        Assert.assertTrue( index.isCandidate( 2, "text" ) );
+    }
+}
@@ -6,7 +6,9 @@ import org.junit.Test;
 import psidev.psi.tools.cvrReader.CvRuleReader;
 import psidev.psi.tools.cvrReader.CvRuleReaderException;
 import psidev.psi.tools.cvrReader.mapping.jaxb.CvMapping;
+import psidev.psi.tools.cvrReader.mapping.jaxb.CvTerm;
 import psidev.psi.tools.ontology_manager.OntologyManager;
+import psidev.psi.tools.ontology_manager.OntologyUtils;
 import psidev.psi.tools.ontology_manager.impl.local.OntologyLoaderException;
 import psidev.psi.tools.validator.MessageLevel;
 import psidev.psi.tools.validator.Validator;
@@ -22,11 +24,17 @@ import psidev.psi.tools.validator.util.ValidatorReport;
 import psidev.psi.tools.validator.xpath.XPathHelper;
 import psidev.psi.tools.validator.xpath.XPathResult;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * CvMappingRule Tester.
@@ -546,6 +554,144 @@ public class CvMappingRuleTest {
         Assert.assertEquals( 1, messages.size() );
     }
 
+    @Test
+    public void check_allowChildren_descendantCheck() throws Exception {
+
+        // same as check_allowChildren_3, the children being checked by walking up from their terms rather than
+        // by collecting all the children of the terms of the rule
+        File input = new File( CvMappingRuleTest.class.getResource( "/sample10-house-cvmapping.xml" ).getFile() );
+        CvRuleReader reader = new CvRuleReader();
+        CvMapping cvMapping = reader.read( input );
+        CvRuleManager ruleMngr = new CvRuleManager( ontologyMngr, cvMapping );
+
+        Collection<ValidatorMessage> messages0 = ruleMngr.checkCvMapping();
+        Assert.assertNotNull( messages0 );
+        Assert.assertEquals( 0, messages0.size() );
+        for ( CvRule rule : ruleMngr.getCvRules() ) {
+            ( ( CvRuleImpl ) rule ).setDescendantCheckThreshold( 0 );
+        }
+
+        House house = new House();
+        house.addBedroom( new BedRoom("MI:0301") ); // child of MI:0300
+        house.addBedroom( new BedRoom("MI:0302") ); // child of MI:0300
+        house.addBedroom( new BedRoom("MI:0616") ); // child of MI:0300
+        house.addBedroom( new BedRoom("MI:0828") );
+
+        Collection<ValidatorMessage> messages = ruleMngr.check( house, "/house" );
+        Assert.assertNotNull( messages );
+        Assert.assertEquals( 0, messages.size() );
+
+        for (BedRoom bedRoom : house.getBedrooms()) {
+            if (bedRoom.getColor().equalsIgnoreCase("MI:0828")) {
+                bedRoom.setColor("MI:0303");
+            }
+        }
+        messages = ruleMngr.check( house, "/house" );
+        Assert.assertNotNull( messages );
+        Assert.assertEquals( 1, messages.size() );
+    }
+
+    @Test
+    public void resolveAllowedValues() throws Exception {
+        File input = new File( CvMappingRuleTest.class.getResource( "/sample10-house-cvmapping.xml" ).getFile() );
+        CvRuleReader reader = new CvRuleReader();
+        CvMapping cvMapping = reader.read( input );
+        CvRuleManager ruleMngr = new CvRuleManager( ontologyMngr, cvMapping );
+        Assert.assertEquals( 0, ruleMngr.checkCvMapping().size() );
+
+        // the values resolved by checkCvMapping are the ones the ontology gives, and they are reused
+        final CvRuleImpl rule = ( CvRuleImpl ) ruleMngr.getCvRules().iterator().next();
+        for ( CvTerm cvTerm : rule.getCVTerms() ) {
+            final Set<String> expected = new HashSet<String>( OntologyUtils.getAccessions(
+                    ontologyMngr.getOntologyAccess( "MI" ).getValidTerms( cvTerm.getTermAccession(),
+                                                                          cvTerm.isAllowChildren(), cvTerm.isUseTerm() ) ) );
+            final Set<String> resolved = rule.getAllowedValues( cvTerm );
+            Assert.assertEquals( expected, resolved );
+            Assert.assertFalse( resolved.isEmpty() );
+            Assert.assertSame( resolved, rule.getAllowedValues( cvTerm ) );
+        }
+
+        // resolving them again gives the same values
+        final CvTerm cvTerm = rule.getCVTerms().get( 0 );
+        final Set<String> resolved = rule.getAllowedValues( cvTerm );
+        rule.resolveAllowedValues();
+        Assert.assertNotSame( resolved, rule.getAllowedValues( cvTerm ) );
+        Assert.assertEquals( resolved, rule.getAllowedValues( cvTerm ) );
+    }
+
+    private static void writeAliasTypes( File obo, boolean geneNameIsAliasType ) throws Exception {
+        final String content = "format-version: 1.2\n\n" +
+                               "[Term]\nid: MI:0300\nname: alias type\n\n" +
+                               "[Term]\nid: MI:0301\nname: gene name\n" +
+                               ( geneNameIsAliasType ? "is_a: MI:0300 ! alias type\n" : "" ) + "\n" +
+                               "[Term]\nid: MI:0828\nname: polyprotein fragment\n";
+        Files.write( obo.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    @Test
+    public void check_refreshedOntology() throws Exception {
+        // the values resolved by the rules follow the ontologies refreshed by the OntologyManager
+        final File obo = File.createTempFile( "psi-mi", ".obo" );
+        obo.deleteOnExit();
+        writeAliasTypes( obo, true );
+        final String config = "<cvSourceList>\n" +
+                              "    <cvSource source=\"file\" uri=\"" + obo.toURI() + "\" format=\"OBO\"\n" +
+                              "              name=\"PSI-MI\" identifier=\"MI\" version=\"1\"/>\n" +
+                              "</cvSourceList>";
+        final OntologyManager manager = new OntologyManager( new ByteArrayInputStream( config.getBytes( StandardCharsets.UTF_8 ) ) );
+        try {
+            CvRuleReader reader = new CvRuleReader();
+            CvMapping cvMapping = reader.read( new File( CvMappingRuleTest.class.getResource( "/sample10-house-cvmapping.xml" ).getFile() ) );
+            CvRuleManager ruleMngr = new CvRuleManager( manager, cvMapping );
+            Assert.assertEquals( 0, ruleMngr.checkCvMapping().size() );
+
+            House house = new House();
+            house.addBedroom( new BedRoom("MI:0301") ); // child of MI:0300
+            house.addBedroom( new BedRoom("MI:0828") );
+            Assert.assertEquals( 0, ruleMngr.check( house, "/house" ).size() );
+
+            // nothing is reloaded as long as the file does not change
+            Assert.assertEquals( Collections.emptySet(), manager.refreshOntologies() );
+
+            // MI:0301 is not an alias type anymore
+            writeAliasTypes( obo, false );
+            Assert.assertEquals( Collections.singleton( "MI" ), manager.refreshOntologies() );
+            Assert.assertEquals( 1, ruleMngr.check( house, "/house" ).size() );
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void checkCvMapping_obsoleteLocal() throws Exception {
+        // the obsolete terms of the rules are found in one go, and removed
+        final File obo = File.createTempFile( "psi-mi", ".obo" );
+        obo.deleteOnExit();
+        final String content = "format-version: 1.2\n\n" +
+                               "[Term]\nid: MI:0300\nname: alias type\n\n" +
+                               "[Term]\nid: MI:0301\nname: gene name\nis_a: MI:0300 ! alias type\n\n" +
+                               "[Term]\nid: MI:0828\nname: polyprotein fragment\nis_obsolete: true\n";
+        Files.write( obo.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+        final String config = "<cvSourceList>\n" +
+                              "    <cvSource source=\"file\" uri=\"" + obo.toURI() + "\" format=\"OBO\"\n" +
+                              "              name=\"PSI-MI\" identifier=\"MI\" version=\"1\"/>\n" +
+                              "</cvSourceList>";
+        final OntologyManager manager = new OntologyManager( new ByteArrayInputStream( config.getBytes( StandardCharsets.UTF_8 ) ) );
+        try {
+            CvRuleReader reader = new CvRuleReader();
+            CvMapping cvMapping = reader.read( new File( CvMappingRuleTest.class.getResource( "/sample10-house-cvmapping.xml" ).getFile() ) );
+            CvRuleManager ruleMngr = new CvRuleManager( manager, cvMapping );
+
+            final CvRule rule = ruleMngr.getCvRules().iterator().next();
+            Assert.assertEquals( 2, rule.getCVTerms().size() );
+            Assert.assertEquals( 1, ruleMngr.checkCvMapping().size() );
+            Assert.assertEquals( 1, rule.getCVTerms().size() );
+            Assert.assertEquals( "MI:0300", rule.getCVTerms().get( 0 ).getTermAccession() );
+        } finally {
+            manager.close();
+        }
+    }
+
     @Test
     public void check_not_a_child_of() {
     }
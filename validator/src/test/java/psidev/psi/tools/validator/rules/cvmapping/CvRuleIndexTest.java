@@ -0,0 +1,71 @@
+package psidev.psi.tools.validator.rules.cvmapping;
+
+import org.junit.Assert;
+import org.junit.Test;
+import psidev.psi.tools.cvrReader.mapping.jaxb.CvMappingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CvRuleIndex Tester.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class CvRuleIndexTest {
+
+    private CvRule buildRule( String id, String elementPath ) {
+        CvMappingRule mappingRule = new CvMappingRule();
+        mappingRule.setId( id );
+        mappingRule.setScopePath( elementPath );
+        mappingRule.setCvElementPath( elementPath );
+        CvRuleImpl rule = new CvRuleImpl( null );
+        rule.setCvMappingRule( mappingRule );
+        return rule;
+    }
+
+    @Test
+    public void getRules() throws Exception {
+        final CvRule r1 = buildRule( "R1", "/garage/bikes/@color" );
+        final CvRule r2 = buildRule( "R2", "/garage/cars/@color" );
+        final CvRule r3 = buildRule( "R3", "/garage/bikes/wheels/@type" );
+        final CvRule r4 = buildRule( "R4", "/house/@color" );
+        final CvRuleIndex index = new CvRuleIndex( Arrays.asList( r1, r2, r3, r4 ) );
+
+        Assert.assertEquals( Arrays.asList( r1, r2, r3, r4 ), index.getRules( null ) );
+        Assert.assertEquals( Arrays.asList( r1, r2, r3 ), index.getRules( "/garage" ) );
+        Assert.assertEquals( Arrays.asList( r1, r3 ), index.getRules( "/garage/bikes" ) );
+        Assert.assertEquals( Arrays.asList( r3 ), index.getRules( "/garage/bikes/wheels" ) );
+        Assert.assertEquals( Arrays.asList( r4 ), index.getRules( "/house/@color" ) );
+        Assert.assertTrue( index.getRules( "/garden" ).isEmpty() );
+        Assert.assertSame( index.getRules( "/garage" ), index.getRules( "/garage" ) );
+    }
+
+    @Test
+    public void getRules_sameAsCanCheck() throws Exception {
+        final List<CvRule> rules = new ArrayList<CvRule>();
+        rules.add( buildRule( "R1", "/a/b/c" ) );
+        rules.add( buildRule( "R2", "/a/b" ) );
+        rules.add( buildRule( "R3", "/a/bc" ) );
+        rules.add( new CvRuleImpl( null ) {
+            @Override
+            public boolean canCheck( String xPath ) {
+                return xPath != null && xPath.endsWith( "c" );
+            }
+        } );
+        rules.add( buildRule( "R5", "/a" ) );
+        final CvRuleIndex index = new CvRuleIndex( rules );
+
+        for ( String xPath : new String[]{null, "/", "/a", "/a/", "/a/b", "/a/bc", "/a/b/c", "/x", ""} ) {
+            List<CvRule> expected = new ArrayList<CvRule>();
+            for ( CvRule rule : rules ) {
+                if ( rule.canCheck( xPath ) ) {
+                    expected.add( rule );
+                }
+            }
+            Assert.assertEquals( xPath, expected, index.getRules( xPath ) );
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package psidev.psi.tools.validator.xpath;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * PropertyPath Tester.
+ *
+ * @version $Id$
+ * @since 2.0.0
+ */
+public class PropertyPathTest {
+
+    ////////////////////////////////
+    // Compatibility with JUnit 3
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter( PropertyPathTest.class );
+    }
+
+    ////////////////////
+    // Dummy model
+
+    public static class Garage {
+        private List<Bike> bikes = Arrays.asList( new Bike( "red" ), null, new Bike( null ), new Bike( "blue" ) );
+        private Bike[] spares = {new Bike( "green" )};
+
+        public List<Bike> getBikes() {
+            return bikes;
+        }
+
+        public Bike[] getSpares() {
+            return spares;
+        }
+
+        public Bike getOwnerBike() {
+            return null;
+        }
+
+        public String getName() {
+            return null;
+        }
+
+        public Map<String, String> getLabels() {
+            return Collections.singletonMap( "color", "black" );
+        }
+    }
+
+    public static class Bike {
+        private String color;
+        private List<String> tags = Arrays.asList( "fast", "light" );
+
+        public Bike( String color ) {
+            this.color = color;
+        }
+
+        public String getColor() {
+            return color;
+        }
+
+        public int getWheels() {
+            return 2;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+    }
+
+    ////////////////////
+    // Tests
+
+    @Test
+    public void isPropertyPath() throws Exception {
+        Assert.assertTrue( PropertyPath.isPropertyPath( "/garage/bikes/@color" ) );
+        Assert.assertTrue( PropertyPath.isPropertyPath( "bikes/color" ) );
+        Assert.assertTrue( PropertyPath.isPropertyPath( "." ) );
+        Assert.assertFalse( PropertyPath.isPropertyPath( "/bikes[1]/color" ) );
+        Assert.assertFalse( PropertyPath.isPropertyPath( "//color" ) );
+        Assert.assertFalse( PropertyPath.isPropertyPath( "/bikes/color/" ) );
+        Assert.assertFalse( PropertyPath.isPropertyPath( "count(/bikes)" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void compile_notPropertyPath() throws Exception {
+        PropertyPath.compile( "/bikes[@color='red']" );
+    }
+
+    @Test
+    public void evaluate_sameAsJXPath() throws Exception {
+        final Garage garage = new Garage();
+        final String[] xpaths = {".", "/bikes/@color", "bikes/color", "/bikes/wheels", "/spares/color", "/ownerBike",
+                                 "/ownerBike/color", "/name", "/labels", "/labels/color", "/unknown", "/bikes/unknown"};
+
+        for ( String xpath : xpaths ) {
+            assertSameResults( xpath, XPathHelper.evaluateXPath( xpath, garage ),
+                               PropertyPath.compile( xpath ).evaluate( garage ), true );
+        }
+    }
+
+    @Test
+    public void evaluate_collectionLastStep() throws Exception {
+        final Garage garage = new Garage();
+
+        // JXPath 1.2 gives the index of the last element to all the pointers, so do the results
+        assertSameResults( "/bikes", XPathHelper.evaluateXPath( "/bikes", garage ),
+                           PropertyPath.compile( "/bikes" ).evaluate( garage ), true );
+        assertSameResults( "/bikes/tags", XPathHelper.evaluateXPath( "/bikes/tags", garage ),
+                           PropertyPath.compile( "/bikes/tags" ).evaluate( garage ), true );
+        assertSameResults( "/spares", XPathHelper.evaluateXPath( "/spares", garage ),
+                           PropertyPath.compile( "/spares" ).evaluate( garage ), true );
+
+        List<XPathResult> results = PropertyPath.compile( "/bikes" ).evaluate( garage );
+        Assert.assertEquals( 4, results.size() );
+        Assert.assertNull( results.get( 1 ).getResult() );
+    }
+
+    @Test
+    public void evaluate_pointer() throws Exception {
+        final Garage garage = new Garage();
+        final List<XPathResult> expected = XPathHelper.evaluateXPath( "/bikes/color", garage );
+        final List<XPathResult> actual = PropertyPath.compile( "/bikes/color" ).evaluate( garage );
+
+        Assert.assertEquals( expected.size(), actual.size() );
+        for ( int i = 0; i < expected.size(); i++ ) {
+            Assert.assertEquals( expected.get( i ).getPointer().asPath(), actual.get( i ).getPointer().asPath() );
+            Assert.assertEquals( expected.get( i ).getPointer().getNode(), actual.get( i ).getPointer().getNode() );
+        }
+    }
+
+    @Test
+    public void evaluate_collectionRoot() throws Exception {
+        final List<Bike> bikes = Arrays.asList( new Bike( "red" ), new Bike( "blue" ) );
+        assertSameResults( "/color", XPathHelper.evaluateXPath( "/color", bikes ),
+                           PropertyPath.compile( "/color" ).evaluate( bikes ), true );
+    }
+
+    private void assertSameResults( String xpath, List<XPathResult> expected, List<XPathResult> actual, boolean comparePaths ) {
+        Assert.assertEquals( xpath, expected.size(), actual.size() );
+        for ( int i = 0; i < expected.size(); i++ ) {
+            if ( comparePaths ) {
+                Assert.assertEquals( xpath, expected.get( i ).asPath(), actual.get( i ).asPath() );
+            }
+            Assert.assertEquals( xpath, expected.get( i ).getResult(), actual.get( i ).getResult() );
+            Assert.assertSame( xpath, expected.get( i ).getRootNode(), actual.get( i ).getRootNode() );
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package psidev.psi.tools.validator.xpath;
 
 import junit.framework.JUnit4TestAdapter;
+import org.apache.commons.jxpath.CompiledExpression;
+import org.apache.commons.jxpath.JXPathException;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -92,6 +94,21 @@ public class XPathHelperTest {
         Assert.assertEquals( 1, results.size() );
     }
 
+    @Test
+    public void evaluateXPath_compiled() throws Exception {
+        final CompiledExpression xpath = XPathHelper.compileXPath( "/b/c/cc" );
+        for ( int i = 0; i < 3; i++ ) {
+            List<XPathResult> results = XPathHelper.evaluateXPath( xpath, new A() );
+            Assert.assertEquals( 1, results.size() );
+            Assert.assertEquals( 3, results.get( 0 ).getResult() );
+        }
+    }
+
+    @Test( expected = JXPathException.class )
+    public void compileXPath_invalid() throws Exception {
+        XPathHelper.compileXPath( "/b/c[" );
+    }
+
     @Test
     public void hasLeadingSlash() throws Exception {
         Assert.assertTrue( XPathHelper.hasLeadingSlash( "/b/c" ) );